@@ -0,0 +1,192 @@
+package com.xk.cache.near;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 23:10
+ * 进程内有界缓存，按数量与权重淘汰，每个条目有自己的过期时间
+ * 读取只有一次ConcurrentHashMap查找；超出上限时由写入线程按时钟顺序采样若干条目，淘汰其中最久未访问的，近似LRU
+ */
+final class LocalCache {
+
+    /**
+     * 每次淘汰的采样数量
+     */
+    private static final int SAMPLES = 8;
+
+    /**
+     * 访问时间的更新粒度，避免热点条目每次读取都写同一缓存行
+     */
+    private static final long ACCESS_GRANULARITY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+
+    private final AtomicLong weight = new AtomicLong();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * 淘汰采样的时钟指针，由evictionLock保护
+     */
+    private Iterator<Map.Entry<String, Entry>> clock;
+
+    private volatile long maximumSize;
+
+    private volatile long maximumWeight;
+
+    private volatile ToIntFunction<Object> weigher;
+
+    LocalCache(long maximumSize, long maximumWeight, ToIntFunction<Object> weigher) {
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return 未命中或已过期返回null
+     */
+    Object get(String key) {
+        Entry entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - entry.expireAt >= 0) {
+            remove(key, entry);
+            return null;
+        }
+        if (now - entry.accessTime > ACCESS_GRANULARITY) {
+            entry.accessTime = now;
+        }
+        return entry.value;
+    }
+
+    void put(String key, Object value, long ttlNanos) {
+        if (ttlNanos <= 0) {
+            invalidate(key);
+            return;
+        }
+        long now = System.nanoTime();
+        Entry entry = new Entry(value, Math.max(weigher.applyAsInt(value), 0), now + ttlNanos, now);
+        Entry old = map.put(key, entry);
+        weight.addAndGet(old == null ? entry.weight : entry.weight - old.weight);
+        evictIfNeeded();
+    }
+
+    void invalidate(String key) {
+        Entry old = map.remove(key);
+        if (old != null) {
+            weight.addAndGet(-old.weight);
+        }
+    }
+
+    void invalidateAll() {
+        for (String key : map.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    long weight() {
+        return weight.get();
+    }
+
+    void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+        evictIfNeeded();
+    }
+
+    void setMaximumWeight(long maximumWeight, ToIntFunction<Object> weigher) {
+        this.weigher = weigher;
+        this.maximumWeight = maximumWeight;
+        evictIfNeeded();
+    }
+
+    private void remove(String key, Entry entry) {
+        if (map.remove(key, entry)) {
+            weight.addAndGet(-entry.weight);
+        }
+    }
+
+    private boolean overflow() {
+        return map.size() > maximumSize || weight.get() > maximumWeight;
+    }
+
+    /**
+     * 只有一个线程淘汰，其他写入线程不等待，短暂超出上限
+     */
+    private void evictIfNeeded() {
+        if (!overflow() || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (overflow() && evictOne()) {
+                // 继续淘汰
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return 缓存为空时返回false
+     */
+    private boolean evictOne() {
+        long now = System.nanoTime();
+        String victimKey = null;
+        Entry victim = null;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (clock == null || !clock.hasNext()) {
+                clock = map.entrySet().iterator();
+                if (!clock.hasNext()) {
+                    return false;
+                }
+            }
+            Map.Entry<String, Entry> sample = clock.next();
+            Entry entry = sample.getValue();
+            if (now - entry.expireAt >= 0) {
+                victimKey = sample.getKey();
+                victim = entry;
+                break;
+            }
+            if (victim == null || entry.accessTime - victim.accessTime < 0) {
+                victimKey = sample.getKey();
+                victim = entry;
+            }
+        }
+        remove(victimKey, victim);
+        return true;
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+
+        private final int weight;
+
+        /**
+         * 过期时间，System.nanoTime
+         */
+        private final long expireAt;
+
+        private volatile long accessTime;
+
+        private Entry(Object value, int weight, long expireAt, long accessTime) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+            this.accessTime = accessTime;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.xk.cache.near;
+
+import com.xk.cache.support.CacheClient;
+import com.xk.cache.support.CacheLoader;
+import com.xk.cache.support.CacheValue;
+import com.xk.cache.support.Null;
+import com.xk.cache.support.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 23:20
+ * 二级缓存客户端：进程内有界缓存在前，远程缓存（如{@link com.xk.cache.redis.RedisCacheClient}）在后
+ * 本地条目的过期时间不超过localTtl与写入远程时的过期时间；get未命中时与远程的值一起读取剩余过期时间，本地条目不晚于远程过期
+ * set、remove在写远程后通过redis发布订阅通知所有节点删除本地条目，本节点的消息会被忽略；
+ * 读取远程期间、写入远程与本地期间收到删除通知的值不保留在本地，避免旧值覆盖通知。订阅断开期间本地条目最多旧localTtl
+ * getWithCacheLoader未命中时交给远程缓存加载，语义一致，缓存的{@link Null}返回null
+ */
+public class NearCacheClient implements CacheClient, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(NearCacheClient.class);
+
+    private final CacheClient delegate;
+
+    private final RedisTemplate<String, ?> redisTemplate;
+
+    /**
+     * 删除通知的频道
+     */
+    private final String channel;
+
+    /**
+     * 本节点标识，忽略自己发出的通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final LocalCache localCache = new LocalCache(10000, Long.MAX_VALUE, value -> 1);
+
+    /**
+     * 收到的删除通知次数，读取远程前后不一致时不写入本地
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 本地条目的最长过期时间，单位纳秒
+     */
+    private volatile long localTtl = TimeUnit.SECONDS.toNanos(30);
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * @param delegate 远程缓存
+     * @param redisTemplate 用于发布与订阅删除通知，只使用其连接
+     * @param channel 删除通知的频道，共享同一远程缓存的节点相同
+     */
+    public NearCacheClient(CacheClient delegate, RedisTemplate<String, ?> redisTemplate, String channel) {
+        Assert.notNull(delegate, "delegate can not be null!");
+        Assert.notNull(redisTemplate, "redisTemplate can not be null!");
+        Assert.hasText(channel, "channel can not be empty!");
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+    }
+
+    /**
+     * 本地最多缓存的条目数量，默认10000
+     */
+    public void setMaximumSize(long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive!");
+        }
+        localCache.setMaximumSize(maximumSize);
+    }
+
+    /**
+     * 本地缓存的最大总权重，默认不限制
+     * @param maximumWeight 最大总权重
+     * @param weigher 条目的权重，如估算的字节数
+     */
+    public void setMaximumWeight(long maximumWeight, ToIntFunction<Object> weigher) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("maximumWeight must be positive!");
+        }
+        Assert.notNull(weigher, "weigher can not be null!");
+        localCache.setMaximumWeight(maximumWeight, weigher);
+    }
+
+    /**
+     * 本地条目的最长过期时间，默认30秒，也是节点之间不一致的最长时间
+     */
+    public void setLocalTtl(long localTtl, TimeUnit timeUnit) {
+        if (localTtl <= 0) {
+            throw new IllegalArgumentException("localTtl must be positive!");
+        }
+        this.localTtl = timeUnit.toNanos(localTtl);
+    }
+
+    @Override
+    public <T> T getWithCacheLoader(String key, int exp, TimeUnit timeUnit, CacheLoader<T> cacheLoader) {
+        return getWithCacheLoader(key, exp, timeUnit, false, cacheLoader);
+    }
+
+    @Override
+    public <T> T getWithCacheLoader(String key, int exp, TimeUnit timeUnit, boolean isCacheNull, CacheLoader<T> cacheLoader) {
+        long ttlNanos = Math.min(localTtl, timeUnit.toNanos(exp));
+        Object value = get(key, ttlNanos);
+        // 缓存未命中，同一个key只有一个线程加载
+        if (value == null) {
+            value = singleFlight.load(key, () -> {
+                // 等待期间其他线程可能已经写入本地
+                Object cached = localCache.get(key);
+                if (cached != null) {
+                    return cached;
+                }
+                // 由远程缓存加载，远程缓存开启集群加载租约时整个集群只加载一次
+                long version = invalidations.get();
+                Object loaded = delegate.getWithCacheLoader(key, exp, timeUnit, isCacheNull, cacheLoader);
+                if (loaded == null && isCacheNull) {
+                    loaded = Null.NULL;
+                }
+                if (loaded != null) {
+                    putLocal(key, loaded, ttlNanos, version);
+                }
+                return loaded;
+            });
+        }
+
+        // 缓存获取到的Null对象
+        if (value instanceof Null) {
+            value = null;
+        }
+        return cast(value);
+    }
+
+    /**
+     * 本地未命中时读取远程并写入本地，过期时间不超过localTtl与远程的剩余过期时间
+     */
+    @Override
+    public <T> T get(String key) {
+        return cast(get(key, localTtl));
+    }
+
+    @Override
+    public boolean set(String key, Object value, int exp, TimeUnit timeUnit) {
+        if (value == null) {
+            return false;
+        }
+        boolean success = delegate.set(key, value, exp, timeUnit);
+        // 本节点并发读取到的旧值也不写入本地
+        long version = invalidations.incrementAndGet();
+        publish(key);
+        // 写入远程后收到其他节点的删除通知时，远程的值可能已被覆盖，不写入本地
+        if (!success || !putLocal(key, value, Math.min(localTtl, timeUnit.toNanos(exp)), version)) {
+            localCache.invalidate(key);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean remove(String key) {
+        return remove(new String[]{key});
+    }
+
+    @Override
+    public boolean remove(String... keys) {
+        boolean success = delegate.remove(keys);
+        for (String key : keys) {
+            invalidateLocal(key);
+        }
+        publish(keys);
+        return success;
+    }
+
+    /**
+     * 只删除本节点的本地条目
+     */
+    public void invalidateLocal(String key) {
+        invalidations.incrementAndGet();
+        localCache.invalidate(key);
+    }
+
+    /**
+     * 合并并发加载，可以设置等待超时时间、超时后是否自行加载，查看合并次数
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * 本地缓存的条目数量
+     */
+    public int localSize() {
+        return localCache.size();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisTemplate.getConnectionFactory());
+        container.addMessageListener(new InvalidationListener(), new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+        this.listenerContainer = container;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+        localCache.invalidateAll();
+    }
+
+    private Object get(String key, long ttlNanos) {
+        Object value = localCache.get(key);
+        if (value != null) {
+            return value;
+        }
+        long version = invalidations.get();
+        CacheValue<Object> remote = delegate.getWithTtl(key);
+        if (remote == null) {
+            return null;
+        }
+        value = remote.getValue();
+        long remoteTtl = remote.getTtlMillis();
+        if (remoteTtl != CacheValue.TTL_UNKNOWN) {
+            ttlNanos = Math.min(ttlNanos, TimeUnit.MILLISECONDS.toNanos(remoteTtl));
+        }
+        if (ttlNanos > 0) {
+            putLocal(key, value, ttlNanos, version);
+        }
+        return value;
+    }
+
+    /**
+     * 读取远程后写入本地，读取开始后收到过删除通知则不写入
+     * 检查与写入之间收到的通知可能先于写入删除本地条目，写入后再次检查，版本变化则撤销写入
+     * @param version 读取远程前的通知次数
+     * @return 是否写入
+     */
+    private boolean putLocal(String key, Object value, long ttlNanos, long version) {
+        if (invalidations.get() != version) {
+            return false;
+        }
+        localCache.put(key, value, ttlNanos);
+        if (invalidations.get() != version) {
+            localCache.invalidate(key);
+            return false;
+        }
+        return true;
+    }
+
+    private void publish(String... keys) {
+        byte[] rawChannel = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] rawMessage;
+        try {
+            rawMessage = encode(nodeId, keys);
+        } catch (IOException e) {
+            log.error("near cache invalidation encode failed! keys={}", keys, e);
+            return;
+        }
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(rawChannel, rawMessage));
+        } catch (Exception e) {
+            log.error("near cache invalidation publish failed! keys={}", keys, e);
+        }
+    }
+
+    /**
+     * 通知消息：节点标识、键的数量、每个键的长度与UTF-8字节，键可以包含任意字符
+     */
+    static byte[] encode(String nodeId, String... keys) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(nodeId);
+        out.writeInt(keys.length);
+        for (String key : keys) {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(rawKey.length);
+            out.write(rawKey);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return 第一个元素为节点标识，其余为键
+     */
+    static String[] decode(byte[] message) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+        String nodeId = in.readUTF();
+        int count = in.readInt();
+        if (count < 0 || count > message.length) {
+            throw new IOException("invalid key count: " + count);
+        }
+        String[] parts = new String[count + 1];
+        parts[0] = nodeId;
+        for (int i = 1; i <= count; i++) {
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) {
+                throw new IOException("invalid key length: " + length);
+            }
+            byte[] rawKey = new byte[length];
+            in.readFully(rawKey);
+            parts[i] = new String(rawKey, StandardCharsets.UTF_8);
+        }
+        return parts;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object value) {
+        return (T) value;
+    }
+
+    /**
+     * 删除其他节点set、remove的键
+     */
+    private class InvalidationListener implements MessageListener {
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            String[] parts;
+            try {
+                parts = decode(message.getBody());
+            } catch (IOException e) {
+                // 无法识别删除了哪些键，清空本地缓存
+                log.warn("near cache invalidation message malformed, invalidate all!", e);
+                invalidations.incrementAndGet();
+                localCache.invalidateAll();
+                return;
+            }
+            if (nodeId.equals(parts[0])) {
+                return;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                invalidateLocal(parts[i]);
+            }
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.xk.cache.redis;
 
+import com.xk.boot.lock.RedisAtomicClient;
+import com.xk.boot.lock.RedisLock;
 import com.xk.cache.support.CacheClient;
 import com.xk.cache.support.CacheLoader;
+import com.xk.cache.support.CacheValue;
 import com.xk.cache.support.Null;
+import com.xk.cache.support.SingleFlight;
+import com.xk.cache.support.SingleFlightTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.RedisConnection;
@@ -13,28 +18,133 @@ import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author xiongkai
  * @version 1.0
  * @date 2021-03-26 10:15
  * redis实现的缓存客户端
+ * 同一节点并发未命中的key只加载一次；设置{@link RedisAtomicClient}后整个集群每个key每次失效只有获取到租约的节点加载，
+ * 其余节点返回旧值或等待新值，租约持有者加载失败时接手加载；等待超时默认自行加载，可以改为抛出异常，redis异常时退化为自行加载
  */
 public class RedisCacheClient implements CacheClient {
 
     private static final Logger log = LoggerFactory.getLogger(RedisCacheClient.class);
 
+    /**
+     * 加载租约的key后缀
+     */
+    private static final String LEASE_SUFFIX = ":load-lease";
+
+    /**
+     * 旧值的key后缀
+     */
+    private static final String STALE_SUFFIX = ":stale";
+
+    /**
+     * 等待租约持有者写入时的轮询间隔
+     */
+    private static final long LEASE_POLL_MILLIS = 20;
+
     private final RedisTemplate redisTemplate;
 
     private final RedisSerializer<String> keyRedisSerializer = new StringRedisSerializer();
 
     private final RedisSerializer<Object> valueRedisSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
 
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    private final LongAdder staleServed = new LongAdder();
+
+    private final LongAdder leaseTimeouts = new LongAdder();
+
+    private volatile RedisAtomicClient redisAtomicClient;
+
+    private volatile long leaseTime = 5;
+
+    /**
+     * 小于0时等于租约的失效时间
+     */
+    private volatile long leaseWaitMillis = -1;
+
+    private volatile boolean loadOnLeaseTimeout = true;
+
+    private volatile long staleTimeMillis;
+
     public RedisCacheClient(RedisTemplate redisTemplate) {
         this.redisTemplate = redisTemplate;
     }
 
+    /**
+     * 合并并发加载，可以设置等待超时时间、超时后是否自行加载，查看合并次数
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * 开启集群加载租约：缓存未命中时只有获取到租约的节点执行CacheLoader
+     * @param redisAtomicClient 用于获取租约，为null时关闭
+     */
+    public void setRedisAtomicClient(RedisAtomicClient redisAtomicClient) {
+        this.redisAtomicClient = redisAtomicClient;
+    }
+
+    /**
+     * 租约的失效时间，单位秒，默认5秒，应大于加载时间
+     */
+    public void setLeaseTime(long leaseTime) {
+        if (leaseTime <= 0) {
+            throw new IllegalArgumentException("leaseTime must be positive!");
+        }
+        this.leaseTime = leaseTime;
+    }
+
+    /**
+     * 未获取到租约且没有旧值时等待新值写入的最长时间，单位毫秒，默认等于租约的失效时间
+     */
+    public void setLeaseWaitMillis(long leaseWaitMillis) {
+        if (leaseWaitMillis < 0) {
+            throw new IllegalArgumentException("leaseWaitMillis can not be negative!");
+        }
+        this.leaseWaitMillis = leaseWaitMillis;
+    }
+
+    /**
+     * 等待租约持有者写入超时后是否自行加载，默认为true，为false时抛出{@link SingleFlightTimeoutException}
+     */
+    public void setLoadOnLeaseTimeout(boolean loadOnLeaseTimeout) {
+        this.loadOnLeaseTimeout = loadOnLeaseTimeout;
+    }
+
+    /**
+     * 旧值在缓存失效后保留的时间，默认0不保留。开启后getWithCacheLoader额外写入一份旧值，
+     * 其他节点持有租约时直接返回旧值
+     */
+    public void setStaleTime(long staleTime, TimeUnit timeUnit) {
+        if (staleTime < 0) {
+            throw new IllegalArgumentException("staleTime can not be negative!");
+        }
+        this.staleTimeMillis = timeUnit.toMillis(staleTime);
+    }
+
+    /**
+     * 其他节点持有租约时返回旧值的次数
+     */
+    public long getStaleServedCount() {
+        return staleServed.sum();
+    }
+
+    /**
+     * 等待租约持有者写入超时的次数
+     */
+    public long getLeaseTimeoutCount() {
+        return leaseTimeouts.sum();
+    }
+
     @Override
     public <T> T getWithCacheLoader(String key, int exp, TimeUnit timeUnit, CacheLoader<T> cacheLoader) {
         return getWithCacheLoader(key, exp, timeUnit, false, cacheLoader);
@@ -43,14 +153,19 @@ public class RedisCacheClient implements CacheClient {
     @Override
     public <T> T getWithCacheLoader(String key, int exp, TimeUnit timeUnit, boolean isCacheNull, CacheLoader<T> cacheLoader) {
         T value = get(key);
-        // 缓存未命中
+        // 缓存未命中，同一个key只有一个线程加载
         if (value == null) {
-            value = cacheLoader.load();
-            if (isCacheNull) {
-                setWithNull(key, value, exp, timeUnit);
-            } else if (value != null) {
-                set(key, value, exp, timeUnit);
-            }
+            value = singleFlight.load(key, () -> {
+                // 等待期间其他线程可能已经写入缓存
+                T cached = get(key);
+                if (cached != null) {
+                    return cached;
+                }
+                if (redisAtomicClient == null) {
+                    return load(key, exp, timeUnit, isCacheNull, cacheLoader);
+                }
+                return loadWithLease(key, exp, timeUnit, isCacheNull, cacheLoader);
+            });
         }
 
         // 缓存获取到的Null对象
@@ -60,6 +175,92 @@ public class RedisCacheClient implements CacheClient {
         return value;
     }
 
+    private <T> T load(String key, int exp, TimeUnit timeUnit, boolean isCacheNull, CacheLoader<T> cacheLoader) {
+        T loaded = cacheLoader.load();
+        if (isCacheNull) {
+            setWithNull(key, loaded, exp, timeUnit);
+        } else if (loaded != null) {
+            set(key, loaded, exp, timeUnit);
+        }
+        if (staleTimeMillis > 0 && (loaded != null || isCacheNull)) {
+            long staleExp = Math.min(timeUnit.toMillis(exp) + staleTimeMillis, Integer.MAX_VALUE);
+            set(key + STALE_SUFFIX, loaded == null ? Null.NULL : loaded, (int) staleExp, TimeUnit.MILLISECONDS);
+        }
+        return loaded;
+    }
+
+    /**
+     * 获取到租约的节点加载，其余节点返回旧值或等待新值写入；等待期间租约被释放或失效时接手加载
+     */
+    private <T> T loadWithLease(String key, int exp, TimeUnit timeUnit, boolean isCacheNull, CacheLoader<T> cacheLoader) {
+        RedisLock lease;
+        try {
+            lease = redisAtomicClient.getLock(key + LEASE_SUFFIX, leaseTime);
+        } catch (Exception e) {
+            log.error("cache load lease failed, load without lease! key={}", key, e);
+            return load(key, exp, timeUnit, isCacheNull, cacheLoader);
+        }
+        if (lease != null) {
+            return loadHoldingLease(key, lease, exp, timeUnit, isCacheNull, cacheLoader);
+        }
+
+        if (staleTimeMillis > 0) {
+            T stale = get(key + STALE_SUFFIX);
+            if (stale != null) {
+                staleServed.increment();
+                return stale;
+            }
+        }
+        long waitMillis = leaseWaitMillis < 0 ? TimeUnit.SECONDS.toMillis(leaseTime) : leaseWaitMillis;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        while (System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(LEASE_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for cache load lease! key=" + key, e);
+            }
+            T cached = get(key);
+            if (cached != null) {
+                return cached;
+            }
+            // 持有者加载失败或租约失效后没有新值，接手加载
+            try {
+                lease = redisAtomicClient.getLock(key + LEASE_SUFFIX, leaseTime);
+            } catch (Exception e) {
+                log.error("cache load lease failed, keep waiting! key={}", key, e);
+                continue;
+            }
+            if (lease != null) {
+                return loadHoldingLease(key, lease, exp, timeUnit, isCacheNull, cacheLoader);
+            }
+        }
+        leaseTimeouts.increment();
+        if (!loadOnLeaseTimeout) {
+            throw new SingleFlightTimeoutException("cache load lease wait timeout! key=" + key);
+        }
+        log.warn("cache load lease wait timeout, load without lease! key={}", key);
+        return load(key, exp, timeUnit, isCacheNull, cacheLoader);
+    }
+
+    private <T> T loadHoldingLease(String key, RedisLock lease, int exp, TimeUnit timeUnit, boolean isCacheNull, CacheLoader<T> cacheLoader) {
+        try {
+            // 上一个租约持有者可能刚写入缓存
+            T cached = get(key);
+            return cached != null ? cached : load(key, exp, timeUnit, isCacheNull, cacheLoader);
+        } finally {
+            release(key, lease);
+        }
+    }
+
+    private void release(String key, RedisLock lease) {
+        try {
+            lease.close();
+        } catch (Exception e) {
+            log.error("cache load lease release failed! key={}", key, e);
+        }
+    }
+
     private void setWithNull(String key, Object value, int exp, TimeUnit timeUnit) {
         if (value == null) {
             value = Null.NULL;
@@ -81,6 +282,30 @@ public class RedisCacheClient implements CacheClient {
 
     }
 
+    /**
+     * 通过管道一次发送GET与PTTL
+     */
+    @Override
+    public <T> CacheValue<T> getWithTtl(String key) {
+        byte[] rawKey = rawKey(key);
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.get(rawKey);
+                connection.pTtl(rawKey);
+                return null;
+            }, valueRedisSerializer);
+            Object value = results.get(0);
+            if (value == null) {
+                return null;
+            }
+            Long ttl = (Long) results.get(1);
+            return new CacheValue<>((T) value, ttl == null || ttl < 0 ? CacheValue.TTL_UNKNOWN : ttl);
+        } catch (Exception e) {
+            log.error("", e);
+            return null;
+        }
+    }
+
     @Override
     public boolean set(String key, Object value, int exp, TimeUnit timeUnit) {
         if (value == null) {
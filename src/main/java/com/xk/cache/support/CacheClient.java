@@ -44,6 +44,18 @@ public interface CacheClient {
      */
     <T> T get(String key);
 
+    /**
+     * 缓存命中时返回值与剩余过期时间，未命中返回null；默认不读取剩余过期时间
+     *
+     * @param key 缓存key值
+     * @param <T> 返回对象类型
+     * @return 缓存的value与剩余过期时间
+     */
+    default <T> CacheValue<T> getWithTtl(String key) {
+        T value = get(key);
+        return value == null ? null : new CacheValue<>(value, CacheValue.TTL_UNKNOWN);
+    }
+
     /**
      * 设置缓存
      *
@@ -0,0 +1,35 @@
+package com.xk.cache.support;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 17:40
+ * 缓存的值与读取时的剩余过期时间
+ */
+public final class CacheValue<T> {
+
+    /**
+     * 剩余过期时间未知或没有过期时间
+     */
+    public static final long TTL_UNKNOWN = -1;
+
+    private final T value;
+
+    private final long ttlMillis;
+
+    public CacheValue(T value, long ttlMillis) {
+        this.value = value;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return 剩余过期时间，单位毫秒，小于0为{@link #TTL_UNKNOWN}
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+}
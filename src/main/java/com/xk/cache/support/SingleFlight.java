@@ -0,0 +1,140 @@
+package com.xk.cache.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 00:10
+ * 进程内合并同一个key的并发加载，防止热点key失效时大量请求同时访问数据库
+ * 第一个线程执行加载，其余线程等待同一个结果，加载抛出的任何异常也传给等待的线程；加载结束后移除，不会残留
+ * 等待超时默认抛出{@link SingleFlightTimeoutException}，不再访问数据库，避免慢加载时超时的线程重新形成并发访问；
+ * 开启loadOnTimeout后超时的线程自行加载。等待时被中断抛出IllegalStateException，保留中断状态
+ */
+public final class SingleFlight {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 实际执行的加载次数
+     */
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * 等待其他线程加载结果的次数
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * 等待超时的次数
+     */
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * 等待的超时时间，单位纳秒
+     */
+    private volatile long timeout = TimeUnit.SECONDS.toNanos(3);
+
+    private volatile boolean loadOnTimeout;
+
+    /**
+     * 等待其他线程加载的超时时间，默认3秒
+     */
+    public void setTimeout(long timeout, TimeUnit timeUnit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive!");
+        }
+        this.timeout = timeUnit.toNanos(timeout);
+    }
+
+    /**
+     * 等待超时后是否自行加载，默认为false，抛出{@link SingleFlightTimeoutException}
+     */
+    public void setLoadOnTimeout(boolean loadOnTimeout) {
+        this.loadOnTimeout = loadOnTimeout;
+    }
+
+    /**
+     * 同一个key同时只有一个线程执行cacheLoader
+     * @param key 合并的key
+     * @param cacheLoader 加载方法，可以返回null
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, CacheLoader<T> cacheLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing == null) {
+            return doLoad(key, future, cacheLoader);
+        }
+
+        coalesced.increment();
+        try {
+            return (T) existing.get(timeout, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            if (!loadOnTimeout) {
+                throw new SingleFlightTimeoutException("single flight wait timeout! key=" + key);
+            }
+            log.warn("single flight wait timeout, load by self! key={}", key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for single flight load! key=" + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        loads.increment();
+        return cacheLoader.load();
+    }
+
+    private <T> T doLoad(String key, CompletableFuture<Object> future, CacheLoader<T> cacheLoader) {
+        loads.increment();
+        try {
+            T value = cacheLoader.load();
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // 包括通过泛型绕过编译检查抛出的受检异常，等待的线程都会被唤醒
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * 正在加载的key数量
+     */
+    public int inFlightSize() {
+        return inFlight.size();
+    }
+}
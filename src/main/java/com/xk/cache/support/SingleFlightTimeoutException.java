@@ -0,0 +1,16 @@
+package com.xk.cache.support;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 17:55
+ * 等待其他线程加载同一个key超时，未开启超时自行加载时抛出；
+ * 也用于等待集群加载租约的持有者超时，见{@link com.xk.cache.redis.RedisCacheClient#setLoadOnLeaseTimeout(boolean)}
+ * 正在进行的加载不受影响，完成后的结果仍交给其余等待的线程
+ */
+public class SingleFlightTimeoutException extends RuntimeException {
+
+    public SingleFlightTimeoutException(String message) {
+        super(message);
+    }
+}
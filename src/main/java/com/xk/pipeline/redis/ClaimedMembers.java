@@ -0,0 +1,43 @@
+package com.xk.pipeline.redis;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 12:20
+ * 一次领取的元素与redis计算的处理截止时间，确认时需要传回截止时间
+ */
+public final class ClaimedMembers {
+
+    static final ClaimedMembers EMPTY = new ClaimedMembers(0, Collections.emptyList());
+
+    /**
+     * 处理截止时间，redis时间，单位毫秒
+     */
+    private final long deadline;
+
+    private final List<byte[]> members;
+
+    public ClaimedMembers(long deadline, List<byte[]> members) {
+        this.deadline = deadline;
+        this.members = members;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public List<byte[]> getMembers() {
+        return members;
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    public int size() {
+        return members.size();
+    }
+}
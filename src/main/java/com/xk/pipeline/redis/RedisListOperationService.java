@@ -34,4 +34,32 @@ public interface RedisListOperationService {
      * @return 出队的指定元素
      */
     <T> List<T> lPopupAll(RedisTemplate<String, T> redisTemplate, String key);
+
+    /**
+     * list尾部批量入队，每chunkSize个元素一条rPush命令，通过管道一次发送
+     *
+     * @param redisTemplate redis操作模板
+     * @param key           键
+     * @param valueList     入队的list
+     * @param chunkSize     每条命令的元素数量
+     * @param <T>           队列元素
+     * @return 入队后的list长度
+     */
+    <T> Long pipelinedPushAll(RedisTemplate<String, T> redisTemplate, String key, List<T> valueList, int chunkSize);
+
+    /**
+     * 按批量消费阈值原子地从list头部取出一批元素，多个消费者并发调用时取出的元素互不重复
+     * 累积数量达到maxWaitSize，或距上一次取出超过maxWaitTime时取出最多batchSize个元素，否则返回空list
+     * 上一次取出时间保存在stampKey中，所有消费者共享；时间取自redis服务端，与各节点的时钟无关
+     *
+     * @param redisTemplate redis操作模板
+     * @param key           键
+     * @param stampKey      上一次取出时间的键
+     * @param batchSize     最多取出数量
+     * @param maxWaitSize   最多累积数量，小于等于0则不按量取出
+     * @param maxWaitTime   最大等待时间，单位毫秒，小于等于0则不按时取出
+     * @param <T>           队列元素
+     * @return 出队的元素
+     */
+    <T> List<T> popBatch(RedisTemplate<String, T> redisTemplate, String key, String stampKey, int batchSize, int maxWaitSize, long maxWaitTime);
 }
@@ -4,10 +4,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -26,6 +29,33 @@ public class RedisListOperationServiceImpl implements RedisListOperationService{
 
     private static final Logger log = LoggerFactory.getLogger(RedisListOperationServiceImpl.class);
 
+    /**
+     * lua脚本：达到数量或时间阈值时取出一批元素并记录取出时间
+     * KEYS[1] list键，KEYS[2] 上一次取出时间的键
+     * ARGV[1] 最多取出数量，ARGV[2] 最多累积数量，ARGV[3] 最大等待时间
+     * 当前时间取redis的TIME，取出时间由不同节点写入，不能使用各节点自己的时钟
+     */
+    private static final RedisScript<List> POP_BATCH = new DefaultRedisScript<>(RedisScripts.REDIS_NOW +
+            "local len = redis.call('llen', KEYS[1])\n" +
+            "local last = tonumber(redis.call('get', KEYS[2]))\n" +
+            "if not last then\n" +
+            "    redis.call('set', KEYS[2], now)\n" +
+            "    last = now\n" +
+            "end\n" +
+            "local waitSize = tonumber(ARGV[2])\n" +
+            "local waitTime = tonumber(ARGV[3])\n" +
+            "if not (waitSize > 0 and len >= waitSize) and not (waitTime > 0 and now - last >= waitTime) then\n" +
+            "    return {}\n" +
+            "end\n" +
+            "redis.call('set', KEYS[2], now)\n" +
+            "if len == 0 then\n" +
+            "    return {}\n" +
+            "end\n" +
+            "local batchSize = tonumber(ARGV[1])\n" +
+            "local items = redis.call('lrange', KEYS[1], 0, batchSize - 1)\n" +
+            "redis.call('ltrim', KEYS[1], batchSize, -1)\n" +
+            "return items", List.class);
+
     @Override
     public <T> Boolean pushAndExpire(RedisTemplate<String, T> redisTemplate, String key, List<T> valueList, long timeout, TimeUnit timeUnit) {
         if (CollectionUtils.isEmpty(valueList)) {
@@ -57,6 +87,33 @@ public class RedisListOperationServiceImpl implements RedisListOperationService{
         return list.stream().filter(Objects::nonNull).map(bytes -> (T)redisTemplate.getValueSerializer().deserialize(bytes)).collect(Collectors.toList());
     }
 
+    @Override
+    public <T> Long pipelinedPushAll(RedisTemplate<String, T> redisTemplate, String key, List<T> valueList, int chunkSize) {
+        if (CollectionUtils.isEmpty(valueList)) {
+            return null;
+        }
+        int size = valueList.size();
+        int step = chunkSize > 0 ? chunkSize : size;
+        byte[] rawKey = key.getBytes();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int from = 0; from < size; from += step) {
+                connection.rPush(rawKey, rawValues(valueList.subList(from, Math.min(size, from + step)), redisTemplate.getValueSerializer()));
+            }
+            return null;
+        });
+        return CollectionUtils.isEmpty(results) ? null : (Long) results.get(results.size() - 1);
+    }
+
+    @Override
+    public <T> List<T> popBatch(RedisTemplate<String, T> redisTemplate, String key, String stampKey, int batchSize, int maxWaitSize, long maxWaitTime) {
+        List<byte[]> list = RedisScripts.execute(redisTemplate, POP_BATCH, Arrays.asList(key, stampKey),
+                String.valueOf(batchSize).getBytes(), String.valueOf(maxWaitSize).getBytes(), String.valueOf(maxWaitTime).getBytes());
+        if (CollectionUtils.isEmpty(list)) {
+            return Collections.emptyList();
+        }
+        return list.stream().filter(Objects::nonNull).map(bytes -> (T)redisTemplate.getValueSerializer().deserialize(bytes)).collect(Collectors.toList());
+    }
+
     /**
      * 集合转二维字节数组
      */
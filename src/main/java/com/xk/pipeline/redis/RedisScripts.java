@@ -0,0 +1,51 @@
+package com.xk.pipeline.redis;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultScriptExecutor;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.List;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 10:20
+ * lua脚本的执行：由{@link DefaultScriptExecutor}先执行EVALSHA，服务端未缓存脚本时执行EVAL
+ * 键按utf-8字符串、参数按原始字节传递，不使用redisTemplate的key、value序列化方式
+ * 脚本内需要当前时间时统一读取redis的TIME，各节点的时钟偏差不影响判断
+ */
+final class RedisScripts {
+
+    /**
+     * 脚本开头读取redis当前时间，单位毫秒，结果保存在局部变量now中
+     * 先切换为命令复制，redis 5以下才允许读取TIME后写入
+     */
+    static final String REDIS_NOW = "redis.replicate_commands()\n" +
+            "local time = redis.call('time')\n" +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n";
+
+    private RedisScripts() {
+    }
+
+    /**
+     * 返回值为字节数组或字节数组列表时不反序列化
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <T> T execute(RedisTemplate<String, ?> redisTemplate, RedisScript<T> script, List<String> keys, byte[]... args) {
+        RedisSerializer<T> resultSerializer = (RedisSerializer) RedisSerializer.byteArray();
+        return new RawScriptExecutor(redisTemplate).execute(script, RedisSerializer.byteArray(), resultSerializer, keys, (Object[]) args);
+    }
+
+    private static class RawScriptExecutor extends DefaultScriptExecutor<String> {
+
+        RawScriptExecutor(RedisTemplate<String, ?> template) {
+            super(template);
+        }
+
+        @Override
+        protected RedisSerializer keySerializer() {
+            return RedisSerializer.string();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.xk.pipeline.redis;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 21:30
+ * 按分数调度的zset操作：到期元素的原子领取与确认
+ */
+public interface RedisZSetOperationService {
+
+    /**
+     * 确认结果：元素已不由本次领取持有，可能已被重新领取
+     */
+    int ACK_NOT_HELD = 0;
+
+    /**
+     * 确认结果：删除成功
+     */
+    int ACK_DONE = 1;
+
+    /**
+     * 确认结果：超过处理截止时间后删除，期间元素可能已被其他消费者重新领取执行
+     */
+    int ACK_LATE = 2;
+
+    /**
+     * 失败结果：达到最多执行次数，已从处理中集合删除，不再领取
+     */
+    int NACK_EXHAUSTED = -1;
+
+    /**
+     * 添加元素，分数为redis当前时间加上延迟时间，元素已存在时更新分数
+     *
+     * @param redisTemplate redis操作模板
+     * @param key           集合的键
+     * @param member        元素
+     * @param delayMillis   延迟时间，单位毫秒
+     * @return 是否为新添加的元素
+     */
+    boolean addDelayed(RedisTemplate<String, ?> redisTemplate, String key, byte[] member, long delayMillis);
+
+    /**
+     * 原子地领取一批到期元素，多个消费者并发调用时领取的元素互不重复
+     * 先将处理超时的元素从处理中集合放回待处理集合，再取出分数不大于当前时间的元素，移入处理中集合，分数为处理截止时间
+     * 待处理集合中已存在相同元素时，处理超时的元素直接丢弃，以待处理集合中的分数为准
+     * 当前时间与处理截止时间都取自redis服务端，各节点的时钟偏差不会提前或推迟领取
+     * 两个键需在redis集群的同一个槽中，如使用相同的hash tag：{jobs}与{jobs}:inflight
+     *
+     * @param redisTemplate     redis操作模板
+     * @param key               待处理集合的键，分数为执行时间
+     * @param inflightKey       处理中集合的键，分数为处理截止时间
+     * @param visibilityTimeout 处理超时时间，单位毫秒，超过后元素重新领取
+     * @param batchSize         最多领取数量
+     * @return 领取的元素与处理截止时间
+     */
+    ClaimedMembers claimDue(RedisTemplate<String, ?> redisTemplate, String key, String inflightKey, long visibilityTimeout, int batchSize);
+
+    /**
+     * 确认元素处理完成，只有元素仍由本次领取持有（截止时间相同）时才从处理中集合删除，同时删除其失败次数
+     *
+     * @param redisTemplate redis操作模板
+     * @param inflightKey   处理中集合的键
+     * @param attemptsKey   失败次数的hash键
+     * @param member        元素
+     * @param deadline      领取时的处理截止时间
+     * @return {@link #ACK_NOT_HELD}、{@link #ACK_DONE}或{@link #ACK_LATE}
+     */
+    int ack(RedisTemplate<String, ?> redisTemplate, String inflightKey, String attemptsKey, byte[] member, long deadline);
+
+    /**
+     * 元素处理失败，只有元素仍由本次领取持有时才生效：失败次数加1，未达到maxAttempts时按退避时间放回待处理集合，
+     * 退避时间为backoff乘以2的失败次数减1次方，最多maxBackoff；达到maxAttempts时删除元素与失败次数
+     * 待处理集合中已存在相同元素时不放回，以待处理集合中的分数为准
+     *
+     * @param redisTemplate redis操作模板
+     * @param key           待处理集合的键
+     * @param inflightKey   处理中集合的键
+     * @param attemptsKey   失败次数的hash键
+     * @param member        元素
+     * @param deadline      领取时的处理截止时间
+     * @param maxAttempts   最多执行次数
+     * @param backoff       首次退避时间，单位毫秒
+     * @param maxBackoff    最大退避时间，单位毫秒
+     * @return {@link #ACK_NOT_HELD}、{@link #NACK_EXHAUSTED}或当前失败次数
+     */
+    int nack(RedisTemplate<String, ?> redisTemplate, String key, String inflightKey, String attemptsKey, byte[] member, long deadline,
+             int maxAttempts, long backoff, long maxBackoff);
+}
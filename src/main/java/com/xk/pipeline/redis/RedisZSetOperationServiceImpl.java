@@ -0,0 +1,118 @@
+package com.xk.pipeline.redis;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 21:30
+ */
+@Component
+public class RedisZSetOperationServiceImpl implements RedisZSetOperationService {
+
+    /**
+     * lua脚本：按redis当前时间加上延迟时间添加或更新元素
+     * KEYS[1] 集合，ARGV[1] 元素，ARGV[2] 延迟时间
+     */
+    private static final RedisScript<Long> ADD_DELAYED = new DefaultRedisScript<>(RedisScripts.REDIS_NOW +
+            "return redis.call('zadd', KEYS[1], now + tonumber(ARGV[2]), ARGV[1])", Long.class);
+
+    /**
+     * lua脚本：放回处理超时的元素，领取一批到期元素并移入处理中集合，第一个返回值为处理截止时间
+     * KEYS[1] 待处理集合，KEYS[2] 处理中集合
+     * ARGV[1] 处理超时时间，ARGV[2] 最多领取数量
+     */
+    private static final RedisScript<List> CLAIM_DUE = new DefaultRedisScript<>(RedisScripts.REDIS_NOW +
+            "local deadline = now + tonumber(ARGV[1])\n" +
+            "local expired = redis.call('zrangebyscore', KEYS[2], '-inf', now, 'limit', 0, ARGV[2])\n" +
+            "for i = 1, #expired do\n" +
+            "    redis.call('zadd', KEYS[1], 'NX', now, expired[i])\n" +
+            "    redis.call('zrem', KEYS[2], expired[i])\n" +
+            "end\n" +
+            "local due = redis.call('zrangebyscore', KEYS[1], '-inf', now, 'limit', 0, ARGV[2])\n" +
+            "for i = 1, #due do\n" +
+            "    redis.call('zrem', KEYS[1], due[i])\n" +
+            "    redis.call('zadd', KEYS[2], deadline, due[i])\n" +
+            "end\n" +
+            "table.insert(due, 1, string.format('%d', deadline))\n" +
+            "return due", List.class);
+
+    /**
+     * lua脚本：处理截止时间相同则删除元素与失败次数，超过截止时间后删除返回2
+     * KEYS[1] 处理中集合，KEYS[2] 失败次数，ARGV[1] 元素，ARGV[2] 处理截止时间
+     */
+    private static final RedisScript<Long> ACK = new DefaultRedisScript<>(RedisScripts.REDIS_NOW +
+            "local deadline = tonumber(ARGV[2])\n" +
+            "local score = redis.call('zscore', KEYS[1], ARGV[1])\n" +
+            "if not score or tonumber(score) ~= deadline then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('zrem', KEYS[1], ARGV[1])\n" +
+            "redis.call('hdel', KEYS[2], ARGV[1])\n" +
+            "if now > deadline then\n" +
+            "    return 2\n" +
+            "end\n" +
+            "return 1", Long.class);
+
+    /**
+     * lua脚本：处理截止时间相同则失败次数加1，未达到最多执行次数时按退避时间放回待处理集合，否则删除返回-1
+     * KEYS[1] 待处理集合，KEYS[2] 处理中集合，KEYS[3] 失败次数
+     * ARGV[1] 元素，ARGV[2] 处理截止时间，ARGV[3] 最多执行次数，ARGV[4] 首次退避时间，ARGV[5] 最大退避时间
+     */
+    private static final RedisScript<Long> NACK = new DefaultRedisScript<>(RedisScripts.REDIS_NOW +
+            "local score = redis.call('zscore', KEYS[2], ARGV[1])\n" +
+            "if not score or tonumber(score) ~= tonumber(ARGV[2]) then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('zrem', KEYS[2], ARGV[1])\n" +
+            "local attempts = redis.call('hincrby', KEYS[3], ARGV[1], 1)\n" +
+            "if attempts >= tonumber(ARGV[3]) then\n" +
+            "    redis.call('hdel', KEYS[3], ARGV[1])\n" +
+            "    return -1\n" +
+            "end\n" +
+            "local delay = math.min(tonumber(ARGV[4]) * 2 ^ (attempts - 1), tonumber(ARGV[5]))\n" +
+            "redis.call('zadd', KEYS[1], 'NX', now + math.floor(delay), ARGV[1])\n" +
+            "return attempts", Long.class);
+
+    @Override
+    public boolean addDelayed(RedisTemplate<String, ?> redisTemplate, String key, byte[] member, long delayMillis) {
+        Long added = RedisScripts.execute(redisTemplate, ADD_DELAYED, Collections.singletonList(key),
+                member, String.valueOf(Math.max(0, delayMillis)).getBytes());
+        return added != null && added > 0;
+    }
+
+    @Override
+    public ClaimedMembers claimDue(RedisTemplate<String, ?> redisTemplate, String key, String inflightKey, long visibilityTimeout, int batchSize) {
+        List<byte[]> list = RedisScripts.execute(redisTemplate, CLAIM_DUE, Arrays.asList(key, inflightKey),
+                String.valueOf(visibilityTimeout).getBytes(), String.valueOf(batchSize).getBytes());
+        if (list == null || list.size() <= 1) {
+            return ClaimedMembers.EMPTY;
+        }
+        long deadline = Long.parseLong(new String(list.get(0), StandardCharsets.UTF_8));
+        return new ClaimedMembers(deadline, list.subList(1, list.size()));
+    }
+
+    @Override
+    public int ack(RedisTemplate<String, ?> redisTemplate, String inflightKey, String attemptsKey, byte[] member, long deadline) {
+        Long result = RedisScripts.execute(redisTemplate, ACK, Arrays.asList(inflightKey, attemptsKey),
+                member, String.valueOf(deadline).getBytes());
+        return result == null ? ACK_NOT_HELD : result.intValue();
+    }
+
+    @Override
+    public int nack(RedisTemplate<String, ?> redisTemplate, String key, String inflightKey, String attemptsKey, byte[] member, long deadline,
+                    int maxAttempts, long backoff, long maxBackoff) {
+        Long result = RedisScripts.execute(redisTemplate, NACK, Arrays.asList(key, inflightKey, attemptsKey),
+                member, String.valueOf(deadline).getBytes(), String.valueOf(maxAttempts).getBytes(),
+                String.valueOf(Math.max(0, backoff)).getBytes(), String.valueOf(Math.max(0, maxBackoff)).getBytes());
+        return result == null ? ACK_NOT_HELD : result.intValue();
+    }
+}
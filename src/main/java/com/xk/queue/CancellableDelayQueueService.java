@@ -0,0 +1,37 @@
+package com.xk.queue;
+
+import com.xk.queue.delay.DelayJobHandle;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 21:05
+ * 可以取消或重新设置延迟时间的延迟队列服务
+ * 取消的任务作为墓碑由调度引擎延迟删除，不会被执行
+ */
+public interface CancellableDelayQueueService extends DelayQueueService {
+
+    /**
+     * 延迟队列添加任务，返回可以取消或重新设置延迟时间的句柄
+     * @param runnable 任务
+     * @param delayTime 延迟执行时间
+     * @param timeUnit 时间单位
+     * @return 任务句柄
+     */
+    DelayJobHandle schedule(@Nonnull Runnable runnable, long delayTime, @Nonnull TimeUnit timeUnit);
+
+    /**
+     * 等待执行的任务数量，不包含已取消的任务
+     * @return 任务数量
+     */
+    int size();
+
+    /**
+     * 已取消但还未从队列中删除的任务数量
+     * @return 墓碑数量
+     */
+    int tombstoneSize();
+}
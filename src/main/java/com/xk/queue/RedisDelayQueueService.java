@@ -0,0 +1,58 @@
+package com.xk.queue;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 12:30
+ * 分布式延迟队列服务，任务保存在redis中，无法保存Runnable：任务由注册的任务类型与可序列化的载荷组成，
+ * 所有节点需要注册相同的任务类型
+ */
+public interface RedisDelayQueueService extends InitializingBean, DisposableBean {
+
+    /**
+     * 注册任务类型
+     * @param type 任务类型，不能包含':'
+     * @param serializer 载荷的序列化方式
+     * @param handler 任务执行
+     */
+    <T> void registerJobType(String type, RedisSerializer<T> serializer, Consumer<T> handler);
+
+    /**
+     * 注册载荷为字符串的任务类型
+     * @param type 任务类型，不能包含':'
+     * @param handler 任务执行
+     */
+    void registerJobType(String type, Consumer<String> handler);
+
+    /**
+     * 延迟队列添加任务，相同类型与载荷的任务已存在时更新执行时间
+     * @param type 已注册的任务类型
+     * @param payload 载荷
+     * @param delayTime 延迟执行时间
+     * @param timeUnit 时间单位
+     * @return 是否为新添加的任务
+     */
+    <T> boolean add(String type, T payload, long delayTime, @Nonnull TimeUnit timeUnit);
+
+    /**
+     * 取消未领取的任务，已领取的任务无法取消
+     * @param type 已注册的任务类型
+     * @param payload 载荷
+     * @return 是否删除
+     */
+    <T> boolean cancel(String type, T payload);
+
+    /**
+     * 所有节点待处理与处理中的任务数量
+     * @return 任务数量
+     */
+    int size();
+}
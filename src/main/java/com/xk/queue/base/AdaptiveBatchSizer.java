@@ -0,0 +1,150 @@
+package com.xk.queue.base;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 13:10
+ * 根据消费耗时与到达速率自适应调整批量消费数量
+ * 消费耗时超过目标时按比例缩小批量；批量已满、单个元素耗时没有变差、预估放大后耗时不超标，
+ * 且到达速率能在最大等待时间内攒满更大的批量时，逐步放大批量
+ */
+public class AdaptiveBatchSizer {
+
+    /**
+     * 指数加权平均的权重
+     */
+    private static final double ALPHA = 0.3;
+
+    /**
+     * 单个元素耗时允许变差的比例，超过则认为放大批量不再划算
+     */
+    private static final double COST_TOLERANCE = 0.1;
+
+    /**
+     * 批量数量下限
+     */
+    private final int minBatchSize;
+
+    /**
+     * 批量数量上限
+     */
+    private final int maxBatchSize;
+
+    /**
+     * 单批消费耗时目标，单位纳秒
+     */
+    private final long targetLatencyNanos;
+
+    /**
+     * 当前批量数量
+     */
+    private volatile int batchSize;
+
+    /**
+     * 单个元素平均消费耗时，单位纳秒
+     */
+    private double ewmaElementCost;
+
+    /**
+     * 平均到达速率，单位元素/毫秒
+     */
+    private double ewmaArrivalRate;
+
+    /**
+     * 上一次记录时间
+     */
+    private long lastRecordNanos;
+
+    /**
+     * 上一次记录时队列剩余数量
+     */
+    private int lastRemaining;
+
+    public AdaptiveBatchSizer(int initialBatchSize, int minBatchSize, int maxBatchSize, long targetLatency, TimeUnit timeUnit) {
+        if (minBatchSize <= 0 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException("batch size bounds are illegal! min=" + minBatchSize + ", max=" + maxBatchSize);
+        }
+        if (targetLatency <= 0) {
+            throw new IllegalArgumentException("targetLatency must be positive!");
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetLatencyNanos = timeUnit.toNanos(targetLatency);
+        this.batchSize = clamp(initialBatchSize);
+        this.lastRecordNanos = System.nanoTime();
+    }
+
+    /**
+     * 记录一次批量消费
+     * @param size 本批数量
+     * @param latencyNanos 消费耗时
+     * @param remaining 取出本批后队列剩余数量
+     * @param maxWaitTime 队列的最大等待时间，单位毫秒，小于等于0表示未开启按时消费
+     * @return 调整后的批量数量
+     */
+    public synchronized int record(int size, long latencyNanos, int remaining, long maxWaitTime) {
+        if (size <= 0) {
+            return batchSize;
+        }
+        long now = System.nanoTime();
+        long elapsedNanos = Math.max(now - lastRecordNanos, 1L);
+        // 两次消费之间的到达数 = 本次取出数 + 剩余数的变化
+        long arrivals = Math.max((long) size + remaining - lastRemaining, 0L);
+        double arrivalRate = arrivals * 1_000_000d / elapsedNanos;
+        ewmaArrivalRate = ewmaArrivalRate == 0 ? arrivalRate : ewmaArrivalRate + ALPHA * (arrivalRate - ewmaArrivalRate);
+        lastRecordNanos = now;
+        lastRemaining = remaining;
+
+        double elementCost = (double) latencyNanos / size;
+        double previousCost = ewmaElementCost;
+        ewmaElementCost = previousCost == 0 ? elementCost : previousCost + ALPHA * (elementCost - previousCost);
+
+        int current = batchSize;
+        if (latencyNanos > targetLatencyNanos) {
+            // 超出目标耗时，按比例缩小，单次最多缩小一半
+            int shrink = (int) (current * ((double) targetLatencyNanos / latencyNanos));
+            batchSize = clamp(Math.max(shrink, current / 2));
+        } else if (size >= current && elementCost <= previousCost * (1 + COST_TOLERANCE) && canFill(current, maxWaitTime)) {
+            int grow = clamp(current + Math.max(1, current / 4));
+            // 按当前单个元素耗时预估，放大后仍不超过目标耗时才放大
+            if (elementCost * grow <= targetLatencyNanos) {
+                batchSize = grow;
+            }
+        }
+        return batchSize;
+    }
+
+    /**
+     * 到达速率不足以在最大等待时间内攒满批量时，放大批量只会让按时触发的批量更不满
+     */
+    private boolean canFill(int current, long maxWaitTime) {
+        if (maxWaitTime <= 0) {
+            return true;
+        }
+        return ewmaArrivalRate * maxWaitTime >= current;
+    }
+
+    private int clamp(int size) {
+        return Math.min(maxBatchSize, Math.max(minBatchSize, size));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 单个元素平均消费耗时，单位纳秒
+     */
+    public synchronized double getElementCost() {
+        return ewmaElementCost;
+    }
+
+    /**
+     * 平均到达速率，单位元素/秒
+     */
+    public synchronized double getArrivalRate() {
+        return ewmaArrivalRate * 1000;
+    }
+}
@@ -0,0 +1,34 @@
+package com.xk.queue.base;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:20
+ * 批量消费列表缓冲池，池空时新建，池满时丢弃
+ */
+class BatchBufferPool<T> {
+
+    /**
+     * 缓冲数量，消费线程与同步消费的添加线程各占一个即可
+     */
+    private static final int POOL_SIZE = 4;
+
+    private final ArrayBlockingQueue<RecyclableBatch<T>> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    RecyclableBatch<T> acquire(int capacity) {
+        RecyclableBatch<T> batch = pool.poll();
+        if (batch == null) {
+            batch = new RecyclableBatch<>(capacity);
+        } else {
+            batch.ensureCapacity(capacity);
+        }
+        return batch;
+    }
+
+    void release(RecyclableBatch<T> batch) {
+        batch.reset();
+        pool.offer(batch);
+    }
+}
@@ -1,12 +1,23 @@
 package com.xk.queue.base;
 
+import com.xk.queue.journal.BatchJournal;
+import com.xk.queue.journal.JournalSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -17,20 +28,25 @@ import java.util.function.Consumer;
  * @date 2021-12-24 10:01
  * 批量消费阻塞队列
  */
-public class BatchConsumeBlockingQueue<T> {
+public class BatchConsumeBlockingQueue<T> implements BatchConsumeQueue<T> {
 
     private static final Logger logger = LoggerFactory.getLogger(BatchConsumeBlockingQueue.class);
 
     /**
-     * 批量消费数量
+     * 批量消费数量，开启自适应后会动态调整
      */
-    private final int batchConsumeSize;
+    private volatile int batchConsumeSize;
 
     /**
      * 最多累积数量，超过此阈值则会触发消费
-     * 小于0，则不开启按量消费
+     * 小于0，则不开启按量消费；开启自适应后与批量消费数量等比例调整
      */
-    private final int maxWaitSize;
+    private volatile int maxWaitSize;
+
+    /**
+     * 初始最多累积数量与批量消费数量的比例
+     */
+    private final double waitSizeRatio;
 
     /**
      * 最大等待时间,超过此阈值则会触发消费
@@ -38,6 +54,11 @@ public class BatchConsumeBlockingQueue<T> {
      */
     private final long maxWaitTime;
 
+    /**
+     * 最大等待时间，单位纳秒
+     */
+    private final long maxWaitNanos;
+
     /**
      * 消费者
      */
@@ -46,7 +67,12 @@ public class BatchConsumeBlockingQueue<T> {
     /**
      * 消费队列
      */
-    private final LinkedBlockingQueue<T> consumeQueue;
+    private final ConsumeBuffer<T> consumeQueue;
+
+    /**
+     * 是否只在达到阈值时唤醒消费线程，否则每次添加都唤醒
+     */
+    private final boolean thresholdWakeup;
 
     /**
      * 消费锁
@@ -59,21 +85,175 @@ public class BatchConsumeBlockingQueue<T> {
     private final Condition consumeCondition = consumeLock.newCondition();
 
     /**
-     * 上一次消费时间
+     * 等待空位的生产者锁
+     */
+    private final ReentrantLock notFullLock = new ReentrantLock();
+
+    /**
+     * 等待空位的生产者锁condition
+     */
+    private final Condition notFullCondition = notFullLock.newCondition();
+
+    /**
+     * 正在等待空位的生产者数量
+     */
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    /**
+     * 队列已满时的处理策略
+     */
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.ABORT;
+
+    /**
+     * BLOCK策略的最长等待时间，单位毫秒，小于等于0时一直等待直到有空位或队列关闭
+     */
+    private volatile long blockTimeout;
+
+    /**
+     * SPILL策略的备用存储
+     */
+    private volatile SpillStore<T> spillStore;
+
+    /**
+     * DROP_NEWEST、DROP_OLDEST策略丢弃元素时的回调
+     */
+    private volatile Consumer<? super T> dropHandler;
+
+    /**
+     * 队列已满时各处理策略的触发次数
+     */
+    private final OverflowStats overflowStats;
+
+    /**
+     * 自适应批量，为null则不开启
+     */
+    private volatile AdaptiveBatchSizer batchSizer;
+
+    /**
+     * 持久化日志，为null则不开启
+     */
+    private volatile BatchJournal<T> journal;
+
+    /**
+     * 下一个取出元素在日志中的序号，消费锁保护
+     */
+    private long drainSeq;
+
+    /**
+     * 批量消费列表缓冲池，为null则每批新建列表
+     */
+    private volatile BatchBufferPool<T> bufferPool;
+
+    /**
+     * 消费失败时的拆分重试，为null则不重试
+     */
+    private volatile BisectingRetry<T> bisectingRetry;
+
+    /**
+     * 未开启拆分重试时消费失败的批次，元素交给死信处理，为null则只记录日志
+     */
+    private volatile DeadLetterHandler<? super T> deadLetterHandler;
+
+    /**
+     * 指标记录，为null则不记录
+     */
+    private volatile BatchQueueRecorder recorder;
+
+    /**
+     * 端到端耗时采样，与recorder同时设置
+     */
+    private volatile LatencySampler latencySampler;
+
+    /**
+     * 消费线程是否正在等待唤醒
+     */
+    private volatile boolean consumerWaiting;
+
+    /**
+     * 是否已向调度器注册按时消费
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * 上一次消费时间，System.nanoTime()
+     */
+    private volatile long lastConsumeTime = System.nanoTime();
+
+    /**
+     * 已注册的按时消费任务
+     */
+    private volatile ScheduledFuture<?> flushFuture;
+
+    /**
+     * 消费线程
+     */
+    private Thread consumerThread;
+
+    /**
+     * 是否接受添加，关闭后为false
+     */
+    private volatile boolean accepting = true;
+
+    /**
+     * 是否正在关闭，关闭时忽略阈值立即消费
+     */
+    private volatile boolean draining;
+
+    /**
+     * 关闭截止时间已到，停止取出新的批次
+     */
+    private volatile boolean drainStopped;
+
+    /**
+     * 关闭的截止时间，System.nanoTime()，在draining之前写入
+     */
+    private volatile long drainDeadline;
+
+    /**
+     * 关闭时是否由消费线程取出剩余元素，parallelism为1时保持串行消费
+     */
+    private volatile boolean drainByConsumer;
+
+    private final AtomicBoolean shutdownStarted = new AtomicBoolean();
+
+    /**
+     * 关闭期间消费完成的元素数量
      */
-    private volatile long lastConsumeTime = System.currentTimeMillis();
+    private final LongAdder shutdownFlushed = new LongAdder();
 
     public BatchConsumeBlockingQueue(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, Consumer<List<T>> consumer) {
+        this(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, BufferType.LINKED, consumer);
+    }
+
+    public BatchConsumeBlockingQueue(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, BufferType bufferType, Consumer<List<T>> consumer) {
+        this(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, bufferType, consumer, new OverflowStats());
+    }
+
+    BatchConsumeBlockingQueue(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, BufferType bufferType,
+                              Consumer<List<T>> consumer, OverflowStats overflowStats) {
+        this(bufferType.create(capacity), batchConsumeSize, maxWaitSize, maxWaitTime, consumer, overflowStats);
+    }
+
+    /**
+     * 使用自定义存储引擎，如{@link CoalescingConsumeBuffer}
+     * 除LinkedConsumeBuffer外，只在达到阈值时唤醒消费线程
+     */
+    public BatchConsumeBlockingQueue(ConsumeBuffer<T> consumeBuffer, int batchConsumeSize, int maxWaitSize, long maxWaitTime, Consumer<List<T>> consumer) {
+        this(consumeBuffer, batchConsumeSize, maxWaitSize, maxWaitTime, consumer, new OverflowStats());
+    }
+
+    private BatchConsumeBlockingQueue(ConsumeBuffer<T> consumeBuffer, int batchConsumeSize, int maxWaitSize, long maxWaitTime,
+                                      Consumer<List<T>> consumer, OverflowStats overflowStats) {
+        Assert.notNull(consumeBuffer, "consumeBuffer can not be null!");
+        this.overflowStats = overflowStats;
         this.batchConsumeSize = batchConsumeSize;
         this.maxWaitSize = maxWaitSize;
+        this.waitSizeRatio = batchConsumeSize > 0 ? (double) maxWaitSize / batchConsumeSize : 1d;
         this.maxWaitTime = maxWaitTime;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitTime);
         this.consumer = consumer;
-        if (capacity <= 0) {
-            // 小于0视作无界队列
-            this.consumeQueue = new LinkedBlockingQueue<>();
-        } else {
-            this.consumeQueue = new LinkedBlockingQueue<>(capacity);
-        }
+        this.consumeQueue = consumeBuffer;
+        this.thresholdWakeup = !(consumeBuffer instanceof LinkedConsumeBuffer);
         // 初始化消费线程
         begin();
     }
@@ -82,33 +262,510 @@ public class BatchConsumeBlockingQueue<T> {
         if (maxWaitTime <= 0 && maxWaitSize <= 0) {
             throw new IllegalArgumentException("batchConsume must choose time or size consume!");
         }
-        new Thread(this::batchConsume).start();
-        if (maxWaitTime > 0) {
-            new Thread(this::delayConsume).start();
-        }
+        this.consumerThread = new Thread(this::batchConsume);
+        this.consumerThread.start();
+        scheduleFlush(maxWaitNanos);
     }
 
+    @Override
     public void add(T t) {
-        boolean add = this.consumeQueue.add(t);
-        if (add) {
+        if (!accepting) {
+            throw new IllegalStateException("Queue is shut down");
+        }
+        BatchJournal<T> journal = this.journal;
+        if (journal != null) {
+            addJournaled(journal, t);
+            return;
+        }
+        if (!this.consumeQueue.offer(t) && !addOnOverflow(t, null)) {
+            return;
+        }
+        afterAdd();
+    }
+
+    /**
+     * 序列化在锁外完成，入队与写日志在日志锁内完成
+     */
+    private void addJournaled(BatchJournal<T> journal, T t) {
+        byte[] payload = journal.serialize(t);
+        if (!journal.appendIf(payload, () -> this.consumeQueue.offer(t)) && !addOnOverflow(t, payload)) {
+            return;
+        }
+        afterAdd();
+    }
+
+    private void afterAdd() {
+        BatchQueueRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onAdd();
+            LatencySampler latencySampler = this.latencySampler;
+            if (latencySampler != null) {
+                latencySampler.onEnqueue();
+            }
+        }
+        if (thresholdWakeup) {
+            signalConsumeIfNecessary();
+        } else {
             signalConsume();
         }
     }
 
-    public boolean isEmpty() {
-        return this.consumeQueue.isEmpty();
+    @Override
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        Assert.notNull(overflowPolicy, "overflowPolicy can not be null!");
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public void setBlockTimeout(long blockTimeout, TimeUnit timeUnit) {
+        Assert.notNull(timeUnit, "timeUnit can not be null!");
+        this.blockTimeout = timeUnit.toMillis(blockTimeout);
+    }
+
+    @Override
+    public void setSpillStore(SpillStore<T> spillStore) {
+        this.spillStore = spillStore;
+    }
+
+    @Override
+    public void setDropHandler(Consumer<? super T> dropHandler) {
+        this.dropHandler = dropHandler;
+    }
+
+    @Override
+    public OverflowStats getOverflowStats() {
+        return this.overflowStats;
+    }
+
+    @Override
+    public void enableAdaptiveBatchSize(int minBatchSize, int maxBatchSize, long targetLatency, TimeUnit timeUnit) {
+        this.batchSizer = new AdaptiveBatchSizer(this.batchConsumeSize, minBatchSize, maxBatchSize, targetLatency, timeUnit);
+        applyBatchSize(this.batchSizer.getBatchSize());
+    }
+
+    @Override
+    public void enableJournal(File directory, JournalSerializer<T> serializer) {
+        try {
+            enableJournal(new BatchJournal<>(directory, serializer));
+        } catch (IOException e) {
+            throw new IllegalStateException("open journal failed! directory=" + directory, e);
+        }
+    }
+
+    /**
+     * 开启持久化日志并重放未确认的元素，必须在添加元素之前调用
+     * @param journal 持久化日志，每个队列独占
+     */
+    public void enableJournal(BatchJournal<T> journal) {
+        Assert.notNull(journal, "journal can not be null!");
+        consumeLock.lock();
+        try {
+            if (this.consumeQueue instanceof CoalescingConsumeBuffer) {
+                throw new IllegalStateException("journal is not supported by coalescing buffer!");
+            }
+            if (this.journal != null || !this.consumeQueue.isEmpty()) {
+                throw new IllegalStateException("journal must be enabled once before adding elements!");
+            }
+            this.drainSeq = journal.getAckedSeq();
+            this.journal = journal;
+        } finally {
+            consumeLock.unlock();
+        }
+        int replayed = journal.replay(this::replay);
+        if (replayed > 0) {
+            logger.info("journal replayed {} elements", replayed);
+        }
+    }
+
+    @Override
+    public void closeJournal() {
+        BatchJournal<T> journal = this.journal;
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * 重放的元素已在日志中，只入队不重复写日志；队列已满时等待消费
+     */
+    private void replay(T t) {
+        while (!this.consumeQueue.offer(t)) {
+            signalConsume();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        afterAdd();
+    }
+
+    /**
+     * 批次消费结束后确认，消费失败的批次已交给死信处理，同样确认，检查点不会停在失败批次之前
+     */
+    private void ack(long batchSeq, int size) {
+        BatchJournal<T> journal = this.journal;
+        if (journal != null) {
+            journal.ack(batchSeq, size);
+        }
+    }
+
+    @Override
+    public void enableBatchRecycle() {
+        if (this.bufferPool == null) {
+            this.bufferPool = new BatchBufferPool<>();
+        }
+    }
+
+    @Override
+    public void enableBisectingRetry(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit timeUnit, DeadLetterHandler<? super T> deadLetterHandler) {
+        this.bisectingRetry = new BisectingRetry<>(maxRetries, initialBackoff, maxBackoff, timeUnit, deadLetterHandler);
+    }
+
+    @Override
+    public void setDeadLetterHandler(DeadLetterHandler<? super T> deadLetterHandler) {
+        this.deadLetterHandler = deadLetterHandler;
+    }
+
+    @Override
+    public void setRecorder(BatchQueueRecorder recorder) {
+        consumeLock.lock();
+        try {
+            // 合并存储的入队与取出数量不对应，不采样端到端耗时
+            boolean sampling = recorder != null && !(this.consumeQueue instanceof CoalescingConsumeBuffer);
+            this.latencySampler = sampling ? new LatencySampler(this.consumeQueue.size()) : null;
+            this.recorder = recorder;
+        } finally {
+            consumeLock.unlock();
+        }
     }
 
-    private void delayConsume() {
-        while (true) {
+    /**
+     * 关闭队列：停止接受添加，忽略阈值立即消费剩余元素直到消费完毕或到达截止时间，之后停止消费线程；
+     * 截止时间到达时仍未消费的元素开启持久化日志时保留在日志中，否则交给丢弃回调
+     * parallelism为1时由消费线程继续取出，消费者仍被串行调用、批次顺序不变；
+     * parallelism大于1时等待消费线程消费完当前批次并退出后，再由parallelism个线程并行取出，消费者会被并发调用，
+     * 需要保证线程安全且不依赖批次顺序；关闭期间仍在添加的元素可能无法被消费
+     * @param timeout 最长等待时间
+     * @param timeUnit 时间单位
+     * @param parallelism 并行消费的线程数
+     * @return 关闭结果
+     */
+    @Override
+    public DrainReport shutdown(long timeout, TimeUnit timeUnit, int parallelism) {
+        Assert.notNull(timeUnit, "timeUnit can not be null!");
+        if (!shutdownStarted.compareAndSet(false, true)) {
+            throw new IllegalStateException("queue is already shut down!");
+        }
+        long start = System.nanoTime();
+        long deadline = start + timeUnit.toNanos(timeout);
+        this.accepting = false;
+        // 唤醒BLOCK策略下等待空位的生产者，不再等待
+        signalNotFull();
+        this.drainDeadline = deadline;
+        this.drainByConsumer = parallelism <= 1;
+        this.draining = true;
+        ScheduledFuture<?> flushFuture = this.flushFuture;
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+        }
+        // 唤醒等待中的消费线程，立即消费一批，parallelism为1时继续取出剩余元素
+        signalConsume();
+        // 消费线程退出前不启动并行线程，同一时刻只有消费线程在调用消费者
+        boolean completed = join(Collections.singletonList(consumerThread), deadline);
+        if (completed && parallelism > 1) {
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                Thread worker = new Thread(() -> drainUntil(deadline), "batch-queue-drain-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+            completed = join(workers, deadline);
+        }
+        this.drainStopped = true;
+        long dropped = dropRemaining();
+        if (consumerThread.isAlive()) {
+            consumerThread.interrupt();
+        }
+        return new DrainReport(shutdownFlushed.sum(), dropped, completed && dropped == 0,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * 关闭期间取出剩余元素，由消费线程或并行线程调用
+     */
+    private void drainUntil(long deadline) {
+        while (!drainStopped && System.nanoTime() - deadline < 0) {
+            List<T> batch = newBatch();
+            long batchSeq;
+            consumeLock.lock();
             try {
-                Thread.sleep(this.maxWaitTime);
+                batchSeq = drain(batch);
+            } finally {
+                consumeLock.unlock();
+            }
+            if (batch.isEmpty()) {
+                recycle(batch);
+                return;
+            }
+            consumeBatch(batch, batchSeq, FlushTrigger.SHUTDOWN);
+            recycle(batch);
+        }
+    }
+
+    private boolean join(List<Thread> threads, long deadline) {
+        for (Thread thread : threads) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (millis <= 0) {
+                return !thread.isAlive();
+            }
+            try {
+                thread.join(millis);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                return false;
             }
-            if (Thread.currentThread().isInterrupted()) {
-                break;
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 截止时间到达后剩余的元素，开启持久化日志时保留在日志中，否则取出并交给丢弃回调
+     */
+    private long dropRemaining() {
+        if (this.journal != null) {
+            return this.consumeQueue.size();
+        }
+        List<T> remaining = new ArrayList<>();
+        consumeLock.lock();
+        try {
+            T t;
+            while ((t = this.consumeQueue.poll()) != null) {
+                remaining.add(t);
+            }
+        } finally {
+            consumeLock.unlock();
+        }
+        if (!remaining.isEmpty()) {
+            logger.warn("queue shut down with {} elements not consumed", remaining.size());
+        }
+        for (T t : remaining) {
+            dropped(t);
+        }
+        return remaining.size();
+    }
+
+    public int getBatchConsumeSize() {
+        return this.batchConsumeSize;
+    }
+
+    public int getMaxWaitSize() {
+        return this.maxWaitSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.consumeQueue.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return this.consumeQueue.size();
+    }
+
+    /**
+     * 队列已满时按策略处理
+     * @return 元素最终进入队列返回true，被丢弃或转存返回false
+     */
+    private boolean addOnOverflow(T t, byte[] payload) {
+        overflowStats.overflow.increment();
+        switch (overflowPolicy) {
+            case BLOCK:
+                return offerBlocking(t, payload);
+            case DROP_NEWEST:
+                overflowStats.droppedNewest.increment();
+                dropped(t);
+                return false;
+            case DROP_OLDEST:
+                return offerDropOldest(t, payload);
+            case CALLER_RUNS:
+                return offerCallerRuns(t, payload);
+            case SPILL:
+                return spill(t);
+            default:
+                throw reject();
+        }
+    }
+
+    /**
+     * 入队，开启持久化日志时同时写日志
+     * @param payload 序列化后的元素，未开启持久化日志时为null
+     */
+    private boolean offer(T t, byte[] payload) {
+        BatchJournal<T> journal = this.journal;
+        if (journal == null || payload == null) {
+            return this.consumeQueue.offer(t);
+        }
+        return journal.appendIf(payload, () -> this.consumeQueue.offer(t));
+    }
+
+    private boolean offerBlocking(T t, byte[] payload) {
+        overflowStats.blocked.increment();
+        long blockTimeout = this.blockTimeout;
+        boolean timed = blockTimeout > 0;
+        long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        final ReentrantLock lock = this.notFullLock;
+        lock.lock();
+        waitingProducers.incrementAndGet();
+        try {
+            for (; ; ) {
+                if (!accepting) {
+                    throw new IllegalStateException("Queue is shut down");
+                }
+                if (offer(t, payload)) {
+                    return true;
+                }
+                if (!timed) {
+                    notFullCondition.await();
+                    continue;
+                }
+                if (nanos <= 0L) {
+                    overflowStats.blockTimeout.increment();
+                    throw reject();
+                }
+                nanos = notFullCondition.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject();
+        } finally {
+            waitingProducers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private boolean offerDropOldest(T t, byte[] payload) {
+        final ReentrantLock consumeLock = this.consumeLock;
+        List<T> droppedList = new ArrayList<>(1);
+        consumeLock.lock();
+        try {
+            do {
+                T oldest = this.consumeQueue.poll();
+                if (oldest != null) {
+                    overflowStats.droppedOldest.increment();
+                    droppedList.add(oldest);
+                    // 丢弃的元素视为已消费
+                    ack(drainSeq++, 1);
+                    LatencySampler latencySampler = this.latencySampler;
+                    if (latencySampler != null) {
+                        latencySampler.onDequeue(1, null);
+                    }
+                }
+            } while (!offer(t, payload));
+        } finally {
+            consumeLock.unlock();
+        }
+        // 回调在锁外执行
+        for (T oldest : droppedList) {
+            dropped(oldest);
+        }
+        return true;
+    }
+
+    private void dropped(T t) {
+        Consumer<? super T> dropHandler = this.dropHandler;
+        if (dropHandler == null) {
+            return;
+        }
+        try {
+            dropHandler.accept(t);
+        } catch (Exception e) {
+            logger.error("drop handler failed", e);
+        }
+    }
+
+    private boolean offerCallerRuns(T t, byte[] payload) {
+        overflowStats.callerRuns.increment();
+        do {
+            List<T> batch = newBatch();
+            long batchSeq;
+            consumeLock.lock();
+            try {
+                batchSeq = drain(batch);
+            } finally {
+                consumeLock.unlock();
             }
+            if (!batch.isEmpty()) {
+                consumeBatch(batch, batchSeq, FlushTrigger.CALLER_RUNS);
+            }
+            recycle(batch);
+        } while (!offer(t, payload));
+        return true;
+    }
+
+    /**
+     * 在消费线程以外的线程上消费一批元素
+     */
+    private void consumeBatch(List<T> batch, long batchSeq, FlushTrigger trigger) {
+        BatchQueueRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onFlush(trigger, batch.size());
+        }
+        long start = System.nanoTime();
+        int failed = batch.size();
+        try {
+            failed = consume(seal(batch));
+            ack(batchSeq, batch.size());
+        } finally {
+            if (draining) {
+                shutdownFlushed.add(batch.size());
+            }
+            if (recorder != null) {
+                recorder.onConsume(batch.size(), System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    private boolean spill(T t) {
+        SpillStore<T> spillStore = this.spillStore;
+        if (spillStore == null) {
+            logger.warn("overflow policy is SPILL but spillStore is not set!");
+            throw reject();
+        }
+        spillStore.spill(t);
+        overflowStats.spilled.increment();
+        return false;
+    }
+
+    private IllegalStateException reject() {
+        overflowStats.rejected.increment();
+        return new IllegalStateException("Queue full");
+    }
+
+    /**
+     * 向共享调度器注册按时消费，同一时刻每个队列最多注册一个任务
+     */
+    private void scheduleFlush(long delayNanos) {
+        if (maxWaitTime <= 0 || draining || flushScheduled.get() || !flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        this.flushFuture = FlushScheduler.schedule(this::onFlushDeadline, delayNanos);
+    }
+
+    /**
+     * 到达注册时的截止时间：期间已经消费过则按新的上一次消费时间重新注册，
+     * 否则唤醒消费线程，由消费线程消费后重新注册
+     */
+    private void onFlushDeadline() {
+        flushScheduled.set(false);
+        long delayNanos = lastConsumeTime + maxWaitNanos - System.nanoTime();
+        if (delayNanos > 0) {
+            scheduleFlush(delayNanos);
+            return;
+        }
+        if (thresholdWakeup) {
+            signalConsumeIfNecessary();
+        } else {
             signalConsume();
         }
     }
@@ -126,40 +783,172 @@ public class BatchConsumeBlockingQueue<T> {
             if (Thread.currentThread().isInterrupted()) {
                 break;
             }
-
-            if (consumeQueue.isEmpty()) {
+            if (draining) {
+                if (drainByConsumer) {
+                    drainUntil(drainDeadline);
+                }
                 break;
             }
         }
     }
 
     private void doBatchConsume() throws InterruptedException {
-        final LinkedBlockingQueue<T> consumeQueue = this.consumeQueue;
         final ReentrantLock consumeLock = this.consumeLock;
         final Condition consumeCondition = this.consumeCondition;
-        List<T> t = new ArrayList<>();
+        List<T> t = newBatch();
+        int remaining;
+        long batchSeq;
+        FlushTrigger trigger;
         consumeLock.lockInterruptibly();
         try {
-            while (needWait()) {
-                consumeCondition.await();
+            // 先标记等待再检查阈值，保证与生产者的检查不会同时错过
+            consumerWaiting = true;
+            try {
+                while (needWait()) {
+                    consumeCondition.await();
+                }
+            } finally {
+                consumerWaiting = false;
             }
-            consumeQueue.drainTo(t, this.batchConsumeSize);
+            trigger = draining ? FlushTrigger.SHUTDOWN : sizeWait() ? FlushTrigger.TIME : FlushTrigger.SIZE;
+            batchSeq = drain(t);
+            remaining = consumeQueue.size();
             setLastConsumeTime();
         } finally {
             consumeLock.unlock();
         }
-        consumer.accept(t);
+        if (t.isEmpty()) {
+            recycle(t);
+            return;
+        }
+        AdaptiveBatchSizer batchSizer = this.batchSizer;
+        BatchQueueRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onFlush(trigger, t.size());
+        }
+        long start = System.nanoTime();
+        int failed = t.size();
+        try {
+            failed = consume(seal(t));
+            ack(batchSeq, t.size());
+        } finally {
+            if (draining) {
+                shutdownFlushed.add(t.size());
+            }
+            if (recorder != null) {
+                recorder.onConsume(t.size(), System.nanoTime() - start, failed);
+            }
+            if (batchSizer != null) {
+                applyBatchSize(batchSizer.record(t.size(), System.nanoTime() - start, remaining, maxWaitTime));
+            }
+            recycle(t);
+        }
+    }
+
+    /**
+     * 未开启拆分重试时，消费失败的批次整批交给死信处理
+     * @return 交给死信处理的元素数量
+     */
+    private int consume(List<T> batch) {
+        BisectingRetry<T> bisectingRetry = this.bisectingRetry;
+        if (bisectingRetry == null) {
+            try {
+                consumer.accept(batch);
+                return 0;
+            } catch (Exception e) {
+                logger.error("消费失败", e);
+                deadLetter(batch, e);
+                return batch.size();
+            }
+        }
+        int[] deadLetters = new int[1];
+        bisectingRetry.execute(batch, consumer, (t, cause) -> deadLetters[0]++);
+        return deadLetters[0];
+    }
+
+    private void deadLetter(List<T> batch, Throwable cause) {
+        DeadLetterHandler<? super T> deadLetterHandler = this.deadLetterHandler;
+        if (deadLetterHandler == null) {
+            return;
+        }
+        for (T t : batch) {
+            try {
+                deadLetterHandler.handle(t, cause);
+            } catch (Exception e) {
+                logger.error("dead letter handler failed", e);
+            }
+        }
+    }
+
+    private List<T> newBatch() {
+        BatchBufferPool<T> bufferPool = this.bufferPool;
+        if (bufferPool == null) {
+            return new ArrayList<>();
+        }
+        return bufferPool.acquire(this.batchConsumeSize);
+    }
+
+    private List<T> seal(List<T> batch) {
+        if (batch instanceof RecyclableBatch) {
+            ((RecyclableBatch<T>) batch).seal();
+        }
+        return batch;
+    }
+
+    private void recycle(List<T> batch) {
+        BatchBufferPool<T> bufferPool = this.bufferPool;
+        if (bufferPool != null && batch instanceof RecyclableBatch) {
+            bufferPool.release((RecyclableBatch<T>) batch);
+        }
+    }
+
+    private void applyBatchSize(int batchSize) {
+        if (batchSize == this.batchConsumeSize) {
+            return;
+        }
+        this.batchConsumeSize = batchSize;
+        if (this.maxWaitSize > 0) {
+            this.maxWaitSize = Math.max(1, (int) Math.round(batchSize * waitSizeRatio));
+        }
+    }
+
+    /**
+     * 取出一批元素并唤醒等待空位的生产者，调用方需持有消费锁
+     * @return 本批第一个元素在日志中的序号
+     */
+    private long drain(List<T> t) {
+        long batchSeq = this.drainSeq;
+        int drained = this.consumeQueue.drainTo(t, this.batchConsumeSize);
+        this.drainSeq += drained;
+        LatencySampler latencySampler = this.latencySampler;
+        if (latencySampler != null) {
+            latencySampler.onDequeue(drained, this.recorder);
+        }
+        signalNotFull();
+        return batchSeq;
+    }
+
+    private void signalNotFull() {
+        if (waitingProducers.get() > 0) {
+            final Lock lock = this.notFullLock;
+            lock.lock();
+            try {
+                notFullCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 
     private boolean needWait() {
-        return sizeWait() && timeWait();
+        return !draining && sizeWait() && timeWait();
     }
 
     private boolean timeWait() {
         if (maxWaitTime <= 0) {
             return true;
         }
-        return System.currentTimeMillis() - lastConsumeTime < maxWaitTime;
+        return System.nanoTime() - lastConsumeTime < maxWaitNanos;
     }
 
     private boolean sizeWait() {
@@ -170,7 +959,17 @@ public class BatchConsumeBlockingQueue<T> {
     }
 
     private void setLastConsumeTime() {
-        this.lastConsumeTime = System.currentTimeMillis();
+        this.lastConsumeTime = System.nanoTime();
+        scheduleFlush(maxWaitNanos);
+    }
+
+    /**
+     * 消费线程正在等待且已达到阈值时才唤醒，避免每次添加都竞争消费锁
+     */
+    private void signalConsumeIfNecessary() {
+        if (consumerWaiting && !needWait()) {
+            signalConsume();
+        }
     }
 
     private void signalConsume() {
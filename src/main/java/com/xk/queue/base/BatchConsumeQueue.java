@@ -0,0 +1,128 @@
+package com.xk.queue.base;
+
+import com.xk.queue.journal.JournalSerializer;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 11:02
+ * 批量消费队列
+ */
+public interface BatchConsumeQueue<T> {
+
+    /**
+     * 添加元素
+     * @param t 元素
+     */
+    void add(T t);
+
+    /**
+     * 设置队列已满时的处理策略，默认为ABORT
+     * @param overflowPolicy 处理策略
+     */
+    void setOverflowPolicy(OverflowPolicy overflowPolicy);
+
+    /**
+     * 设置BLOCK策略的最长等待时间，默认为0，一直等待直到有空位或队列关闭
+     * @param blockTimeout 等待时间，小于等于0时一直等待
+     * @param timeUnit 时间单位
+     */
+    void setBlockTimeout(long blockTimeout, TimeUnit timeUnit);
+
+    /**
+     * 设置SPILL策略的备用存储
+     * @param spillStore 备用存储
+     */
+    void setSpillStore(SpillStore<T> spillStore);
+
+    /**
+     * 设置DROP_NEWEST、DROP_OLDEST策略丢弃元素时的回调
+     * @param dropHandler 接收被丢弃的元素
+     */
+    void setDropHandler(Consumer<? super T> dropHandler);
+
+    /**
+     * 队列已满时各处理策略的触发次数
+     * @return 触发次数
+     */
+    OverflowStats getOverflowStats();
+
+    /**
+     * 开启自适应批量，根据消费耗时与到达速率在上下限之间调整批量消费数量，最多累积数量随之等比例调整
+     * @param minBatchSize 批量数量下限
+     * @param maxBatchSize 批量数量上限
+     * @param targetLatency 单批消费耗时目标
+     * @param timeUnit 时间单位
+     */
+    void enableAdaptiveBatchSize(int minBatchSize, int maxBatchSize, long targetLatency, TimeUnit timeUnit);
+
+    /**
+     * 开启持久化日志，重放上次未消费的元素，必须在添加元素之前调用
+     * 入队与写日志在同一把锁内完成，RING_BUFFER的无锁发布不再生效，添加元素按锁串行
+     * @param directory 日志目录
+     * @param serializer 元素序列化方式
+     * @see com.xk.queue.journal.BatchJournal
+     */
+    void enableJournal(File directory, JournalSerializer<T> serializer);
+
+    /**
+     * 刷盘并关闭持久化日志，未消费的元素会在下次开启时重放
+     */
+    void closeJournal();
+
+    /**
+     * 开启批量消费列表复用，消费者收到只读的{@link RecyclableBatch}，消费者返回后列表会被清空复用，
+     * 需要持有列表的消费者请使用{@link RecyclableBatch#copyOf(java.util.List)}
+     */
+    void enableBatchRecycle();
+
+    /**
+     * 开启消费失败后的拆分重试，失败的批次按二分拆分，只有无法消费的元素交给死信处理
+     * @param maxRetries 整批与单个元素的重试次数
+     * @param initialBackoff 第一次失败后的等待时间，连续失败时指数增长
+     * @param maxBackoff 最长等待时间
+     * @param timeUnit 时间单位
+     * @param deadLetterHandler 死信处理，为null时只记录日志
+     * @see BisectingRetry
+     */
+    void enableBisectingRetry(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit timeUnit, DeadLetterHandler<? super T> deadLetterHandler);
+
+    /**
+     * 设置未开启拆分重试时消费失败的批次的处理，批次中的元素逐个交给死信处理后视为已消费，
+     * 开启持久化日志时同样确认，不会在重启后重放
+     * @param deadLetterHandler 死信处理，为null时只记录日志
+     */
+    void setDeadLetterHandler(DeadLetterHandler<? super T> deadLetterHandler);
+
+    /**
+     * 设置指标记录，为null则不记录
+     * @param recorder 指标记录
+     * @see com.xk.queue.metrics.BatchQueueMetrics
+     */
+    void setRecorder(BatchQueueRecorder recorder);
+
+    /**
+     * 关闭队列：停止接受添加，忽略阈值立即消费剩余元素直到消费完毕或到达截止时间，之后停止内部线程
+     * @param timeout 最长等待时间
+     * @param timeUnit 时间单位
+     * @param parallelism 并行消费的线程数，大于1时消费者会被并发调用
+     * @return 关闭结果
+     */
+    DrainReport shutdown(long timeout, TimeUnit timeUnit, int parallelism);
+
+    /**
+     * 是否为空
+     * @return 为空返回true
+     */
+    boolean isEmpty();
+
+    /**
+     * 当前元素数量
+     * @return 元素数量
+     */
+    int size();
+}
@@ -0,0 +1,38 @@
+package com.xk.queue.base;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:08
+ * 批量消费队列的指标记录
+ * onAdd在添加线程上调用，其余方法在消费线程上调用，实现需要线程安全且尽量轻量
+ * @see com.xk.queue.metrics.BatchQueueMetrics
+ */
+public interface BatchQueueRecorder {
+
+    /**
+     * 元素进入队列
+     */
+    void onAdd();
+
+    /**
+     * 取出一批元素
+     * @param trigger 触发原因
+     * @param size 本批数量
+     */
+    void onFlush(FlushTrigger trigger, int size);
+
+    /**
+     * 一批元素消费结束
+     * @param size 本批数量
+     * @param latencyNanos 消费耗时，单位纳秒
+     * @param failed 消费失败的元素数量：消费者抛出异常时为本批数量，开启拆分重试时为交给死信处理的数量
+     */
+    void onConsume(int size, long latencyNanos, int failed);
+
+    /**
+     * 采样元素从入队到开始消费的耗时
+     * @param latencyNanos 耗时，单位纳秒
+     */
+    void onElementLatency(long latencyNanos);
+}
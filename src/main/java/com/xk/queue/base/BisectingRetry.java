@@ -0,0 +1,141 @@
+package com.xk.queue.base;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 18:24
+ * 消费失败的批次按二分拆分重试，隔离导致失败的元素
+ * <p>
+ * 整批失败后先重试maxRetries次，仍然失败则拆成两半分别消费，子批次失败继续拆分，直到单个元素；
+ * 单个元素同样重试maxRetries次，仍然失败则交给死信处理。消费成功的子批次仍然整批提交，
+ * 一个批次中有k个失败元素时，额外的消费次数约为k*log2(批量数量)
+ * <p>
+ * 连续失败时每次消费前按指数退避等待，等待时间不超过maxBackoff，任意一次消费成功后重置；
+ * 消费者需要能够接受同一元素被重复消费（整批失败前可能已经部分生效）
+ */
+public final class BisectingRetry<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BisectingRetry.class);
+
+    private final int maxRetries;
+
+    private final long initialBackoffNanos;
+
+    private final long maxBackoffNanos;
+
+    private final DeadLetterHandler<? super T> deadLetterHandler;
+
+    /**
+     * @param maxRetries 整批与单个元素的重试次数
+     * @param initialBackoff 第一次失败后的等待时间
+     * @param maxBackoff 最长等待时间
+     * @param timeUnit 时间单位
+     * @param deadLetterHandler 死信处理，为null时只记录日志
+     */
+    public BisectingRetry(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit timeUnit, DeadLetterHandler<? super T> deadLetterHandler) {
+        Assert.notNull(timeUnit, "timeUnit can not be null!");
+        if (maxRetries < 0 || initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("illegal retry arguments!");
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoffNanos = timeUnit.toNanos(initialBackoff);
+        this.maxBackoffNanos = timeUnit.toNanos(maxBackoff);
+        this.deadLetterHandler = deadLetterHandler;
+    }
+
+    /**
+     * 消费一批元素，所有元素要么被成功消费，要么交给死信处理，不会抛出异常
+     * @param batch 元素
+     * @param consumer 消费者
+     */
+    public void execute(List<T> batch, Consumer<List<T>> consumer) {
+        execute(batch, consumer, null);
+    }
+
+    /**
+     * @param callback 交给死信处理后额外回调，为null则不回调
+     */
+    public void execute(List<T> batch, Consumer<List<T>> consumer, DeadLetterHandler<? super T> callback) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        process(batch, consumer, callback, maxRetries, new int[1]);
+    }
+
+    /**
+     * @param retries 本批的重试次数
+     * @param failures 连续失败次数
+     */
+    private void process(List<T> batch, Consumer<List<T>> consumer, DeadLetterHandler<? super T> callback, int retries, int[] failures) {
+        Throwable cause = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (failures[0] > 0) {
+                backoff(failures[0]);
+            }
+            try {
+                consumer.accept(batch);
+                failures[0] = 0;
+                return;
+            } catch (Exception e) {
+                cause = e;
+                failures[0]++;
+            }
+        }
+        int size = batch.size();
+        if (size == 1) {
+            deadLetter(batch.get(0), cause, callback);
+            return;
+        }
+        logger.warn("消费失败，拆分{}个元素重试", size, cause);
+        int mid = size >>> 1;
+        List<T> left = batch.subList(0, mid);
+        List<T> right = batch.subList(mid, size);
+        process(left, consumer, callback, left.size() == 1 ? maxRetries : 0, failures);
+        process(right, consumer, callback, right.size() == 1 ? maxRetries : 0, failures);
+    }
+
+    private void backoff(int failures) {
+        long nanos = initialBackoffNanos;
+        for (int i = 1; i < failures && nanos < maxBackoffNanos; i++) {
+            nanos <<= 1;
+        }
+        nanos = Math.min(nanos, maxBackoffNanos);
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            // 中断时不再等待，剩余的重试立即执行
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deadLetter(T t, Throwable cause, DeadLetterHandler<? super T> callback) {
+        DeadLetterHandler<? super T> deadLetterHandler = this.deadLetterHandler;
+        try {
+            if (deadLetterHandler == null) {
+                logger.error("元素消费失败，已丢弃,{}", t, cause);
+            } else {
+                deadLetterHandler.handle(t, cause);
+            }
+        } catch (Exception e) {
+            logger.error("dead letter handler failed", e);
+        }
+        if (callback != null) {
+            try {
+                callback.handle(t, cause);
+            } catch (Exception e) {
+                logger.error("dead letter callback failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.xk.queue.base;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 10:20
+ * 批量消费队列的存储引擎类型
+ */
+public enum BufferType {
+
+    /**
+     * LinkedBlockingQueue，每次添加都会唤醒消费线程
+     */
+    LINKED {
+        @Override
+        public <T> ConsumeBuffer<T> create(int capacity) {
+            return new LinkedConsumeBuffer<>(capacity);
+        }
+    },
+
+    /**
+     * 无锁的多生产者单消费者环形缓冲区，必须指定容量
+     * 只有达到按量或按时消费阈值时才唤醒消费线程
+     */
+    RING_BUFFER {
+        @Override
+        public <T> ConsumeBuffer<T> create(int capacity) {
+            return new MpscRingConsumeBuffer<>(capacity);
+        }
+    };
+
+    /**
+     * 创建存储引擎
+     * @param capacity 容量
+     * @param <T> 元素类型
+     * @return 存储引擎
+     */
+    public abstract <T> ConsumeBuffer<T> create(int capacity);
+}
@@ -0,0 +1,123 @@
+package com.xk.queue.base;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 17:20
+ * 按key合并的存储引擎，等待消费期间相同key的元素合并为一个，消费时每个key只出现一次
+ * 按key第一次进入的顺序消费，容量与数量均按key计算
+ */
+public class CoalescingConsumeBuffer<T> implements ConsumeBuffer<T> {
+
+    private final LinkedHashMap<Object, T> pending = new LinkedHashMap<>();
+
+    private final Function<? super T, ?> keyExtractor;
+
+    /**
+     * 合并函数，参数依次为已有元素与新元素
+     */
+    private final BinaryOperator<T> mergeFunction;
+
+    private final int capacity;
+
+    /**
+     * key数量，供无锁读取
+     */
+    private volatile int size;
+
+    /**
+     * 被合并的元素数量
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param capacity 最多容纳的key数量，小于等于0视作无界
+     * @param keyExtractor 合并key提取
+     * @param mergeFunction 合并函数，参数依次为已有元素与新元素
+     */
+    public CoalescingConsumeBuffer(int capacity, Function<? super T, ?> keyExtractor, BinaryOperator<T> mergeFunction) {
+        if (keyExtractor == null || mergeFunction == null) {
+            throw new IllegalArgumentException("keyExtractor and mergeFunction can not be null!");
+        }
+        this.capacity = capacity <= 0 ? Integer.MAX_VALUE : capacity;
+        this.keyExtractor = keyExtractor;
+        this.mergeFunction = mergeFunction;
+    }
+
+    @Override
+    public boolean offer(T t) {
+        if (t == null) {
+            throw new NullPointerException();
+        }
+        Object key = keyExtractor.apply(t);
+        synchronized (pending) {
+            T existing = pending.get(key);
+            if (existing != null) {
+                // 已有key保持原有顺序
+                pending.put(key, mergeFunction.apply(existing, t));
+                coalesced.increment();
+                return true;
+            }
+            if (pending.size() >= capacity) {
+                return false;
+            }
+            pending.put(key, t);
+            size = pending.size();
+            return true;
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        int drained = 0;
+        synchronized (pending) {
+            Iterator<Map.Entry<Object, T>> iterator = pending.entrySet().iterator();
+            while (drained < maxElements && iterator.hasNext()) {
+                c.add(iterator.next().getValue());
+                iterator.remove();
+                drained++;
+            }
+            size = pending.size();
+        }
+        return drained;
+    }
+
+    @Override
+    public T poll() {
+        synchronized (pending) {
+            Iterator<Map.Entry<Object, T>> iterator = pending.entrySet().iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            T t = iterator.next().getValue();
+            iterator.remove();
+            size = pending.size();
+            return t;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 被合并的元素数量
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+}
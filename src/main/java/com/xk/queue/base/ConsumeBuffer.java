@@ -0,0 +1,46 @@
+package com.xk.queue.base;
+
+import java.util.Collection;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 10:05
+ * 批量消费队列的存储引擎
+ * 生产端方法可被多线程并发调用，消费端方法（drainTo）同一时刻只允许一个线程调用
+ */
+public interface ConsumeBuffer<T> {
+
+    /**
+     * 添加元素，不阻塞
+     * @param t 元素，不能为null
+     * @return 队列已满返回false
+     */
+    boolean offer(T t);
+
+    /**
+     * 批量取出元素，仅消费端调用
+     * @param c 接收元素的集合
+     * @param maxElements 最多取出数量
+     * @return 实际取出数量
+     */
+    int drainTo(Collection<? super T> c, int maxElements);
+
+    /**
+     * 取出最早的元素，仅消费端调用
+     * @return 队列为空返回null
+     */
+    T poll();
+
+    /**
+     * 当前元素数量
+     * @return 元素数量
+     */
+    int size();
+
+    /**
+     * 是否为空
+     * @return 为空返回true
+     */
+    boolean isEmpty();
+}
@@ -0,0 +1,18 @@
+package com.xk.queue.base;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 18:20
+ * 重试与拆分后仍然消费失败的元素的处理
+ */
+@FunctionalInterface
+public interface DeadLetterHandler<T> {
+
+    /**
+     * 处理消费失败的元素，如保存到数据库或消息队列
+     * @param t 元素
+     * @param cause 最后一次消费失败的原因
+     */
+    void handle(T t, Throwable cause);
+}
@@ -0,0 +1,101 @@
+package com.xk.queue.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 19:40
+ * 关闭队列的结果
+ */
+public final class DrainReport {
+
+    /**
+     * 关闭期间消费完成的元素数量
+     */
+    private final long flushed;
+
+    /**
+     * 截止时间到达时仍未消费的元素数量，开启持久化日志时这些元素会在下次启动时重放，否则交给丢弃回调
+     */
+    private final long dropped;
+
+    /**
+     * 是否在截止时间前消费完毕
+     */
+    private final boolean completed;
+
+    private final long elapsedMillis;
+
+    public DrainReport(long flushed, long dropped, boolean completed, long elapsedMillis) {
+        this.flushed = flushed;
+        this.dropped = dropped;
+        this.completed = completed;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getFlushed() {
+        return flushed;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "DrainReport{" +
+                "flushed=" + flushed +
+                ", dropped=" + dropped +
+                ", completed=" + completed +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+
+    /**
+     * 同时关闭多个队列并汇总结果，每个队列使用一个消费线程，保持队列内的消费顺序
+     */
+    static DrainReport shutdownAll(BatchConsumeBlockingQueue<?>[] queues, long timeout, TimeUnit timeUnit) {
+        long start = System.nanoTime();
+        DrainReport[] reports = new DrainReport[queues.length];
+        List<Thread> threads = new ArrayList<>(queues.length);
+        for (int i = 0; i < queues.length; i++) {
+            final int index = i;
+            Thread thread = new Thread(() -> reports[index] = queues[index].shutdown(timeout, timeUnit, 1), "batch-queue-shutdown-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        long flushed = 0;
+        long dropped = 0;
+        boolean completed = true;
+        for (int i = 0; i < threads.size(); i++) {
+            try {
+                threads.get(i).join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completed = false;
+                break;
+            }
+            DrainReport report = reports[i];
+            if (report == null) {
+                completed = false;
+                continue;
+            }
+            flushed += report.flushed;
+            dropped += report.dropped;
+            completed &= report.completed;
+        }
+        return new DrainReport(flushed, dropped, completed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
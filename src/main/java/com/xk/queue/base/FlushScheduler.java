@@ -0,0 +1,52 @@
+package com.xk.queue.base;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 14:02
+ * 所有批量消费队列共享的按时消费调度器
+ * 单线程按截止时间排序，线程休眠到最近的截止时间，线程数不随队列数量增长
+ */
+final class FlushScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlushScheduler.class);
+
+    private FlushScheduler() {
+    }
+
+    /**
+     * 在指定延迟后执行任务，任务必须是非阻塞的
+     * @param task 任务
+     * @param delayNanos 延迟时间，单位纳秒
+     * @return 可取消的任务
+     */
+    static ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+        return Holder.EXECUTOR.schedule(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("flush task failed", e);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static class Holder {
+
+        private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "batch-queue-flush-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.xk.queue.base;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:05
+ * 触发批量消费的原因
+ */
+public enum FlushTrigger {
+
+    /**
+     * 累积数量达到maxWaitSize
+     */
+    SIZE,
+
+    /**
+     * 距上一次消费超过maxWaitTime
+     */
+    TIME,
+
+    /**
+     * 队列已满，CALLER_RUNS策略在添加线程上消费
+     */
+    CALLER_RUNS,
+
+    /**
+     * 关闭队列时忽略阈值立即消费
+     */
+    SHUTDOWN
+}
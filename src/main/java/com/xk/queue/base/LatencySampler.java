@@ -0,0 +1,88 @@
+package com.xk.queue.base;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:12
+ * 端到端耗时采样
+ * 每64个入队元素记录一次入队时间，按入队序号与取出序号对应，不为元素分配额外对象；
+ * 多个生产者的入队序号与实际入队顺序可能略有差异，积压超过64K个元素时采样会被覆盖而跳过，结果为近似值
+ */
+final class LatencySampler {
+
+    private static final int SAMPLE_SHIFT = 6;
+
+    private static final long SAMPLE_MASK = (1L << SAMPLE_SHIFT) - 1;
+
+    private static final int SLOTS = 1024;
+
+    /**
+     * 入队序号
+     */
+    private final AtomicLong enqueued = new AtomicLong();
+
+    /**
+     * 采样槽对应的入队序号+1，0表示空
+     */
+    private final AtomicLongArray sampleSeqs = new AtomicLongArray(SLOTS);
+
+    /**
+     * 采样槽对应的入队时间
+     */
+    private final AtomicLongArray sampleTimes = new AtomicLongArray(SLOTS);
+
+    /**
+     * 取出序号，消费锁保护
+     */
+    private long dequeued;
+
+    /**
+     * @param pending 开始采样时队列中已有的元素数量，取出这些元素时不记录
+     */
+    LatencySampler(int pending) {
+        this.dequeued = -pending;
+    }
+
+    void onEnqueue() {
+        long seq = enqueued.getAndIncrement();
+        if ((seq & SAMPLE_MASK) != 0) {
+            return;
+        }
+        int slot = slot(seq);
+        sampleTimes.lazySet(slot, System.nanoTime());
+        sampleSeqs.lazySet(slot, seq + 1);
+    }
+
+    /**
+     * 取出元素，调用方需持有消费锁
+     * @param count 取出数量
+     * @param recorder 为null时只推进序号
+     */
+    void onDequeue(int count, BatchQueueRecorder recorder) {
+        long from = this.dequeued;
+        long to = from + count;
+        this.dequeued = to;
+        if (recorder == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (long seq = Math.max(0, (from + SAMPLE_MASK) & ~SAMPLE_MASK); seq < to; seq += SAMPLE_MASK + 1) {
+            int slot = slot(seq);
+            if (sampleSeqs.get(slot) != seq + 1) {
+                continue;
+            }
+            long time = sampleTimes.get(slot);
+            // 读取期间被新的采样覆盖则跳过
+            if (sampleSeqs.get(slot) == seq + 1) {
+                recorder.onElementLatency(now - time);
+            }
+        }
+    }
+
+    private static int slot(long seq) {
+        return (int) (seq >>> SAMPLE_SHIFT) & (SLOTS - 1);
+    }
+}
@@ -0,0 +1,49 @@
+package com.xk.queue.base;
+
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 10:08
+ * 基于LinkedBlockingQueue的存储引擎，每个元素分配一个节点，入队需要获取put锁
+ */
+public class LinkedConsumeBuffer<T> implements ConsumeBuffer<T> {
+
+    private final LinkedBlockingQueue<T> queue;
+
+    public LinkedConsumeBuffer(int capacity) {
+        if (capacity <= 0) {
+            // 小于0视作无界队列
+            this.queue = new LinkedBlockingQueue<>();
+        } else {
+            this.queue = new LinkedBlockingQueue<>(capacity);
+        }
+    }
+
+    @Override
+    public boolean offer(T t) {
+        return queue.offer(t);
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        return queue.drainTo(c, maxElements);
+    }
+
+    @Override
+    public T poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+}
@@ -0,0 +1,139 @@
+package com.xk.queue.base;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 10:15
+ * 多生产者单消费者的有界环形缓冲区，槽位在初始化时一次性分配
+ * 生产者通过CAS抢占写入序号，写入槽位后发布；消费者按序读取已发布的槽位并清空
+ * size包含已抢占尚未发布的槽位，消费者遇到这样的槽位时等待发布，而不是截断批次：
+ * 否则按size达到阈值取出的批次会变短，剩余元素低于阈值，只能等待下一次添加或按时消费
+ * 容量会向上取整为2的幂
+ */
+public class MpscRingConsumeBuffer<T> implements ConsumeBuffer<T> {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * 槽位，null表示未发布或已消费
+     */
+    private final AtomicReferenceArray<T> slots;
+
+    private final int mask;
+
+    private final int capacity;
+
+    /**
+     * 生产者下一个抢占的序号
+     */
+    private final AtomicLong producerIndex = new AtomicLong();
+
+    /**
+     * 消费者下一个读取的序号，只有消费者写入
+     */
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    public MpscRingConsumeBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("ring buffer capacity must be positive!");
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("ring buffer capacity is too large! max capacity=" + MAX_CAPACITY);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    @Override
+    public boolean offer(T t) {
+        if (t == null) {
+            throw new NullPointerException();
+        }
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index - consumerIndex.get() >= capacity) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+        slots.lazySet(offset(index), t);
+        return true;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        long index = consumerIndex.get();
+        int drained = 0;
+        while (drained < maxElements) {
+            int offset = offset(index);
+            T t = awaitPublished(index);
+            if (t == null) {
+                break;
+            }
+            slots.lazySet(offset, null);
+            c.add(t);
+            index++;
+            drained++;
+        }
+        if (drained > 0) {
+            // volatile写，保证随后读取等待中的生产者数量时不会与释放槽位重排序
+            consumerIndex.set(index);
+        }
+        return drained;
+    }
+
+    @Override
+    public T poll() {
+        long index = consumerIndex.get();
+        T t = awaitPublished(index);
+        if (t == null) {
+            return null;
+        }
+        slots.lazySet(offset(index), null);
+        consumerIndex.set(index + 1);
+        return t;
+    }
+
+    @Override
+    public int size() {
+        long size = producerIndex.get() - consumerIndex.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 读取序号对应的元素，生产者已抢占该序号时等待发布，抢占与发布之间只有一次写入
+     * @return 队列为空返回null
+     */
+    private T awaitPublished(long index) {
+        int offset = offset(index);
+        T t = slots.get(offset);
+        if (t != null || index == producerIndex.get()) {
+            return t;
+        }
+        while ((t = slots.get(offset)) == null) {
+            Thread.yield();
+        }
+        return t;
+    }
+
+    private int offset(long index) {
+        return (int) index & mask;
+    }
+}
@@ -0,0 +1,42 @@
+package com.xk.queue.base;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 11:40
+ * 批量消费队列已满时的处理策略
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 抛出IllegalStateException
+     */
+    ABORT,
+
+    /**
+     * 阻塞等待空位，超过等待时间仍无空位或队列已关闭则抛出IllegalStateException；
+     * 未设置等待时间时一直等待
+     */
+    BLOCK,
+
+    /**
+     * 丢弃新添加的元素
+     */
+    DROP_NEWEST,
+
+    /**
+     * 丢弃队列中最早的元素，再添加新元素
+     */
+    DROP_OLDEST,
+
+    /**
+     * 由添加元素的线程同步消费一批元素，再添加新元素
+     */
+    CALLER_RUNS,
+
+    /**
+     * 将新添加的元素转存到备用存储
+     * @see SpillStore
+     */
+    SPILL
+}
@@ -0,0 +1,98 @@
+package com.xk.queue.base;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 11:45
+ * 队列已满时各处理策略的触发次数
+ */
+public class OverflowStats {
+
+    /**
+     * 添加元素时队列已满的次数
+     */
+    final LongAdder overflow = new LongAdder();
+
+    /**
+     * 阻塞等待空位的次数
+     */
+    final LongAdder blocked = new LongAdder();
+
+    /**
+     * 阻塞等待超时的次数
+     */
+    final LongAdder blockTimeout = new LongAdder();
+
+    /**
+     * 丢弃新元素的次数
+     */
+    final LongAdder droppedNewest = new LongAdder();
+
+    /**
+     * 丢弃最早元素的次数
+     */
+    final LongAdder droppedOldest = new LongAdder();
+
+    /**
+     * 添加线程同步消费的次数
+     */
+    final LongAdder callerRuns = new LongAdder();
+
+    /**
+     * 转存到备用存储的次数
+     */
+    final LongAdder spilled = new LongAdder();
+
+    /**
+     * 抛出异常拒绝添加的次数
+     */
+    final LongAdder rejected = new LongAdder();
+
+    public long getOverflowCount() {
+        return overflow.sum();
+    }
+
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    public long getBlockTimeoutCount() {
+        return blockTimeout.sum();
+    }
+
+    public long getDroppedNewestCount() {
+        return droppedNewest.sum();
+    }
+
+    public long getDroppedOldestCount() {
+        return droppedOldest.sum();
+    }
+
+    public long getCallerRunsCount() {
+        return callerRuns.sum();
+    }
+
+    public long getSpilledCount() {
+        return spilled.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "OverflowStats{" +
+                "overflow=" + getOverflowCount() +
+                ", blocked=" + getBlockedCount() +
+                ", blockTimeout=" + getBlockTimeoutCount() +
+                ", droppedNewest=" + getDroppedNewestCount() +
+                ", droppedOldest=" + getDroppedOldestCount() +
+                ", callerRuns=" + getCallerRunsCount() +
+                ", spilled=" + getSpilledCount() +
+                ", rejected=" + getRejectedCount() +
+                '}';
+    }
+}
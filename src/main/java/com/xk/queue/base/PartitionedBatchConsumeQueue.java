@@ -0,0 +1,194 @@
+package com.xk.queue.base;
+
+import com.xk.queue.journal.JournalSerializer;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 11:10
+ * 分区批量消费队列
+ * 按key将元素路由到固定的分区，每个分区是一个独立的批量消费队列，拥有自己的阈值与消费线程
+ * 相同key的元素在同一分区内按添加顺序消费；消费者会被多个分区线程并发调用，需要保证线程安全
+ */
+public class PartitionedBatchConsumeQueue<T> implements BatchConsumeQueue<T> {
+
+    /**
+     * 分区
+     */
+    private final BatchConsumeBlockingQueue<T>[] partitions;
+
+    /**
+     * 分区key提取
+     */
+    private final Function<? super T, ?> keyExtractor;
+
+    /**
+     * 所有分区共享的溢出统计
+     */
+    private final OverflowStats overflowStats = new OverflowStats();
+
+    /**
+     * @param partitions 分区数量
+     * @param keyExtractor 分区key提取，key为null的元素路由到第一个分区
+     * @param capacity 每个分区的容量
+     * @param batchConsumeSize 每个分区的批量消费数量
+     * @param maxWaitSize 每个分区的最多累积数量
+     * @param maxWaitTime 每个分区的最大等待时间
+     * @param bufferType 存储引擎
+     * @param consumer 消费者
+     */
+    @SuppressWarnings("unchecked")
+    public PartitionedBatchConsumeQueue(int partitions, Function<? super T, ?> keyExtractor, int capacity, int batchConsumeSize,
+                                        int maxWaitSize, long maxWaitTime, BufferType bufferType, Consumer<List<T>> consumer) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive!");
+        }
+        if (keyExtractor == null) {
+            throw new IllegalArgumentException("keyExtractor can not be null!");
+        }
+        this.keyExtractor = keyExtractor;
+        this.partitions = new BatchConsumeBlockingQueue[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new BatchConsumeBlockingQueue<>(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, bufferType, consumer, overflowStats);
+        }
+    }
+
+    @Override
+    public void add(T t) {
+        partitions[partition(t)].add(t);
+    }
+
+    @Override
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.setOverflowPolicy(overflowPolicy);
+        }
+    }
+
+    @Override
+    public void setBlockTimeout(long blockTimeout, TimeUnit timeUnit) {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.setBlockTimeout(blockTimeout, timeUnit);
+        }
+    }
+
+    @Override
+    public void setSpillStore(SpillStore<T> spillStore) {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.setSpillStore(spillStore);
+        }
+    }
+
+    @Override
+    public void setDropHandler(Consumer<? super T> dropHandler) {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.setDropHandler(dropHandler);
+        }
+    }
+
+    @Override
+    public OverflowStats getOverflowStats() {
+        return this.overflowStats;
+    }
+
+    /**
+     * 每个分区独立统计与调整
+     */
+    @Override
+    public void enableAdaptiveBatchSize(int minBatchSize, int maxBatchSize, long targetLatency, TimeUnit timeUnit) {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.enableAdaptiveBatchSize(minBatchSize, maxBatchSize, targetLatency, timeUnit);
+        }
+    }
+
+    /**
+     * 每个分区使用独立的子目录，重启后分区数量需要保持不变
+     */
+    @Override
+    public void enableJournal(File directory, JournalSerializer<T> serializer) {
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i].enableJournal(new File(directory, "partition-" + i), serializer);
+        }
+    }
+
+    @Override
+    public void closeJournal() {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.closeJournal();
+        }
+    }
+
+    @Override
+    public void enableBatchRecycle() {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.enableBatchRecycle();
+        }
+    }
+
+    @Override
+    public void enableBisectingRetry(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit timeUnit, DeadLetterHandler<? super T> deadLetterHandler) {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.enableBisectingRetry(maxRetries, initialBackoff, maxBackoff, timeUnit, deadLetterHandler);
+        }
+    }
+
+    @Override
+    public void setDeadLetterHandler(DeadLetterHandler<? super T> deadLetterHandler) {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.setDeadLetterHandler(deadLetterHandler);
+        }
+    }
+
+    /**
+     * 所有分区共用同一个指标记录，端到端耗时由每个分区单独采样
+     */
+    @Override
+    public void setRecorder(BatchQueueRecorder recorder) {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            partition.setRecorder(recorder);
+        }
+    }
+
+    /**
+     * 所有分区同时关闭，每个分区只使用一个线程消费以保持分区内的顺序，parallelism不生效
+     */
+    @Override
+    public DrainReport shutdown(long timeout, TimeUnit timeUnit, int parallelism) {
+        return DrainReport.shutdownAll(partitions, timeout, timeUnit);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            if (!partition.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (BatchConsumeBlockingQueue<T> partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    private int partition(T t) {
+        Object key = keyExtractor.apply(t);
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % partitions.length;
+    }
+}
@@ -0,0 +1,204 @@
+package com.xk.queue.base;
+
+import com.xk.queue.journal.JournalSerializer;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 19:02
+ * 多优先级车道的批量消费队列
+ * 元素按laneSelector进入车道，每个车道按自己的阈值累积与触发消费，紧急车道触发时不会迫使批量车道提前消费；
+ * 所有车道共用一个消费者且串行调用，多个车道同时等待时按权重轮询，批量车道不会被饿死。
+ * 紧急车道的消费延迟上限为自身的阈值加上正在执行的一批消费的耗时
+ */
+public class PriorityBatchConsumeQueue<T> implements BatchConsumeQueue<T> {
+
+    /**
+     * 车道，下标越小优先级越高
+     */
+    private final BatchConsumeBlockingQueue<T>[] lanes;
+
+    /**
+     * 车道选择
+     */
+    private final ToIntFunction<? super T> laneSelector;
+
+    /**
+     * 所有车道共享的溢出统计
+     */
+    private final OverflowStats overflowStats = new OverflowStats();
+
+    /**
+     * @param lanes 车道配置，下标越小优先级越高
+     * @param laneSelector 返回元素的车道下标，超出范围时进入最后一个车道
+     * @param bufferType 存储引擎
+     * @param consumer 消费者
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityBatchConsumeQueue(List<PriorityLane> lanes, ToIntFunction<? super T> laneSelector, BufferType bufferType, Consumer<List<T>> consumer) {
+        Assert.notEmpty(lanes, "lanes can not be empty!");
+        Assert.notNull(laneSelector, "laneSelector can not be null!");
+        this.laneSelector = laneSelector;
+        int[] weights = new int[lanes.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = lanes.get(i).getWeight();
+        }
+        WeightedLaneGate gate = new WeightedLaneGate(weights);
+        this.lanes = new BatchConsumeBlockingQueue[lanes.size()];
+        for (int i = 0; i < this.lanes.length; i++) {
+            PriorityLane lane = lanes.get(i);
+            final int index = i;
+            this.lanes[i] = new BatchConsumeBlockingQueue<>(lane.getCapacity(), lane.getBatchConsumeSize(), lane.getMaxWaitSize(),
+                    lane.getMaxWaitTime(), bufferType, batch -> {
+                gate.acquire(index);
+                try {
+                    consumer.accept(batch);
+                } finally {
+                    gate.release();
+                }
+            }, overflowStats);
+        }
+    }
+
+    @Override
+    public void add(T t) {
+        lanes[lane(t)].add(t);
+    }
+
+    @Override
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.setOverflowPolicy(overflowPolicy);
+        }
+    }
+
+    @Override
+    public void setBlockTimeout(long blockTimeout, TimeUnit timeUnit) {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.setBlockTimeout(blockTimeout, timeUnit);
+        }
+    }
+
+    @Override
+    public void setSpillStore(SpillStore<T> spillStore) {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.setSpillStore(spillStore);
+        }
+    }
+
+    @Override
+    public void setDropHandler(Consumer<? super T> dropHandler) {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.setDropHandler(dropHandler);
+        }
+    }
+
+    @Override
+    public OverflowStats getOverflowStats() {
+        return this.overflowStats;
+    }
+
+    /**
+     * 每个车道独立统计与调整
+     */
+    @Override
+    public void enableAdaptiveBatchSize(int minBatchSize, int maxBatchSize, long targetLatency, TimeUnit timeUnit) {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.enableAdaptiveBatchSize(minBatchSize, maxBatchSize, targetLatency, timeUnit);
+        }
+    }
+
+    /**
+     * 每个车道使用独立的子目录，重启后车道数量需要保持不变
+     */
+    @Override
+    public void enableJournal(File directory, JournalSerializer<T> serializer) {
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].enableJournal(new File(directory, "lane-" + i), serializer);
+        }
+    }
+
+    @Override
+    public void closeJournal() {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.closeJournal();
+        }
+    }
+
+    @Override
+    public void enableBatchRecycle() {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.enableBatchRecycle();
+        }
+    }
+
+    @Override
+    public void enableBisectingRetry(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit timeUnit, DeadLetterHandler<? super T> deadLetterHandler) {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.enableBisectingRetry(maxRetries, initialBackoff, maxBackoff, timeUnit, deadLetterHandler);
+        }
+    }
+
+    @Override
+    public void setDeadLetterHandler(DeadLetterHandler<? super T> deadLetterHandler) {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.setDeadLetterHandler(deadLetterHandler);
+        }
+    }
+
+    @Override
+    public void setRecorder(BatchQueueRecorder recorder) {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            lane.setRecorder(recorder);
+        }
+    }
+
+    /**
+     * 所有车道同时关闭，车道之间仍然串行调用消费者，parallelism不生效
+     */
+    @Override
+    public DrainReport shutdown(long timeout, TimeUnit timeUnit, int parallelism) {
+        return DrainReport.shutdownAll(lanes, timeout, timeUnit);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (BatchConsumeBlockingQueue<T> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    /**
+     * 车道当前元素数量
+     */
+    public int size(int lane) {
+        return lanes[lane].size();
+    }
+
+    private int lane(T t) {
+        int lane = laneSelector.applyAsInt(t);
+        if (lane < 0 || lane >= lanes.length) {
+            return lanes.length - 1;
+        }
+        return lane;
+    }
+}
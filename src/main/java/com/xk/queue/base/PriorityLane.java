@@ -0,0 +1,60 @@
+package com.xk.queue.base;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 18:50
+ * 优先级队列的车道配置，每个车道有独立的容量与消费阈值
+ * 紧急车道可以使用较小的maxWaitSize（如1，立即消费）或较小的maxWaitTime，批量车道使用较大的阈值
+ * @see PriorityBatchConsumeQueue
+ */
+public final class PriorityLane {
+
+    private final int capacity;
+
+    private final int batchConsumeSize;
+
+    private final int maxWaitSize;
+
+    private final long maxWaitTime;
+
+    private final int weight;
+
+    /**
+     * @param capacity 容量
+     * @param batchConsumeSize 批量消费数量
+     * @param maxWaitSize 最多累积数量，小于等于0则不开启按量消费
+     * @param maxWaitTime 最大等待时间，单位毫秒，小于等于0则不开启延时消费
+     * @param weight 多个车道同时等待消费时的权重，权重越大获得消费的次数越多
+     */
+    public PriorityLane(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive!");
+        }
+        this.capacity = capacity;
+        this.batchConsumeSize = batchConsumeSize;
+        this.maxWaitSize = maxWaitSize;
+        this.maxWaitTime = maxWaitTime;
+        this.weight = weight;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getBatchConsumeSize() {
+        return batchConsumeSize;
+    }
+
+    public int getMaxWaitSize() {
+        return maxWaitSize;
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
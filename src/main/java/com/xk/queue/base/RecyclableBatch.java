@@ -0,0 +1,92 @@
+package com.xk.queue.base;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:10
+ * 可复用的批量消费列表，数组按批量消费数量预先分配
+ * 交给消费者时是只读的，消费者返回后会被清空并放回缓冲池，因此消费者不能持有该列表，
+ * 需要持有时请通过{@link #copyOf(List)}拷贝
+ */
+public class RecyclableBatch<T> extends AbstractList<T> implements RandomAccess {
+
+    private Object[] elements;
+
+    private int size;
+
+    /**
+     * 是否已交给消费者
+     */
+    private boolean sealed;
+
+    RecyclableBatch(int capacity) {
+        this.elements = new Object[Math.max(capacity, 1)];
+    }
+
+    /**
+     * 拷贝批量消费列表，用于需要在消费结束后继续持有列表的消费者
+     * @param list 消费者收到的列表
+     * @param <T> 元素类型
+     * @return 可复用列表返回新的ArrayList，否则原样返回
+     */
+    public static <T> List<T> copyOf(List<T> list) {
+        if (list instanceof RecyclableBatch) {
+            return new ArrayList<>(list);
+        }
+        return list;
+    }
+
+    @Override
+    public boolean add(T t) {
+        if (sealed) {
+            throw new UnsupportedOperationException("batch is read only!");
+        }
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size << 1);
+        }
+        elements[size++] = t;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (T) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 取出元素时保证容量，避免逐个扩容
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            elements = Arrays.copyOf(elements, capacity);
+        }
+    }
+
+    void seal() {
+        this.sealed = true;
+    }
+
+    /**
+     * 清空元素引用，放回缓冲池前调用
+     */
+    void reset() {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+        sealed = false;
+    }
+}
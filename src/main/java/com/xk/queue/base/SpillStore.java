@@ -0,0 +1,17 @@
+package com.xk.queue.base;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 11:42
+ * 队列已满时的备用存储，由调用方提供具体实现，如写入redis或本地文件
+ */
+@FunctionalInterface
+public interface SpillStore<T> {
+
+    /**
+     * 转存元素
+     * @param t 无法加入队列的元素
+     */
+    void spill(T t);
+}
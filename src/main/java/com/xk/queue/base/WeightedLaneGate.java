@@ -0,0 +1,108 @@
+package com.xk.queue.base;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 18:56
+ * 多个车道的消费线程串行调用消费者
+ * 消费者空闲时直接进入；多个车道同时等待时按平滑加权轮询选择下一个，权重相同时下标小的车道优先，
+ * 任意等待中的车道在有限次选择内一定会被选中，不会被高优先级车道饿死
+ */
+final class WeightedLaneGate {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition[] turns;
+
+    private final int[] weights;
+
+    /**
+     * 平滑加权轮询的当前权重
+     */
+    private final int[] currentWeights;
+
+    /**
+     * 各车道等待中的线程数
+     */
+    private final int[] waiting;
+
+    private int waitingCount;
+
+    private boolean busy;
+
+    /**
+     * 已被选中、尚未进入的车道，-1表示没有
+     */
+    private int granted = -1;
+
+    WeightedLaneGate(int[] weights) {
+        this.weights = weights.clone();
+        this.currentWeights = new int[weights.length];
+        this.waiting = new int[weights.length];
+        this.turns = new Condition[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            turns[i] = lock.newCondition();
+        }
+    }
+
+    /**
+     * 等待轮到该车道，CALLER_RUNS策略下同一车道可能有多个线程等待
+     */
+    void acquire(int lane) {
+        lock.lock();
+        try {
+            if (!busy) {
+                busy = true;
+                return;
+            }
+            waiting[lane]++;
+            waitingCount++;
+            while (granted != lane) {
+                turns[lane].awaitUninterruptibly();
+            }
+            granted = -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            if (waitingCount == 0) {
+                busy = false;
+                return;
+            }
+            int next = next();
+            waiting[next]--;
+            waitingCount--;
+            granted = next;
+            turns[next].signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 平滑加权轮询：等待中的车道当前权重加上各自权重，选出最大者后减去等待车道的权重之和
+     */
+    private int next() {
+        int total = 0;
+        int best = -1;
+        for (int i = 0; i < weights.length; i++) {
+            if (waiting[i] == 0) {
+                continue;
+            }
+            currentWeights[i] += weights[i];
+            total += weights[i];
+            if (best < 0 || currentWeights[i] > currentWeights[best]) {
+                best = i;
+            }
+        }
+        currentWeights[best] -= total;
+        return best;
+    }
+}
@@ -0,0 +1,61 @@
+package com.xk.queue.collapse;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 17:40
+ * 请求合并：并发调用的单元素方法先进入批量消费队列，按阈值合并为一次批量方法调用，再把结果分发给每个调用方
+ * <p>
+ * 标注的方法只能有一个参数，返回值不能是基本类型，为{@link java.util.concurrent.CompletableFuture}或{@link java.util.concurrent.Future}时立即返回future，
+ * 否则阻塞等待结果；批量方法与标注方法在同一个bean中，参数为{@code List<参数类型>}，返回值可以是：
+ * <ul>
+ *     <li>List：与参数按下标一一对应，数量必须相同</li>
+ *     <li>Map：以参数为key取结果，不存在的key对应的调用方以IllegalStateException失败</li>
+ *     <li>void：标注的方法也需返回void或future，每个调用方的结果为null</li>
+ * </ul>
+ * 批量方法返回null时，本批所有调用方以IllegalStateException失败
+ * 批量方法抛出异常时，本批所有调用方都以该异常失败；应用关闭时执行已提交的请求，未来得及执行的请求以异常失败
+ * bean为JDK动态代理时，标注方法必须声明在代理的接口上，批量方法不在接口上时直接调用目标对象，代理上的切面对其不生效
+ * @see BatchCollapseBeanPostProcessor
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BatchCollapse {
+
+    /**
+     * 批量方法名称
+     */
+    String batchMethod();
+
+    /**
+     * 队列容量，队列已满时调用方直接失败
+     */
+    int capacity() default 10000;
+
+    /**
+     * 批量消费数量
+     */
+    int batchConsumeSize() default 100;
+
+    /**
+     * 最多累积数量，小于等于0则不开启按量消费
+     */
+    int maxWaitSize() default 100;
+
+    /**
+     * 最大等待时间，单位毫秒，小于等于0则不开启延时消费
+     */
+    long maxWaitTime() default 10;
+
+    /**
+     * 阻塞调用的最长等待时间，单位毫秒，超时抛出{@link BatchCollapseTimeoutException}，小于等于0则一直等待
+     */
+    long timeout() default 3000;
+}
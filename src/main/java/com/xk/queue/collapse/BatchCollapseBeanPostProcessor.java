@@ -0,0 +1,221 @@
+package com.xk.queue.collapse;
+
+import com.xk.queue.base.DrainReport;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 17:55
+ * 为含有{@link BatchCollapse}方法的bean创建代理，标注方法的调用被路由到各自的批量消费队列
+ * 已经是代理的bean在原有代理上追加拦截器，批量方法通过代理调用，事务等切面对批量方法仍然生效
+ * 应用关闭时在单例销毁前停止所有队列，执行已提交的请求，超过关闭等待时间仍未执行的请求以异常完成
+ */
+@Component
+public class BatchCollapseBeanPostProcessor implements BeanPostProcessor, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchCollapseBeanPostProcessor.class);
+
+    /**
+     * 关闭时等待所有队列执行完已提交请求的最长时间，单位毫秒
+     */
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+
+    private final List<MethodCollapser> collapsers = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        Map<Method, BatchCollapse> annotated = MethodIntrospector.selectMethods(targetClass,
+                (MethodIntrospector.MetadataLookup<BatchCollapse>) method -> AnnotatedElementUtils.findMergedAnnotation(method, BatchCollapse.class));
+        if (annotated.isEmpty()) {
+            return bean;
+        }
+        boolean proxied = bean instanceof Advised;
+        if (proxied && ((Advised) bean).isFrozen()) {
+            throw new IllegalStateException("bean " + beanName + " is a frozen proxy, @BatchCollapse can not be applied");
+        }
+        Map<Method, CollapsedMethod> methods = new HashMap<>(annotated.size());
+        annotated.forEach((method, collapse) -> {
+            Method batchMethod = resolveBatchMethod(beanName, targetClass, method, collapse);
+            MethodCollapser collapser = proxied
+                    ? createProxiedCollapser(beanName, (Advised) bean, method, batchMethod, collapse)
+                    : new MethodCollapser(bean, batchMethod, collapse);
+            collapsers.add(collapser);
+            methods.put(method, new CollapsedMethod(collapser, collapse.timeout()));
+        });
+        BatchCollapseInterceptor interceptor = new BatchCollapseInterceptor(targetClass, methods);
+        if (proxied) {
+            ((Advised) bean).addAdvice(0, interceptor);
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    private Method resolveBatchMethod(String beanName, Class<?> targetClass, Method method, BatchCollapse collapse) {
+        if (method.getParameterCount() != 1) {
+            throw new IllegalStateException("@BatchCollapse method " + beanName + "." + method.getName() + " must have exactly one parameter");
+        }
+        Method batchMethod = ReflectionUtils.findMethod(targetClass, collapse.batchMethod(), List.class);
+        if (batchMethod == null) {
+            throw new IllegalStateException("batch method " + beanName + "." + collapse.batchMethod() + "(List) not found");
+        }
+        Class<?> returnType = batchMethod.getReturnType();
+        if (returnType != void.class && !List.class.isAssignableFrom(returnType) && !Map.class.isAssignableFrom(returnType)) {
+            throw new IllegalStateException("batch method " + beanName + "." + collapse.batchMethod() + " must return List, Map or void");
+        }
+        // 基本类型无法接收null，在注册时失败而不是调用时抛出AopInvocationException
+        Class<?> singleReturnType = method.getReturnType();
+        if (singleReturnType.isPrimitive() && singleReturnType != void.class) {
+            throw new IllegalStateException("@BatchCollapse method " + beanName + "." + method.getName()
+                    + " must not return a primitive type, use " + ClassUtils.resolvePrimitiveIfNecessary(singleReturnType).getSimpleName());
+        }
+        if (returnType == void.class && singleReturnType != void.class && !singleReturnType.isAssignableFrom(CompletableFuture.class)) {
+            throw new IllegalStateException("@BatchCollapse method " + beanName + "." + method.getName()
+                    + " must return void or a future when batch method " + collapse.batchMethod() + " returns void");
+        }
+        return batchMethod;
+    }
+
+    /**
+     * 批量方法通过代理调用；JDK动态代理的接口上没有批量方法时调用目标对象
+     */
+    private MethodCollapser createProxiedCollapser(String beanName, Advised proxy, Method method, Method batchMethod, BatchCollapse collapse) {
+        if (!AopUtils.isJdkDynamicProxy(proxy)) {
+            return new MethodCollapser(proxy, AopUtils.selectInvocableMethod(batchMethod, proxy.getClass()), collapse);
+        }
+        if (ReflectionUtils.findMethod(proxy.getClass(), method.getName(), method.getParameterTypes()) == null) {
+            throw new IllegalStateException("@BatchCollapse method " + beanName + "." + method.getName()
+                    + " is not declared on the proxied interfaces, declare it on an interface or proxy the target class");
+        }
+        Method proxyBatchMethod = ReflectionUtils.findMethod(proxy.getClass(), batchMethod.getName(), List.class);
+        if (proxyBatchMethod != null) {
+            return new MethodCollapser(proxy, proxyBatchMethod, collapse);
+        }
+        TargetSource targetSource = proxy.getTargetSource();
+        if (!targetSource.isStatic()) {
+            throw new IllegalStateException("batch method " + beanName + "." + batchMethod.getName()
+                    + " is not declared on the proxied interfaces and the proxy target is not static");
+        }
+        try {
+            return new MethodCollapser(targetSource.getTarget(), batchMethod, collapse);
+        } catch (Exception e) {
+            throw new IllegalStateException("can not get target of bean " + beanName, e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * 停止所有队列，共享关闭等待时间
+     */
+    @Override
+    public void stop() {
+        running = false;
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
+        for (MethodCollapser collapser : collapsers) {
+            DrainReport report = collapser.shutdown(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            if (!report.isCompleted()) {
+                log.warn("batch collapse {} shut down with requests not executed,{}", collapser.getName(), report);
+            }
+        }
+        collapsers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 在web服务器等默认阶段的组件停止之后、单例销毁之前停止，关闭期间处理中的请求仍可合并
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private static final class CollapsedMethod {
+
+        private final MethodCollapser collapser;
+
+        private final long timeout;
+
+        private CollapsedMethod(MethodCollapser collapser, long timeout) {
+            this.collapser = collapser;
+            this.timeout = timeout;
+        }
+    }
+
+    private static final class BatchCollapseInterceptor implements MethodInterceptor {
+
+        private final Class<?> targetClass;
+
+        private final Map<Method, CollapsedMethod> methods;
+
+        private BatchCollapseInterceptor(Class<?> targetClass, Map<Method, CollapsedMethod> methods) {
+            this.targetClass = targetClass;
+            this.methods = methods;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+            CollapsedMethod collapsed = methods.get(method);
+            if (collapsed == null) {
+                return invocation.proceed();
+            }
+            CompletableFuture<Object> future = collapsed.collapser.submit(invocation.getArguments()[0]);
+            Class<?> returnType = method.getReturnType();
+            // 返回值为CompletableFuture、Future、CompletionStage时不阻塞
+            if (returnType != Object.class && returnType.isAssignableFrom(CompletableFuture.class)) {
+                return future;
+            }
+            try {
+                Object result = collapsed.timeout > 0 ? future.get(collapsed.timeout, TimeUnit.MILLISECONDS) : future.get();
+                return returnType == void.class ? null : result;
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            } catch (TimeoutException e) {
+                throw new BatchCollapseTimeoutException("@BatchCollapse method " + method.getName()
+                        + " not completed in " + collapsed.timeout + "ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for @BatchCollapse method " + method.getName(), e);
+            }
+        }
+    }
+}
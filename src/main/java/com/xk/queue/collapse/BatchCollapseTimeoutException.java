@@ -0,0 +1,15 @@
+package com.xk.queue.collapse;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 11:05
+ * 阻塞调用{@link BatchCollapse}方法时，超过{@link BatchCollapse#timeout()}仍未得到批量方法的结果
+ * 超时的请求仍留在队列中，之后执行的结果被忽略
+ */
+public class BatchCollapseTimeoutException extends RuntimeException {
+
+    public BatchCollapseTimeoutException(String message) {
+        super(message);
+    }
+}
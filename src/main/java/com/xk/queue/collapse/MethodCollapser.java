@@ -0,0 +1,130 @@
+package com.xk.queue.collapse;
+
+import com.xk.queue.base.BatchConsumeBlockingQueue;
+import com.xk.queue.base.DrainReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 17:48
+ * 单个标注方法的请求合并：每个方法独占一个批量消费队列，消费线程调用批量方法并完成每个请求的future
+ * 关闭后提交的请求、关闭时未来得及执行的请求以异常完成，调用方不会一直等待
+ * 批量方法返回null、返回的Map中没有请求的参数时，对应的请求以异常完成，不会得到null
+ */
+final class MethodCollapser {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodCollapser.class);
+
+    private final Object target;
+
+    private final Method batchMethod;
+
+    private final BatchConsumeBlockingQueue<CollapsedRequest> queue;
+
+    MethodCollapser(Object target, Method batchMethod, BatchCollapse collapse) {
+        this.target = target;
+        this.batchMethod = batchMethod;
+        ReflectionUtils.makeAccessible(batchMethod);
+        this.queue = new BatchConsumeBlockingQueue<>(collapse.capacity(), collapse.batchConsumeSize(),
+                collapse.maxWaitSize(), collapse.maxWaitTime(), this::execute);
+        this.queue.setDropHandler(request -> request.future.completeExceptionally(
+                new IllegalStateException("batch method " + batchMethod.getName() + " is shut down, request not executed")));
+    }
+
+    /**
+     * 提交单个请求，队列已满时返回异常完成的future
+     */
+    CompletableFuture<Object> submit(Object arg) {
+        CollapsedRequest request = new CollapsedRequest(arg);
+        try {
+            queue.add(request);
+        } catch (Exception e) {
+            request.future.completeExceptionally(e);
+        }
+        return request.future;
+    }
+
+    /**
+     * 停止接受请求，执行已提交的请求，截止时间到达时仍未执行的请求以异常完成
+     */
+    DrainReport shutdown(long timeout, TimeUnit timeUnit) {
+        return queue.shutdown(timeout, timeUnit, 1);
+    }
+
+    String getName() {
+        return batchMethod.getDeclaringClass().getSimpleName() + "." + batchMethod.getName();
+    }
+
+    private void execute(List<CollapsedRequest> requests) {
+        List<Object> args = new ArrayList<>(requests.size());
+        for (CollapsedRequest request : requests) {
+            args.add(request.arg);
+        }
+        Object result;
+        try {
+            result = batchMethod.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            fail(requests, e.getTargetException());
+            return;
+        } catch (Exception e) {
+            fail(requests, e);
+            return;
+        }
+        if (result instanceof List) {
+            List<?> results = (List<?>) result;
+            if (results.size() != requests.size()) {
+                fail(requests, new IllegalStateException("batch method " + batchMethod.getName() + " returned "
+                        + results.size() + " results for " + requests.size() + " arguments"));
+                return;
+            }
+            for (int i = 0; i < requests.size(); i++) {
+                requests.get(i).future.complete(results.get(i));
+            }
+        } else if (result instanceof Map) {
+            Map<?, ?> results = (Map<?, ?>) result;
+            for (CollapsedRequest request : requests) {
+                if (results.containsKey(request.arg)) {
+                    request.future.complete(results.get(request.arg));
+                } else {
+                    request.future.completeExceptionally(new IllegalStateException("batch method " + batchMethod.getName()
+                            + " returned no result for argument " + request.arg));
+                }
+            }
+        } else if (batchMethod.getReturnType() == void.class) {
+            for (CollapsedRequest request : requests) {
+                request.future.complete(null);
+            }
+        } else {
+            fail(requests, new IllegalStateException("batch method " + batchMethod.getName() + " returned null"));
+        }
+    }
+
+    private void fail(List<CollapsedRequest> requests, Throwable cause) {
+        log.error("批量方法{}执行失败", batchMethod.getName(), cause);
+        for (CollapsedRequest request : requests) {
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    private static final class CollapsedRequest {
+
+        private final Object arg;
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private CollapsedRequest(Object arg) {
+            this.arg = arg;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.xk.queue.delay;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 20:10
+ * 延迟任务的存储与到期调度
+ * add、cancel可以被多个线程并发调用；take、drainExpired只由一个分发线程调用
+ * 取消的任务作为墓碑留在引擎中，在到期或被整理时删除，不会被take返回
+ * @see DelayQueueEngine
+ * @see TimingWheelEngine
+ */
+public interface DelayEngine {
+
+    /**
+     * 添加任务
+     * @param job 任务
+     */
+    void add(DelayJob job);
+
+    /**
+     * 取消任务，O(1)
+     * @param job 已添加的任务
+     * @return 已取出或已取消返回false
+     */
+    boolean cancel(DelayJob job);
+
+    /**
+     * 取出一个到期且未取消的任务，没有到期任务时等待
+     * @return 到期的任务
+     * @throws InterruptedException 等待时被中断
+     */
+    DelayJob take() throws InterruptedException;
+
+    /**
+     * 不等待地取出已到期且未取消的任务，用于take之后一次取出同时到期的所有任务
+     * @param collection 取出的任务
+     * @param maxJobs 最多取出数量
+     * @return 取出数量
+     */
+    int drainExpired(Collection<? super DelayJob> collection, int maxJobs);
+
+    /**
+     * 遍历未取出且未取消的任务，弱一致，只用于统计
+     * @param action 对每个任务的操作
+     */
+    void forEachPending(Consumer<DelayJob> action);
+
+    /**
+     * 未取出且未取消的任务数量
+     * @return 任务数量
+     */
+    int size();
+
+    /**
+     * 已取消但还未删除的任务数量
+     * @return 墓碑数量
+     */
+    int tombstoneSize();
+}
@@ -0,0 +1,172 @@
+package com.xk.queue.delay;
+
+import org.springframework.util.Assert;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2021-12-09 14:39
+ * 延迟任务
+ * 到期时间基于System.nanoTime，不受系统时间调整影响，精度为纳秒；nanoTime可以为负数，只能比较差值
+ */
+public class DelayJob implements Delayed {
+
+    private static final int PENDING = 0;
+
+    private static final int CANCELLED = 1;
+
+    private static final int TAKEN = 2;
+
+    /**
+     * 最大延迟约146年，保证到期时间之差不溢出
+     */
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 1;
+
+    private static final AtomicIntegerFieldUpdater<DelayJob> STATE = AtomicIntegerFieldUpdater.newUpdater(DelayJob.class, "state");
+
+    /**
+     * 任务，取消后置空，墓碑在被删除前不再持有任务引用
+     */
+    private volatile Runnable runnable;
+
+    /**
+     * 批量处理的任务类型，为null时执行runnable
+     */
+    private final String type;
+
+    /**
+     * 批量处理的载荷，取消后置空
+     */
+    private volatile Object payload;
+
+    /**
+     * 状态：等待、已取消、已取出，只能从等待变为其他状态
+     */
+    private volatile int state;
+
+    /**
+     * 到期时间，System.nanoTime
+     */
+    private final long deadline;
+
+    /**
+     * 时间轮中所在的槽及链表前后节点，由槽的锁保护
+     */
+    volatile TimerBucket bucket;
+
+    DelayJob prev;
+
+    DelayJob next;
+
+    public DelayJob(@Nonnull Runnable runnable, long delayTime, @Nonnull TimeUnit timeUnit) {
+        Assert.notNull(runnable, "runnable can not be null!");
+        Assert.notNull(timeUnit, "timeunit can not be null!");
+        this.runnable = runnable;
+        this.type = null;
+        this.deadline = deadline(delayTime, timeUnit);
+    }
+
+    /**
+     * 按类型批量处理的任务，同一次分发中到期的同类型任务合并为一批
+     * @param type 任务类型
+     * @param payload 载荷
+     */
+    public DelayJob(@Nonnull String type, Object payload, long delayTime, @Nonnull TimeUnit timeUnit) {
+        Assert.notNull(type, "type can not be null!");
+        Assert.notNull(timeUnit, "timeunit can not be null!");
+        this.type = type;
+        this.payload = payload;
+        this.deadline = deadline(delayTime, timeUnit);
+    }
+
+    /**
+     * 时间轮槽链表的头节点
+     */
+    DelayJob() {
+        this.runnable = null;
+        this.type = null;
+        this.deadline = 0;
+    }
+
+    @Override
+    public long getDelay(@Nonnull TimeUnit unit) {
+        return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 比较到期时间之差，nanoTime溢出回绕时仍然正确
+     */
+    @Override
+    public int compareTo(@Nonnull Delayed delayed) {
+        DelayJob delayJob = (DelayJob) delayed;
+        return Long.compare(this.deadline - delayJob.deadline, 0);
+    }
+
+    public Runnable getRunnable(){
+        return this.runnable;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public Object getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * 到期时间，System.nanoTime
+     */
+    public long getDeadline() {
+        return this.deadline;
+    }
+
+    /**
+     * 按当前系统时间换算的执行时间，单位毫秒，只用于展示
+     */
+    public long getExecuteTime() {
+        return System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    /**
+     * 是否已被分发线程取出
+     */
+    public boolean isTaken() {
+        return state == TAKEN;
+    }
+
+    /**
+     * 标记为取消，任务留在引擎中作为墓碑，由引擎延迟删除
+     * @return 已取出或已取消返回false
+     */
+    boolean cancel() {
+        if (STATE.compareAndSet(this, PENDING, CANCELLED)) {
+            this.runnable = null;
+            this.payload = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 标记为已取出，与cancel竞争
+     * @return 已取消返回false，调用方丢弃该任务
+     */
+    boolean markTaken() {
+        return STATE.compareAndSet(this, PENDING, TAKEN);
+    }
+
+    private static long deadline(long delayTime, TimeUnit timeUnit) {
+        long delay = Math.min(Math.max(timeUnit.toNanos(delayTime), 0), MAX_DELAY_NANOS);
+        return System.nanoTime() + delay;
+    }
+}
@@ -0,0 +1,92 @@
+package com.xk.queue.delay;
+
+import org.springframework.util.Assert;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 21:10
+ * 延迟任务的句柄，可以取消或重新设置延迟时间
+ * 取消只标记任务，由引擎延迟删除；重新设置延迟时取消当前任务并添加新的任务
+ * 适用于大多数会被取消的超时任务，如订单支付超时
+ */
+public final class DelayJobHandle {
+
+    private final DelayEngine delayEngine;
+
+    private final Runnable runnable;
+
+    /**
+     * 当前在引擎中的任务
+     */
+    private volatile DelayJob job;
+
+    /**
+     * 句柄是否已取消，重新设置延迟时被取消的旧任务不算
+     */
+    private volatile boolean cancelled;
+
+    public DelayJobHandle(@Nonnull DelayEngine delayEngine, @Nonnull Runnable runnable, long delayTime, @Nonnull TimeUnit timeUnit) {
+        Assert.notNull(delayEngine, "delayEngine can not be null!");
+        this.delayEngine = delayEngine;
+        this.runnable = runnable;
+        this.job = new DelayJob(runnable, delayTime, timeUnit);
+        delayEngine.add(this.job);
+    }
+
+    /**
+     * 取消任务
+     * @return 任务已经开始执行或已经取消返回false
+     */
+    public synchronized boolean cancel() {
+        if (cancelled || !delayEngine.cancel(job)) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    /**
+     * 从当前时间起重新设置延迟时间
+     * @param delayTime 延迟执行时间
+     * @param timeUnit 时间单位
+     * @return 任务已经开始执行或已经取消返回false
+     */
+    public synchronized boolean reschedule(long delayTime, @Nonnull TimeUnit timeUnit) {
+        if (cancelled || !delayEngine.cancel(job)) {
+            return false;
+        }
+        DelayJob next = new DelayJob(runnable, delayTime, timeUnit);
+        this.job = next;
+        delayEngine.add(next);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 任务是否已被取出执行
+     */
+    public boolean isDone() {
+        return job.isTaken();
+    }
+
+    /**
+     * 当前的到期时间，System.nanoTime
+     */
+    public long getDeadline() {
+        return job.getDeadline();
+    }
+
+    /**
+     * 按当前系统时间换算的执行时间，单位毫秒，只用于展示
+     */
+    public long getExecuteTime() {
+        return job.getExecuteTime();
+    }
+}
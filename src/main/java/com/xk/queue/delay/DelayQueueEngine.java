@@ -0,0 +1,198 @@
+package com.xk.queue.delay;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 20:14
+ * 与{@link DelayQueue}相同的二叉堆调度：添加O(log n)，所有添加与取出竞争同一把锁
+ * 取消的任务先作为墓碑留在堆中，到达堆顶时直接丢弃，不等待其到期；
+ * 墓碑超过堆中任务的一半时整理一次堆，整理的开销分摊到每次取消上仍为O(1)；墓碑不再持有任务引用
+ */
+public class DelayQueueEngine implements DelayEngine {
+
+    /**
+     * 墓碑少于此数量时不整理
+     */
+    private static final int MIN_PURGE_TOMBSTONES = 64;
+
+    private final PriorityQueue<DelayJob> queue = new PriorityQueue<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 堆顶变化或有任务到期时唤醒分发线程
+     */
+    private final Condition available = lock.newCondition();
+
+    private final AtomicInteger tombstones = new AtomicInteger();
+
+    @Override
+    public void add(DelayJob job) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            queue.offer(job);
+            if (queue.peek() == job) {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean cancel(DelayJob job) {
+        if (!job.cancel()) {
+            return false;
+        }
+        int count = tombstones.incrementAndGet();
+        if (count >= MIN_PURGE_TOMBSTONES && count > queue.size() >> 1) {
+            purge();
+        }
+        return true;
+    }
+
+    @Override
+    public DelayJob take() throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (; ; ) {
+                DelayJob first = queue.peek();
+                if (first == null) {
+                    available.await();
+                    continue;
+                }
+                if (first.isCancelled()) {
+                    discard();
+                    continue;
+                }
+                long delay = first.getDelay(TimeUnit.NANOSECONDS);
+                if (delay > 0) {
+                    available.awaitNanos(delay);
+                    continue;
+                }
+                queue.poll();
+                if (first.markTaken()) {
+                    return first;
+                }
+                tombstones.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 一次加锁取出所有到期任务，堆顶的墓碑无论是否到期都丢弃
+     */
+    @Override
+    public int drainExpired(Collection<? super DelayJob> collection, int maxJobs) {
+        int count = 0;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            DelayJob first;
+            while (count < maxJobs && (first = queue.peek()) != null) {
+                if (first.isCancelled()) {
+                    discard();
+                    continue;
+                }
+                if (first.getDelay(TimeUnit.NANOSECONDS) > 0) {
+                    break;
+                }
+                queue.poll();
+                if (first.markTaken()) {
+                    collection.add(first);
+                    count++;
+                } else {
+                    tombstones.decrementAndGet();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * 遍历堆的快照
+     */
+    @Override
+    public void forEachPending(Consumer<DelayJob> action) {
+        Object[] snapshot;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            snapshot = queue.toArray();
+        } finally {
+            lock.unlock();
+        }
+        for (Object o : snapshot) {
+            DelayJob job = (DelayJob) o;
+            if (!job.isCancelled()) {
+                action.accept(job);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return Math.max(queue.size() - tombstones.get(), 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int tombstoneSize() {
+        return tombstones.get();
+    }
+
+    /**
+     * 丢弃堆顶的墓碑，调用方需持有锁
+     */
+    private void discard() {
+        queue.poll();
+        tombstones.decrementAndGet();
+    }
+
+    /**
+     * 删除堆中所有墓碑，遍历一次堆
+     */
+    private void purge() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (tombstones.get() <= queue.size() >> 1) {
+                return;
+            }
+            int removed = 0;
+            Iterator<DelayJob> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isCancelled()) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+            tombstones.addAndGet(-removed);
+            // 堆顶可能已变化，让分发线程重新计算等待时间
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.xk.queue.delay;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 22:05
+ * 延迟队列的指标记录
+ * onAdd在添加线程上调用，onRun在线程池的工作线程上调用，其余方法在各分片的分发线程上调用，实现需要线程安全且尽量轻量
+ * @see com.xk.queue.metrics.DelayQueueMetrics
+ */
+public interface DelayQueueRecorder {
+
+    /**
+     * 任务进入队列
+     */
+    void onAdd();
+
+    /**
+     * 一次分发结束
+     * @param size 本次分发的到期任务数量
+     * @param lagNanos 本次分发中最早到期的任务从执行时间到交给线程池的耗时，单位纳秒
+     */
+    void onDispatch(int size, long lagNanos);
+
+    /**
+     * 任务交给线程池的时间与执行时间之差
+     * @param latenessNanos 延迟，单位纳秒
+     */
+    void onLateness(long latenessNanos);
+
+    /**
+     * 线程池拒绝，任务改为在分发线程上执行
+     * @param jobs 被拒绝的任务数量
+     */
+    void onRejected(int jobs);
+
+    /**
+     * 一个任务或一批同类型任务执行结束
+     * @param runNanos 执行耗时，单位纳秒
+     * @param success 是否成功
+     */
+    void onRun(long runNanos, boolean success);
+}
@@ -0,0 +1,99 @@
+package com.xk.queue.delay;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 20:18
+ * 时间轮的槽：到期时间相同的任务组成的双向链表，槽本身按到期时间进入DelayQueue
+ * 到期时间为相对于时间轮起点的纳秒数
+ */
+final class TimerBucket implements Delayed {
+
+    /**
+     * 链表头节点
+     */
+    private final DelayJob root = new DelayJob();
+
+    /**
+     * 槽的到期时间，-1表示不在DelayQueue中
+     */
+    private final AtomicLong expiration = new AtomicLong(-1L);
+
+    /**
+     * 时间轮起点，System.nanoTime
+     */
+    private final long origin;
+
+    TimerBucket(long origin) {
+        this.origin = origin;
+        root.next = root;
+        root.prev = root;
+    }
+
+    /**
+     * @return 到期时间是否变化，变化时需要重新放入DelayQueue
+     */
+    boolean setExpiration(long expiration) {
+        return this.expiration.getAndSet(expiration) != expiration;
+    }
+
+    long getExpiration() {
+        return expiration.get();
+    }
+
+    synchronized void add(DelayJob job) {
+        DelayJob tail = root.prev;
+        job.next = root;
+        job.prev = tail;
+        tail.next = job;
+        root.prev = job;
+        job.bucket = this;
+    }
+
+    synchronized void remove(DelayJob job) {
+        if (job.bucket != this) {
+            return;
+        }
+        job.next.prev = job.prev;
+        job.prev.next = job.next;
+        job.next = null;
+        job.prev = null;
+        job.bucket = null;
+    }
+
+    /**
+     * 取出所有任务并重置到期时间
+     */
+    synchronized void flush(Consumer<DelayJob> consumer) {
+        DelayJob job = root.next;
+        while (job != root) {
+            DelayJob next = job.next;
+            remove(job);
+            consumer.accept(job);
+            job = next;
+        }
+        expiration.set(-1L);
+    }
+
+    synchronized void forEach(Consumer<DelayJob> consumer) {
+        for (DelayJob job = root.next; job != root; job = job.next) {
+            consumer.accept(job);
+        }
+    }
+
+    @Override
+    public long getDelay(@Nonnull TimeUnit unit) {
+        return unit.convert(Math.max(origin + getExpiration() - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(@Nonnull Delayed delayed) {
+        return Long.compare(getExpiration(), ((TimerBucket) delayed).getExpiration());
+    }
+}
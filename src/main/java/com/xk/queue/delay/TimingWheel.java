@@ -0,0 +1,121 @@
+package com.xk.queue.delay;
+
+import java.util.concurrent.DelayQueue;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 20:22
+ * 分层时间轮的一层
+ * 每层wheelSize个槽，每个槽跨度tick，超出本层范围的任务放入上一层（tick为本层的一圈）
+ * 最底层的槽在跨度结束时到期，任务不会提前执行，最多延迟一个tick；上层的槽在跨度开始时到期，到期后任务降级到下层
+ * 时间为相对于起点的纳秒数，从0开始，不会溢出；currentTime由引擎的写锁保护，add在读锁下调用
+ */
+final class TimingWheel {
+
+    /**
+     * 时间轮起点，System.nanoTime
+     */
+    private final long origin;
+
+    private final long tick;
+
+    private final int wheelSize;
+
+    /**
+     * 一圈的跨度
+     */
+    private final long interval;
+
+    private final TimerBucket[] buckets;
+
+    /**
+     * 是否为最底层
+     */
+    private final boolean base;
+
+    /**
+     * 所有层共享的槽到期队列
+     */
+    private final DelayQueue<TimerBucket> bucketQueue;
+
+    /**
+     * 当前时间，tick的整数倍
+     */
+    private long currentTime;
+
+    private volatile TimingWheel overflowWheel;
+
+    TimingWheel(long origin, long tick, int wheelSize, long startTime, boolean base, DelayQueue<TimerBucket> bucketQueue) {
+        this.origin = origin;
+        this.tick = tick;
+        this.wheelSize = wheelSize;
+        // 最上层的一圈足以覆盖最大延迟
+        this.interval = tick > Long.MAX_VALUE / wheelSize ? Long.MAX_VALUE : tick * wheelSize;
+        this.base = base;
+        this.bucketQueue = bucketQueue;
+        this.currentTime = startTime - startTime % tick;
+        this.buckets = new TimerBucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new TimerBucket(origin);
+        }
+    }
+
+    /**
+     * @return 已经到期返回false，由调用方直接执行
+     */
+    boolean add(DelayJob job) {
+        long expiration = job.getDeadline() - origin;
+        if (base ? expiration < currentTime : expiration - currentTime < tick) {
+            return false;
+        }
+        if (expiration - currentTime < interval) {
+            long virtualId = expiration / tick;
+            TimerBucket bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.add(job);
+            if (bucket.setExpiration(base ? (virtualId + 1) * tick : virtualId * tick)) {
+                bucketQueue.offer(bucket);
+            }
+            return true;
+        }
+        return overflowWheel().add(job);
+    }
+
+    void advanceClock(long time) {
+        if (time - currentTime >= tick) {
+            currentTime = time - time % tick;
+            TimingWheel overflowWheel = this.overflowWheel;
+            if (overflowWheel != null) {
+                overflowWheel.advanceClock(currentTime);
+            }
+        }
+    }
+
+    /**
+     * 遍历本层及上层所有槽中的任务
+     */
+    void forEach(Consumer<DelayJob> consumer) {
+        for (TimerBucket bucket : buckets) {
+            bucket.forEach(consumer);
+        }
+        TimingWheel overflowWheel = this.overflowWheel;
+        if (overflowWheel != null) {
+            overflowWheel.forEach(consumer);
+        }
+    }
+
+    private TimingWheel overflowWheel() {
+        TimingWheel overflowWheel = this.overflowWheel;
+        if (overflowWheel == null) {
+            synchronized (this) {
+                overflowWheel = this.overflowWheel;
+                if (overflowWheel == null) {
+                    overflowWheel = new TimingWheel(origin, interval, wheelSize, currentTime, false, bucketQueue);
+                    this.overflowWheel = overflowWheel;
+                }
+            }
+        }
+        return overflowWheel;
+    }
+}
@@ -0,0 +1,244 @@
+package com.xk.queue.delay;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 20:30
+ * 基于分层时间轮的调度
+ * 添加O(1)，多个添加线程只在同一个槽上竞争；DelayQueue中只有非空的槽，数量远小于任务数量，
+ * 分发线程在DelayQueue上等待到下一个槽到期，不需要按tick轮询
+ * 任务不会提前执行，最多延迟一个tick；延迟超过tick*wheelSize的任务进入上层时间轮，层数按需增加
+ * 时间基于System.nanoTime，tick可以小于1毫秒；分发线程在DelayQueue上按纳秒等待到下一个槽到期
+ * 取消的任务留在槽中，在槽到期时被丢弃，上层时间轮中的墓碑在降级时即被丢弃，不会等到任务的执行时间
+ * 同一tick内的任务无序；分发线程落后时一次推进跨越多个tick，到期的任务按执行时间排序后取出
+ */
+public class TimingWheelEngine implements DelayEngine {
+
+    /**
+     * 更小的tick会让分发线程频繁唤醒，等待本身的误差也在这个量级
+     */
+    private static final long MIN_TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    /**
+     * 非空槽的到期队列
+     */
+    private final DelayQueue<TimerBucket> bucketQueue = new DelayQueue<>();
+
+    /**
+     * 添加时已经到期的任务，到期时间固定为0，放入后立即唤醒分发线程
+     */
+    private final TimerBucket expiredBucket;
+
+    private final TimingWheel timingWheel;
+
+    private final long tickNanos;
+
+    /**
+     * 添加持有读锁，推进时间持有写锁
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 未取出且未取消的任务数量
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicInteger tombstones = new AtomicInteger();
+
+    /**
+     * 以下字段只由分发线程访问
+     */
+    private final ArrayDeque<DelayJob> ready = new ArrayDeque<>();
+
+    private final List<TimerBucket> expiredBuckets = new ArrayList<>();
+
+    private final List<DelayJob> flushed = new ArrayList<>();
+
+    private final List<DelayJob> due = new ArrayList<>();
+
+    /**
+     * 默认tick为1毫秒，每层512个槽，即最底层一圈约0.5秒
+     */
+    public TimingWheelEngine() {
+        this(1, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * @param tick 最底层每个槽的跨度，即调度精度，最小10微秒
+     * @param timeUnit 时间单位
+     * @param wheelSize 每层的槽数量
+     */
+    public TimingWheelEngine(long tick, TimeUnit timeUnit, int wheelSize) {
+        long tickNanos = timeUnit.toNanos(tick);
+        if (tickNanos < MIN_TICK_NANOS || wheelSize <= 1) {
+            throw new IllegalArgumentException("tick must be at least 10us and wheelSize must be greater than 1!");
+        }
+        this.tickNanos = tickNanos;
+        long origin = System.nanoTime();
+        this.expiredBucket = new TimerBucket(origin);
+        this.timingWheel = new TimingWheel(origin, tickNanos, wheelSize, 0, true, bucketQueue);
+    }
+
+    @Override
+    public void add(DelayJob job) {
+        size.incrementAndGet();
+        lock.readLock().lock();
+        try {
+            if (!timingWheel.add(job)) {
+                addExpired(job);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean cancel(DelayJob job) {
+        if (job.cancel()) {
+            size.decrementAndGet();
+            tombstones.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public DelayJob take() throws InterruptedException {
+        for (; ; ) {
+            DelayJob job = pollReady();
+            if (job != null) {
+                return job;
+            }
+            expiredBuckets.add(bucketQueue.take());
+            bucketQueue.drainTo(expiredBuckets);
+            advance();
+        }
+    }
+
+    @Override
+    public int drainExpired(Collection<? super DelayJob> collection, int maxJobs) {
+        int count = 0;
+        for (; ; ) {
+            DelayJob job;
+            while (count < maxJobs && (job = pollReady()) != null) {
+                collection.add(job);
+                count++;
+            }
+            if (count >= maxJobs) {
+                return count;
+            }
+            TimerBucket bucket = bucketQueue.poll();
+            if (bucket == null) {
+                return count;
+            }
+            expiredBuckets.add(bucket);
+            bucketQueue.drainTo(expiredBuckets);
+            advance();
+        }
+    }
+
+    /**
+     * 持有读锁遍历所有槽，推进时间时移入分发线程本地的到期任务不在遍历范围内
+     */
+    @Override
+    public void forEachPending(Consumer<DelayJob> action) {
+        Consumer<DelayJob> pending = job -> {
+            if (!job.isCancelled()) {
+                action.accept(job);
+            }
+        };
+        lock.readLock().lock();
+        try {
+            expiredBucket.forEach(pending);
+            timingWheel.forEach(pending);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int tombstoneSize() {
+        return tombstones.get();
+    }
+
+    /**
+     * 推进到已到期槽中最晚的到期时间，先清空所有已到期的槽再重新放入任务，
+     * 保证重新放入时不会复用尚未清空的槽；清空时丢弃已取消的任务。
+     * 只在ready为空时调用，到期任务跨越多个tick时排序，准时推进时只有一个tick的任务，不需要排序
+     */
+    private void advance() {
+        lock.writeLock().lock();
+        try {
+            long time = 0;
+            for (TimerBucket bucket : expiredBuckets) {
+                time = Math.max(time, bucket.getExpiration());
+            }
+            timingWheel.advanceClock(time);
+            for (TimerBucket bucket : expiredBuckets) {
+                bucket.flush(flushed::add);
+            }
+            long first = 0;
+            long last = 0;
+            for (DelayJob job : flushed) {
+                if (job.isCancelled()) {
+                    tombstones.decrementAndGet();
+                } else if (!timingWheel.add(job)) {
+                    long deadline = job.getDeadline();
+                    if (due.isEmpty() || deadline - first < 0) {
+                        first = deadline;
+                    }
+                    if (due.isEmpty() || deadline - last > 0) {
+                        last = deadline;
+                    }
+                    due.add(job);
+                }
+            }
+            if (last - first >= tickNanos) {
+                due.sort(null);
+            }
+            ready.addAll(due);
+        } finally {
+            lock.writeLock().unlock();
+            expiredBuckets.clear();
+            flushed.clear();
+            due.clear();
+        }
+    }
+
+    /**
+     * 取出一个已到期且未取消的任务，丢弃墓碑
+     */
+    private DelayJob pollReady() {
+        DelayJob job;
+        while ((job = ready.poll()) != null) {
+            if (job.markTaken()) {
+                size.decrementAndGet();
+                return job;
+            }
+            tombstones.decrementAndGet();
+        }
+        return null;
+    }
+
+    private void addExpired(DelayJob job) {
+        expiredBucket.add(job);
+        if (expiredBucket.setExpiration(0)) {
+            bucketQueue.offer(expiredBucket);
+        }
+    }
+}
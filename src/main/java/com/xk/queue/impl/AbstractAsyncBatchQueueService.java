@@ -1,17 +1,35 @@
 package com.xk.queue.impl;
 
+import com.xk.queue.base.BisectingRetry;
+import com.xk.queue.base.BufferType;
+import com.xk.queue.base.DrainReport;
+import com.xk.queue.base.PriorityLane;
+import com.xk.queue.base.SpillStore;
+import com.xk.queue.journal.JournalSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Resource;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * @author xiongkai
  * @version 1.0
  * @date 2021-12-31 11:07
  * 异步消费-批量消费队列
+ * 批次执行失败、线程池拒绝执行或等待执行许可时被中断，批次中的元素都交给onDeadLetter
  */
 public class AbstractAsyncBatchQueueService<T> extends AbstractBatchQueueService<T> {
 
@@ -20,22 +38,357 @@ public class AbstractAsyncBatchQueueService<T> extends AbstractBatchQueueService
 
     private static final Logger log = LoggerFactory.getLogger(AbstractAsyncBatchQueueService.class);
 
+    /**
+     * 同时执行的批次上限，为null则不限制
+     */
+    private volatile Semaphore inFlightPermits;
+
+    /**
+     * 是否按批次取出顺序完成future
+     */
+    private volatile boolean orderedCompletion;
+
+    /**
+     * 批次执行失败时的拆分重试，在线程池中执行，为null则不重试
+     */
+    private volatile BisectingRetry<Object> bisectingRetry;
+
+    /**
+     * 上一批次的完成信号，按序完成时使用
+     */
+    private final AtomicReference<CompletableFuture<Void>> lastBatchDone = new AtomicReference<>(CompletableFuture.completedFuture(null));
+
+    /**
+     * 已提交到线程池、尚未执行完成的元素数量
+     */
+    private final AtomicLong inFlightElements = new AtomicLong();
+
+    private final Object inFlightMonitor = new Object();
+
+    /**
+     * 是否正在关闭
+     */
+    private volatile boolean draining;
+
+    /**
+     * 关闭期间取出、执行成功的元素数量
+     */
+    private final LongAdder drainConsumed = new LongAdder();
+
+    /**
+     * 关闭期间取出、执行失败或交给onDeadLetter的元素数量
+     */
+    private final LongAdder drainFailed = new LongAdder();
+
     public AbstractAsyncBatchQueueService(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime) {
         super(capacity, batchConsumeSize, maxWaitSize, maxWaitTime);
     }
 
+    public AbstractAsyncBatchQueueService(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, BufferType bufferType) {
+        super(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, bufferType);
+    }
+
+    public AbstractAsyncBatchQueueService(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, int partitions, Function<? super T, ?> keyExtractor) {
+        super(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, partitions, t -> keyExtractor.apply(AbstractAsyncBatchQueueService.<T>unwrap(t)));
+    }
+
+    /**
+     * 各车道按权重轮流提交到线程池，配合setMaxInFlightBatches限制同时执行的批次
+     */
+    public AbstractAsyncBatchQueueService(List<PriorityLane> lanes, ToIntFunction<? super T> laneSelector) {
+        super(lanes, t -> laneSelector.applyAsInt(AbstractAsyncBatchQueueService.<T>unwrap(t)));
+    }
+
+    /**
+     * 添加元素，元素所在批次执行完成后future完成，执行失败、元素被拒绝或丢弃时异常完成
+     * 每次调用的元素单独包装后入队，同一对象多次添加时各自对应自己的future
+     * @param t 元素
+     * @return 元素所在批次的完成结果
+     */
+    public CompletableFuture<Void> addAsync(T t) {
+        Pending<T> pending = new Pending<>(t);
+        try {
+            add(wrap(pending));
+        } catch (Exception e) {
+            pending.future.completeExceptionally(e);
+        }
+        return pending.future;
+    }
+
+    /**
+     * 同时执行的批次上限，达到上限后取出元素的线程会等待，从而对队列形成背压
+     * @param maxInFlightBatches 小于等于0不限制
+     */
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.inFlightPermits = maxInFlightBatches > 0 ? new Semaphore(maxInFlightBatches) : null;
+    }
+
+    /**
+     * 是否按批次取出顺序完成future，批次本身仍然并发执行
+     */
+    public void setOrderedCompletion(boolean orderedCompletion) {
+        this.orderedCompletion = orderedCompletion;
+    }
+
+    /**
+     * 拆分重试在线程池中执行，只有交给onDeadLetter的元素对应的future异常完成
+     */
+    @Override
+    public void enableBisectingRetry(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit timeUnit) {
+        this.bisectingRetry = new BisectingRetry<>(maxRetries, initialBackoff, maxBackoff, timeUnit,
+                (e, cause) -> onDeadLetter(unwrap(e), cause));
+    }
+
+    /**
+     * 不支持持久化日志：batchConsume返回时批次只是提交到线程池，此时确认会丢失仍在执行的批次
+     */
+    @Override
+    public void enableJournal(File directory, JournalSerializer<T> serializer) {
+        throw new UnsupportedOperationException("journal is not supported by async batch queue!");
+    }
+
+    /**
+     * 转存的元素不会被消费，对应的future异常完成
+     */
+    @Override
+    public void setSpillStore(SpillStore<T> spillStore) {
+        if (spillStore == null) {
+            super.setSpillStore(null);
+            return;
+        }
+        super.setSpillStore(t -> {
+            spillStore.spill(unwrap(t));
+            fail(t, new IllegalStateException("element spilled"));
+        });
+    }
+
+    @Override
     public void batchConsume(List<T> list) {
-        executorService.execute(() -> {
+        // 批次在其他线程执行，复用的列表需要拷贝
+        List<Object> items = new ArrayList<>(list);
+        CompletableFuture<Void> previous = null;
+        CompletableFuture<Void> done = null;
+        if (orderedCompletion) {
+            done = new CompletableFuture<>();
+            previous = lastBatchDone.getAndSet(done);
+        }
+        Semaphore permits = this.inFlightPermits;
+        final boolean drainBatch = draining;
+        if (permits != null) {
             try {
-                batchConsumeMsg(list);
-            } catch (Exception e) {
-                log.error("消费失败", e);
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("消费失败，等待执行许可时被中断");
+                deadLetterAll(items, e);
+                onFinished(drainBatch, 0, items.size());
+                complete(items, e, previous, done);
+                return;
             }
-        });
+        }
+        final CompletableFuture<Void> previousBatch = previous;
+        final CompletableFuture<Void> batchDone = done;
+        final BisectingRetry<Object> retry = this.bisectingRetry;
+        inFlightElements.addAndGet(items.size());
+        try {
+            executorService.execute(() -> {
+                Throwable error = null;
+                int[] deadLetters = new int[1];
+                try {
+                    if (retry == null) {
+                        batchConsumeMsg(unwrapAll(items));
+                    } else {
+                        retry.execute(items, batch -> batchConsumeMsg(unwrapAll(batch)), (e, cause) -> {
+                            deadLetters[0]++;
+                            fail(e, cause);
+                        });
+                    }
+                } catch (Exception e) {
+                    error = e;
+                    log.error("消费失败", e);
+                    deadLetterAll(items, e);
+                } finally {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
+                int failed = error != null ? items.size() : deadLetters[0];
+                onFinished(drainBatch, items.size() - failed, failed);
+                complete(items, error, previousBatch, batchDone);
+                finishInFlight(items.size());
+            });
+        } catch (RejectedExecutionException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            log.error("消费失败，线程池拒绝执行", e);
+            deadLetterAll(items, e);
+            onFinished(drainBatch, 0, items.size());
+            complete(items, e, previousBatch, batchDone);
+            finishInFlight(items.size());
+        }
+    }
+
+    /**
+     * 关闭时先标记，之后取出的批次计入关闭结果
+     */
+    @Override
+    public DrainReport shutdown() {
+        draining = true;
+        return super.shutdown();
+    }
+
+    /**
+     * 等待已提交的批次执行完成：消费数量只统计关闭期间取出且执行成功的元素，
+     * 关闭期间执行失败的元素与截止时间到达时仍在执行的元素（包括关闭前提交的批次）计为未消费
+     */
+    @Override
+    protected DrainReport awaitConsumed(DrainReport report, long deadline) {
+        long start = System.nanoTime();
+        boolean finished = awaitInFlight(deadline);
+        long unfinished = finished ? 0 : inFlightElements.get();
+        long failed = drainFailed.sum();
+        return new DrainReport(drainConsumed.sum(), report.getDropped() + failed + unfinished,
+                report.isCompleted() && finished && failed == 0,
+                report.getElapsedMillis() + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private boolean awaitInFlight(long deadline) {
+        synchronized (inFlightMonitor) {
+            while (inFlightElements.get() > 0) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (millis <= 0) {
+                    return false;
+                }
+                try {
+                    inFlightMonitor.wait(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private void finishInFlight(int size) {
+        if (inFlightElements.addAndGet(-size) == 0 && draining) {
+            synchronized (inFlightMonitor) {
+                inFlightMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void onFinished(boolean drainBatch, int consumed, int failed) {
+        if (!drainBatch) {
+            return;
+        }
+        drainConsumed.add(consumed);
+        drainFailed.add(failed);
+    }
+
+    /**
+     * 丢弃的元素对应的future异常完成
+     */
+    @Override
+    void dropped(T t) {
+        fail(t, new IllegalStateException("element dropped"));
+        onDropped(unwrap(t));
+    }
+
+    @Override
+    void deadLetter(T t, Throwable cause) {
+        fail(t, cause);
+        onDeadLetter(unwrap(t), cause);
     }
 
     @Override
     public void batchConsumeMsg(List<T> list) {
 
     }
+
+    private void deadLetterAll(List<Object> items, Throwable cause) {
+        for (Object item : items) {
+            try {
+                onDeadLetter(unwrap(item), cause);
+            } catch (Exception e) {
+                log.error("dead letter handler failed", e);
+            }
+        }
+    }
+
+    private static void fail(Object item, Throwable cause) {
+        if (item instanceof Pending) {
+            ((Pending<?>) item).future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 完成本批次的future，按序完成时等待上一批次完成；已经异常完成的future（如交给死信处理）保持不变
+     */
+    private void complete(List<Object> items, Throwable error,
+                          CompletableFuture<Void> previous, CompletableFuture<Void> done) {
+        if (previous == null) {
+            completeFutures(items, error);
+            return;
+        }
+        previous.whenComplete((v, e) -> {
+            completeFutures(items, error);
+            done.complete(null);
+        });
+    }
+
+    private static void completeFutures(List<Object> items, Throwable error) {
+        for (Object item : items) {
+            if (!(item instanceof Pending)) {
+                continue;
+            }
+            CompletableFuture<Void> future = ((Pending<?>) item).future;
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T wrap(Pending<T> pending) {
+        return (T) pending;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unwrap(Object item) {
+        if (item instanceof Pending) {
+            return ((Pending<T>) item).element;
+        }
+        return (T) item;
+    }
+
+    private List<T> unwrapAll(List<Object> items) {
+        List<T> list = new ArrayList<>(items.size());
+        for (Object item : items) {
+            list.add(unwrap(item));
+        }
+        return list;
+    }
+
+    /**
+     * addAsync添加的元素，在队列中与自己的future一起传递
+     */
+    private static final class Pending<T> {
+
+        private final T element;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Pending(T element) {
+            this.element = element;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(element);
+        }
+    }
 }
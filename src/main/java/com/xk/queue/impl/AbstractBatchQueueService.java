@@ -2,11 +2,30 @@ package com.xk.queue.impl;
 
 import com.xk.queue.BatchQueueService;
 import com.xk.queue.base.BatchConsumeBlockingQueue;
+import com.xk.queue.base.BatchConsumeQueue;
+import com.xk.queue.base.BatchQueueRecorder;
+import com.xk.queue.base.BufferType;
+import com.xk.queue.base.CoalescingConsumeBuffer;
+import com.xk.queue.base.DrainReport;
+import com.xk.queue.base.OverflowPolicy;
+import com.xk.queue.base.OverflowStats;
+import com.xk.queue.base.PartitionedBatchConsumeQueue;
+import com.xk.queue.base.PriorityBatchConsumeQueue;
+import com.xk.queue.base.PriorityLane;
+import com.xk.queue.base.SpillStore;
+import com.xk.queue.journal.JournalSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.SmartLifecycle;
 
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * @author xiongkai
@@ -14,14 +33,83 @@ import java.util.List;
  * @date 2021-12-28 10:00
  * 批量消费队列
  */
-public abstract class AbstractBatchQueueService<T> implements BatchQueueService<T>, DisposableBean {
+public abstract class AbstractBatchQueueService<T> implements BatchQueueService<T>, SmartLifecycle, DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(AbstractBatchQueueService.class);
 
-    private final BatchConsumeBlockingQueue<T> queue;
+    /**
+     * 默认关闭相位：晚于web服务器停止接收请求（Integer.MAX_VALUE - 1），早于相位更小的下游组件
+     */
+    public static final int DEFAULT_SHUTDOWN_PHASE = Integer.MAX_VALUE - 1024;
+
+    private final BatchConsumeQueue<T> queue;
+
+    private volatile int shutdownPhase = DEFAULT_SHUTDOWN_PHASE;
+
+    /**
+     * 关闭时的最长等待时间，单位毫秒
+     */
+    private volatile long shutdownTimeout = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * 关闭时并行消费的线程数，默认为1，与正常消费一样串行调用batchConsumeMsg
+     */
+    private volatile int shutdownParallelism = 1;
+
+    private volatile boolean running;
+
+    private final AtomicBoolean shutdown = new AtomicBoolean();
 
     public AbstractBatchQueueService(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime){
-        this.queue = new BatchConsumeBlockingQueue<>(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, this::batchConsume);
+        this(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, BufferType.LINKED);
+    }
+
+    public AbstractBatchQueueService(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, BufferType bufferType){
+        this.queue = new BatchConsumeBlockingQueue<>(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, bufferType, this::batchConsume);
+        this.queue.setDropHandler(this::dropped);
+        this.queue.setDeadLetterHandler(this::deadLetter);
+    }
+
+    /**
+     * 分区消费，相同key的元素进入同一分区按序消费，batchConsumeMsg会被多个分区线程并发调用
+     * 容量与消费阈值对每个分区单独生效
+     */
+    public AbstractBatchQueueService(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, int partitions, Function<? super T, ?> keyExtractor){
+        this(capacity, batchConsumeSize, maxWaitSize, maxWaitTime, BufferType.LINKED, partitions, keyExtractor);
+    }
+
+    public AbstractBatchQueueService(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, BufferType bufferType, int partitions, Function<? super T, ?> keyExtractor){
+        this.queue = new PartitionedBatchConsumeQueue<>(partitions, keyExtractor, capacity, batchConsumeSize, maxWaitSize, maxWaitTime, bufferType, this::batchConsume);
+        this.queue.setDropHandler(this::dropped);
+        this.queue.setDeadLetterHandler(this::deadLetter);
+    }
+
+    /**
+     * 优先级消费，元素按laneSelector进入不同车道，每个车道按自己的阈值触发消费，batchConsumeMsg串行调用
+     * @param lanes 车道配置，下标越小优先级越高
+     * @param laneSelector 返回元素的车道下标
+     * @see PriorityBatchConsumeQueue
+     */
+    public AbstractBatchQueueService(List<PriorityLane> lanes, ToIntFunction<? super T> laneSelector){
+        this(BufferType.LINKED, lanes, laneSelector);
+    }
+
+    public AbstractBatchQueueService(BufferType bufferType, List<PriorityLane> lanes, ToIntFunction<? super T> laneSelector){
+        this.queue = new PriorityBatchConsumeQueue<>(lanes, laneSelector, bufferType, this::batchConsume);
+        this.queue.setDropHandler(this::dropped);
+        this.queue.setDeadLetterHandler(this::deadLetter);
+    }
+
+    /**
+     * 合并消费，等待消费期间相同key的元素通过mergeFunction合并，每批中每个key只出现一次
+     * 容量与消费阈值按key数量计算，不支持持久化日志
+     * @param mergeFunction 合并函数，参数依次为已有元素与新元素
+     */
+    public AbstractBatchQueueService(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime, Function<? super T, ?> keyExtractor, BinaryOperator<T> mergeFunction){
+        this.queue = new BatchConsumeBlockingQueue<>(new CoalescingConsumeBuffer<>(capacity, keyExtractor, mergeFunction),
+                batchConsumeSize, maxWaitSize, maxWaitTime, this::batchConsume);
+        this.queue.setDropHandler(this::dropped);
+        this.queue.setDeadLetterHandler(this::deadLetter);
     }
 
     @Override
@@ -34,18 +122,188 @@ public abstract class AbstractBatchQueueService<T> implements BatchQueueService<
         }
     }
 
+    /**
+     * 队列已满时的处理策略，默认为ABORT
+     * @see OverflowPolicy
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.queue.setOverflowPolicy(overflowPolicy);
+    }
+
+    /**
+     * BLOCK策略的最长等待时间，小于等于0时一直等待直到有空位或队列关闭，默认为0
+     */
+    public void setBlockTimeout(long blockTimeout, TimeUnit timeUnit) {
+        this.queue.setBlockTimeout(blockTimeout, timeUnit);
+    }
+
+    /**
+     * SPILL策略的备用存储
+     */
+    public void setSpillStore(SpillStore<T> spillStore) {
+        this.queue.setSpillStore(spillStore);
+    }
+
+    public OverflowStats getOverflowStats() {
+        return this.queue.getOverflowStats();
+    }
+
+    /**
+     * 开启自适应批量，根据batchConsumeMsg耗时与到达速率在上下限之间调整批量消费数量
+     * @see com.xk.queue.base.AdaptiveBatchSizer
+     */
+    public void enableAdaptiveBatchSize(int minBatchSize, int maxBatchSize, long targetLatency, TimeUnit timeUnit) {
+        this.queue.enableAdaptiveBatchSize(minBatchSize, maxBatchSize, targetLatency, timeUnit);
+    }
+
+    /**
+     * 开启持久化日志，元素在消费成功前会保存在日志中，重启后重放；需在构造方法中、添加元素之前调用
+     * @see com.xk.queue.journal.BatchJournal
+     */
+    public void enableJournal(File directory, JournalSerializer<T> serializer) {
+        this.queue.enableJournal(directory, serializer);
+    }
+
+    /**
+     * 开启批量消费列表复用，batchConsumeMsg返回后列表会被清空，不能在返回后继续持有
+     * @see com.xk.queue.base.RecyclableBatch#copyOf(List)
+     */
+    public void enableBatchRecycle() {
+        this.queue.enableBatchRecycle();
+    }
+
+    /**
+     * 开启消费失败后的拆分重试，batchConsumeMsg抛出异常时按二分拆分重试，无法消费的元素交给onDeadLetter
+     * @see com.xk.queue.base.BisectingRetry
+     */
+    public void enableBisectingRetry(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit timeUnit) {
+        this.queue.enableBisectingRetry(maxRetries, initialBackoff, maxBackoff, timeUnit, this::deadLetter);
+    }
+
+    /**
+     * 设置指标记录，存在MeterRegistry时会自动设置
+     * @see com.xk.queue.metrics.BatchQueueMetricsConfiguration
+     */
+    public void setRecorder(BatchQueueRecorder recorder) {
+        this.queue.setRecorder(recorder);
+    }
+
+    /**
+     * 当前队列中的元素数量
+     */
+    public int size() {
+        return this.queue.size();
+    }
+
+    /**
+     * 关闭时的最长等待时间与并行消费的线程数，parallelism大于1时batchConsumeMsg会被并发调用
+     */
+    public void setShutdownDrain(long timeout, TimeUnit timeUnit, int parallelism) {
+        this.shutdownTimeout = timeUnit.toMillis(timeout);
+        this.shutdownParallelism = parallelism;
+    }
+
+    /**
+     * 容器关闭时的相位，相位大的先关闭，需要先于下游组件关闭时设置为大于下游组件的相位
+     */
+    public void setShutdownPhase(int shutdownPhase) {
+        this.shutdownPhase = shutdownPhase;
+    }
+
+    /**
+     * 关闭队列：停止接受添加，立即消费剩余元素直到完毕或超时，停止消费线程；只会执行一次
+     * @return 关闭结果，已经关闭过时返回null
+     */
+    public DrainReport shutdown() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return null;
+        }
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeout);
+        DrainReport report = this.queue.shutdown(shutdownTimeout, TimeUnit.MILLISECONDS, shutdownParallelism);
+        report = awaitConsumed(report, deadline);
+        if (report.isCompleted()) {
+            log.info("批量消费队列已关闭,{}", report);
+        } else {
+            log.warn("批量消费队列关闭超时,{}", report);
+        }
+        return report;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return shutdownPhase;
+    }
+
+    /**
+     * 未通过生命周期关闭时（如未交给容器管理生命周期）在此关闭
+     */
     @Override
     public void destroy() throws Exception {
-        int destroyWaitTimes = 0;
-        while (!this.queue.isEmpty()) {
-            if (destroyWaitTimes++ > 3){
-                return;
-            }
-            Thread.sleep(2000);
+        try {
+            shutdown();
+        } finally {
+            // 开启持久化日志时，未消费的元素会在下次启动时重放
+            this.queue.closeJournal();
         }
     }
 
-    private void batchConsume(List<T> list) {
+    /**
+     * 队列取出一批元素后调用，默认同步调用batchConsumeMsg
+     */
+    protected void batchConsume(List<T> list) {
         batchConsumeMsg(list);
     }
+
+    /**
+     * 队列取出剩余元素后调用，batchConsume异步执行时在此等待执行完成并修正关闭结果，默认直接返回
+     * @param report 队列的关闭结果
+     * @param deadline 截止时间，System.nanoTime
+     */
+    protected DrainReport awaitConsumed(DrainReport report, long deadline) {
+        return report;
+    }
+
+    /**
+     * 队列丢弃元素时调用，子类可以在交给onDropped之前处理队列中的元素
+     */
+    void dropped(T t) {
+        onDropped(t);
+    }
+
+    /**
+     * 队列中的元素消费失败时调用，子类可以在交给onDeadLetter之前处理队列中的元素
+     */
+    void deadLetter(T t, Throwable cause) {
+        onDeadLetter(t, cause);
+    }
+
+    /**
+     * DROP_NEWEST、DROP_OLDEST策略丢弃元素时调用
+     */
+    protected void onDropped(T t) {
+    }
+
+    /**
+     * batchConsumeMsg抛出异常的批次中的元素调用，开启拆分重试时为重试仍然失败的元素；
+     * 调用后元素视为已消费，开启持久化日志时不会重放；默认记录日志
+     */
+    protected void onDeadLetter(T t, Throwable cause) {
+        log.error("元素消费失败，已丢弃,{}", t, cause);
+    }
 }
@@ -0,0 +1,301 @@
+package com.xk.queue.impl;
+
+import com.xk.pipeline.redis.RedisListOperationService;
+import com.xk.queue.BatchQueueService;
+import com.xk.queue.base.BatchConsumeBlockingQueue;
+import com.xk.queue.base.DrainReport;
+import com.xk.queue.base.OverflowPolicy;
+import com.xk.queue.base.SpillStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.Assert;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 17:05
+ * 分布式批量消费队列，元素缓存在redis list中，所有节点共同累积、竞争消费
+ * 添加的元素先在本地短暂累积，再通过管道批量推送到redis；每个节点的消费线程按batchConsumeSize、maxWaitSize、maxWaitTime
+ * 原子地取出整批元素，阈值语义与{@link BatchConsumeBlockingQueue}一致，上一次消费时间在所有节点间共享
+ * 元素通过redisTemplate的value序列化方式保存；元素在推送到redis前保存在本地，节点宕机会丢失本地未推送的元素，
+ * 推送失败时按退避时间重试，重试仍然失败的元素交给onPushFailed；取出后消费失败的批次不会重新入队
+ */
+public abstract class AbstractRedisBatchQueueService<T> implements BatchQueueService<T>, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractRedisBatchQueueService.class);
+
+    /**
+     * 本地累积的默认参数：容量、每次推送数量、最大等待时间
+     */
+    private static final int DEFAULT_PUSH_CAPACITY = 100000;
+
+    private static final int DEFAULT_PUSH_SIZE = 500;
+
+    private static final long DEFAULT_PUSH_WAIT_TIME = 5;
+
+    /**
+     * 推送失败后的默认重试次数与首次退避时间，单位毫秒，每次重试退避时间翻倍
+     */
+    private static final int DEFAULT_PUSH_RETRIES = 3;
+
+    private static final long DEFAULT_PUSH_BACKOFF = 100;
+
+    /**
+     * 关闭时等待消费线程消费完已取出批次的最长时间，单位毫秒
+     */
+    private static final long DESTROY_JOIN_TIME = 10000;
+
+    @Resource
+    private RedisListOperationService redisListOperationService;
+
+    private final RedisTemplate<String, T> redisTemplate;
+
+    /**
+     * redis list键
+     */
+    private final String key;
+
+    /**
+     * 上一次消费时间的键
+     */
+    private final String stampKey;
+
+    private final int batchConsumeSize;
+
+    private final int maxWaitSize;
+
+    private final long maxWaitTime;
+
+    /**
+     * 本地累积，消费者为推送到redis
+     */
+    private final BatchConsumeBlockingQueue<T> pushQueue;
+
+    /**
+     * 每个节点的消费线程数
+     */
+    private volatile int consumerThreads = 1;
+
+    /**
+     * 未达到阈值时的轮询间隔，单位毫秒
+     */
+    private volatile long pollInterval;
+
+    private volatile int pushRetries = DEFAULT_PUSH_RETRIES;
+
+    private volatile long pushBackoff = DEFAULT_PUSH_BACKOFF;
+
+    private final List<Thread> consumers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    public AbstractRedisBatchQueueService(RedisTemplate<String, T> redisTemplate, String key, int batchConsumeSize, int maxWaitSize, long maxWaitTime) {
+        this(redisTemplate, key, batchConsumeSize, maxWaitSize, maxWaitTime, DEFAULT_PUSH_CAPACITY, DEFAULT_PUSH_SIZE, DEFAULT_PUSH_WAIT_TIME);
+    }
+
+    /**
+     * @param redisTemplate redis操作模板，value序列化方式决定元素的保存格式
+     * @param key redis list键，所有节点相同
+     * @param batchConsumeSize 批量消费数量
+     * @param maxWaitSize 所有节点的最多累积数量，小于等于0则不开启按量消费
+     * @param maxWaitTime 最大等待时间，单位毫秒，小于等于0则不开启延时消费
+     * @param pushCapacity 本地累积容量
+     * @param pushSize 本地累积到此数量时推送
+     * @param pushWaitTime 本地累积的最大等待时间，单位毫秒
+     */
+    public AbstractRedisBatchQueueService(RedisTemplate<String, T> redisTemplate, String key, int batchConsumeSize, int maxWaitSize, long maxWaitTime,
+                                          int pushCapacity, int pushSize, long pushWaitTime) {
+        Assert.notNull(redisTemplate, "redisTemplate can not be null!");
+        Assert.hasText(key, "key can not be empty!");
+        if (batchConsumeSize <= 0) {
+            throw new IllegalArgumentException("batchConsumeSize must be positive!");
+        }
+        if (maxWaitTime <= 0 && maxWaitSize <= 0) {
+            throw new IllegalArgumentException("batchConsume must choose time or size consume!");
+        }
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+        this.stampKey = key + ":lastConsumeTime";
+        this.batchConsumeSize = batchConsumeSize;
+        this.maxWaitSize = maxWaitSize;
+        this.maxWaitTime = maxWaitTime;
+        this.pollInterval = maxWaitTime > 0 ? Math.max(10, maxWaitTime / 4) : 50;
+        this.pushQueue = new BatchConsumeBlockingQueue<>(pushCapacity, pushSize, pushSize, pushWaitTime, this::push);
+        this.pushQueue.setDropHandler(this::onDropped);
+        this.pushQueue.setDeadLetterHandler(this::onPushFailed);
+    }
+
+    @Override
+    public void add(T t) {
+        try {
+            this.pushQueue.add(t);
+        } catch (Exception e) {
+            log.error("添加元素失败,{}", t);
+            throw e;
+        }
+    }
+
+    /**
+     * 本地累积已满时的处理策略，默认为ABORT
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.pushQueue.setOverflowPolicy(overflowPolicy);
+    }
+
+    /**
+     * 本地累积已满且为SPILL策略时的备用存储
+     */
+    public void setSpillStore(SpillStore<T> spillStore) {
+        this.pushQueue.setSpillStore(spillStore);
+    }
+
+    /**
+     * 推送失败后的重试次数与首次退避时间，每次重试退避时间翻倍，默认重试3次，首次退避100毫秒
+     */
+    public void setPushRetry(int pushRetries, long pushBackoff, TimeUnit timeUnit) {
+        if (pushRetries < 0) {
+            throw new IllegalArgumentException("pushRetries can not be negative!");
+        }
+        this.pushRetries = pushRetries;
+        this.pushBackoff = Math.max(0, timeUnit.toMillis(pushBackoff));
+    }
+
+    /**
+     * 每个节点的消费线程数，需在启动前设置
+     */
+    public void setConsumerThreads(int consumerThreads) {
+        if (consumerThreads <= 0) {
+            throw new IllegalArgumentException("consumerThreads must be positive!");
+        }
+        this.consumerThreads = consumerThreads;
+    }
+
+    /**
+     * 未达到阈值时的轮询间隔，默认为maxWaitTime的1/4，最少10毫秒
+     */
+    public void setPollInterval(long pollInterval, TimeUnit timeUnit) {
+        this.pollInterval = Math.max(1, timeUnit.toMillis(pollInterval));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(redisListOperationService, "redisListOperationService can not be null!");
+        running = true;
+        for (int i = 0; i < consumerThreads; i++) {
+            Thread consumer = new Thread(this::batchConsume, "redis-batch-queue-" + key + "-" + i);
+            consumers.add(consumer);
+            consumer.start();
+        }
+    }
+
+    /**
+     * 停止取出新批次，等待消费线程消费完已取出的批次，再推送本地累积的元素，
+     * redis中未消费的元素由其他节点或下次启动后消费
+     * 等待超时的消费线程才会被中断，其正在消费的批次可能丢失
+     */
+    @Override
+    public void destroy() throws Exception {
+        running = false;
+        for (Thread consumer : consumers) {
+            LockSupport.unpark(consumer);
+        }
+        long deadline = System.currentTimeMillis() + DESTROY_JOIN_TIME;
+        for (Thread consumer : consumers) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                consumer.join(remaining);
+            }
+            if (consumer.isAlive()) {
+                log.warn("redis batch queue consumer not finished in {}ms, interrupt it,{}", DESTROY_JOIN_TIME, consumer.getName());
+                consumer.interrupt();
+            }
+        }
+        DrainReport report = this.pushQueue.shutdown(10, TimeUnit.SECONDS, 1);
+        if (!report.isCompleted()) {
+            log.warn("redis batch queue destroyed with elements not pushed,{}", report);
+        }
+    }
+
+    /**
+     * 当前redis中等待消费的元素数量
+     */
+    public long size() {
+        Long size = redisTemplate.opsForList().size(key);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * DROP_NEWEST、DROP_OLDEST策略丢弃本地累积的元素时调用
+     */
+    protected void onDropped(T t) {
+    }
+
+    /**
+     * 重试后仍然推送失败的元素调用，默认记录日志；调用后元素不会再推送
+     */
+    protected void onPushFailed(T t, Throwable cause) {
+        log.error("元素推送失败，已丢弃,{}", t, cause);
+    }
+
+    /**
+     * 推送失败时按退避时间重试，重试次数用完或等待时被中断则抛出最后一次的异常，整批交给onPushFailed
+     */
+    private void push(List<T> list) {
+        long backoff = pushBackoff;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                redisListOperationService.pipelinedPushAll(redisTemplate, key, list, DEFAULT_PUSH_SIZE);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= pushRetries) {
+                    throw e;
+                }
+                log.warn("推送{}个元素失败，{}毫秒后第{}次重试", list.size(), backoff, attempt + 1, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(backoff << 1, TimeUnit.SECONDS.toMillis(10));
+            }
+        }
+    }
+
+    private void batchConsume() {
+        while (running) {
+            List<T> list;
+            try {
+                list = redisListOperationService.popBatch(redisTemplate, key, stampKey, batchConsumeSize, maxWaitSize, maxWaitTime);
+            } catch (Exception e) {
+                log.error("取出元素失败", e);
+                list = null;
+            }
+            if (list != null && !list.isEmpty()) {
+                try {
+                    batchConsumeMsg(list);
+                } catch (Exception e) {
+                    log.error("消费失败", e);
+                }
+                // 取到整批说明可能还有积压，立即继续
+                if (list.size() >= batchConsumeSize) {
+                    continue;
+                }
+            }
+            // destroy时unpark立即结束等待，不中断正在消费的线程
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(pollInterval));
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+}
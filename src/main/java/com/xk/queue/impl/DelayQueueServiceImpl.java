@@ -1,6 +1,11 @@
 package com.xk.queue.impl;
 
-import com.xk.queue.DelayQueueService;
+import com.xk.queue.CancellableDelayQueueService;
+import com.xk.queue.delay.DelayEngine;
+import com.xk.queue.delay.DelayJob;
+import com.xk.queue.delay.DelayJobHandle;
+import com.xk.queue.delay.DelayQueueEngine;
+import com.xk.queue.delay.DelayQueueRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -8,19 +13,33 @@ import org.springframework.util.Assert;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * @author xiongkai
  * @version 1.0
  * @date 2021-12-09 14:39
  * 延迟队列任务服务
+ * 默认使用{@link DelayQueueEngine}，可以通过构造方法为每个bean选择调度引擎，如{@link com.xk.queue.delay.TimingWheelEngine}
+ * 分发线程每次取出所有同时到期的任务，按dispatchChunkSize分组交给线程池，同一组的任务在一个线程中依次执行；
+ * 按类型添加的任务在同一次分发中合并为一批，交给注册的批量处理
+ * <p>
+ * 分片模式下有多个独立的调度引擎，每个分片有自己的分发线程，添加的任务按添加线程或任务键选择分片，分片之间没有共享的锁。
+ * 顺序保证：同一分片内任务按执行时间交给线程池（时间轮引擎为同一tick内无序），执行时间相同的任务之间无序；
+ * 不同分片之间没有顺序保证；需要相对有序的任务使用相同的任务键，保证进入同一分片。
+ * 交给线程池之后的执行顺序还取决于线程池，只有单线程线程池且dispatchChunkSize足够大时执行顺序与交付顺序一致
  */
 @Service
-public class DelayQueueServiceImpl implements DelayQueueService {
+public class DelayQueueServiceImpl implements CancellableDelayQueueService {
 
     private static final Logger log = LoggerFactory.getLogger(DelayQueueServiceImpl.class);
 
@@ -30,95 +49,401 @@ public class DelayQueueServiceImpl implements DelayQueueService {
     private static final long MAX_CAPACITY = 100000;
 
     /**
-     * 容器销毁时，队列继续消费的最长等待时间
+     * 容器销毁时检查队列是否已分发完毕的间隔，单位毫秒
      */
-    private static final long MAX_DESTROY_WAIT_TIME = 10 * 60L;
+    private static final long DESTROY_CHECK_INTERVAL = 100;
+
+    /**
+     * 每次分发最多取出的到期任务数量
+     */
+    private static final int MAX_DISPATCH_SIZE = 4096;
 
     @Resource
     private ExecutorService delayExecutorService;
 
-    private final DelayQueue<DelayJob> delayQueue = new DelayQueue<>();
+    /**
+     * 调度引擎分片
+     */
+    private final DelayEngine[] delayEngines;
+
+    private final List<Thread> dispatchers = new ArrayList<>();
+
+    /**
+     * 任务类型的批量处理
+     */
+    private final Map<String, Consumer<List<Object>>> batchHandlers = new ConcurrentHashMap<>();
+
+    /**
+     * 每组交给线程池的任务数量
+     */
+    private volatile int dispatchChunkSize = 32;
+
+    /**
+     * 容器销毁时，队列继续分发的最长等待时间，单位毫秒
+     */
+    private volatile long shutdownTimeout = TimeUnit.SECONDS.toMillis(10);
+
+    private volatile DelayQueueRecorder recorder;
+
+    public DelayQueueServiceImpl() {
+        this(new DelayQueueEngine());
+    }
+
+    public DelayQueueServiceImpl(DelayEngine delayEngine) {
+        Assert.notNull(delayEngine, "delayEngine can not be null!");
+        this.delayEngines = new DelayEngine[]{delayEngine};
+    }
 
+    /**
+     * 分片模式
+     * @param shards 分片数量，通常不超过CPU核数
+     * @param engineFactory 为每个分片创建调度引擎
+     */
+    public DelayQueueServiceImpl(int shards, @Nonnull Supplier<DelayEngine> engineFactory) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive!");
+        }
+        Assert.notNull(engineFactory, "engineFactory can not be null!");
+        this.delayEngines = new DelayEngine[shards];
+        for (int i = 0; i < shards; i++) {
+            DelayEngine delayEngine = engineFactory.get();
+            Assert.notNull(delayEngine, "delayEngine can not be null!");
+            this.delayEngines[i] = delayEngine;
+        }
+    }
+
+    /**
+     * 按添加线程选择分片
+     */
     @Override
     public boolean add(@Nonnull Runnable runnable, long delayTime, @Nonnull TimeUnit timeUnit) {
-        boolean result = delayQueue.add(new DelayJob(runnable, delayTime, timeUnit));
-        if(delayQueue.size() > MAX_CAPACITY){
-            log.warn("DelayQueueService size is too large! please check! current size={}, max size={}", delayQueue.size(), MAX_CAPACITY);
+        DelayEngine delayEngine = shard();
+        delayEngine.add(new DelayJob(runnable, delayTime, timeUnit));
+        afterAdd(delayEngine);
+        return true;
+    }
+
+    /**
+     * 延迟队列添加任务，按任务键选择分片，相同任务键的任务进入同一分片
+     * @param key 任务键
+     * @param runnable 任务
+     * @param delayTime 延迟执行时间
+     * @param timeUnit 时间单位
+     * @return 加入任务队列是否成功
+     */
+    public boolean addByKey(@Nonnull Object key, @Nonnull Runnable runnable, long delayTime, @Nonnull TimeUnit timeUnit) {
+        DelayEngine delayEngine = shard(key);
+        delayEngine.add(new DelayJob(runnable, delayTime, timeUnit));
+        afterAdd(delayEngine);
+        return true;
+    }
+
+    /**
+     * 注册任务类型的批量处理，同一分片同一次分发中到期的同类型任务合并为一批，最多4096个
+     * @param type 任务类型
+     * @param handler 批量处理，参数为载荷
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void registerBatchHandler(@Nonnull String type, @Nonnull Consumer<List<T>> handler) {
+        Assert.hasText(type, "type can not be empty!");
+        Assert.notNull(handler, "handler can not be null!");
+        if (batchHandlers.putIfAbsent(type, (Consumer<List<Object>>) (Consumer<?>) handler) != null) {
+            throw new IllegalStateException("batch handler already registered: " + type);
+        }
+    }
+
+    /**
+     * 延迟队列添加按类型批量处理的任务
+     * @param type 已注册批量处理的任务类型
+     * @param payload 载荷
+     * @param delayTime 延迟执行时间
+     * @param timeUnit 时间单位
+     * @return 加入任务队列是否成功
+     */
+    public <T> boolean add(@Nonnull String type, T payload, long delayTime, @Nonnull TimeUnit timeUnit) {
+        if (!batchHandlers.containsKey(type)) {
+            throw new IllegalArgumentException("batch handler not registered: " + type);
+        }
+        DelayEngine delayEngine = shard();
+        delayEngine.add(new DelayJob(type, payload, delayTime, timeUnit));
+        afterAdd(delayEngine);
+        return true;
+    }
+
+    /**
+     * 每组交给线程池的任务数量，默认32，设置为1时每个任务单独提交
+     */
+    public void setDispatchChunkSize(int dispatchChunkSize) {
+        if (dispatchChunkSize <= 0) {
+            throw new IllegalArgumentException("dispatchChunkSize must be positive!");
         }
-        return result;
+        this.dispatchChunkSize = dispatchChunkSize;
+    }
+
+    /**
+     * 容器销毁时等待到期任务分发的最长时间，默认10秒，超时后未到期的任务不再执行
+     */
+    public void setShutdownTimeout(long shutdownTimeout, TimeUnit timeUnit) {
+        this.shutdownTimeout = Math.max(0, timeUnit.toMillis(shutdownTimeout));
+    }
+
+    public void setRecorder(DelayQueueRecorder recorder) {
+        this.recorder = recorder;
     }
 
     /**
-     * 优雅关闭，容器销毁时，任务队列继续消费。
-     * 第一次线程休息10s，接着20s，30s，直至消费完毕或者休息时间超过阈值
+     * 取消只标记任务，由调度引擎延迟删除，不会被执行；按添加线程选择分片，重新设置延迟时留在原分片
+     */
+    @Override
+    public DelayJobHandle schedule(@Nonnull Runnable runnable, long delayTime, @Nonnull TimeUnit timeUnit) {
+        DelayEngine delayEngine = shard();
+        DelayJobHandle handle = new DelayJobHandle(delayEngine, runnable, delayTime, timeUnit);
+        afterAdd(delayEngine);
+        return handle;
+    }
+
+    /**
+     * 按任务键选择分片，返回可以取消或重新设置延迟时间的句柄
+     */
+    public DelayJobHandle scheduleByKey(@Nonnull Object key, @Nonnull Runnable runnable, long delayTime, @Nonnull TimeUnit timeUnit) {
+        DelayEngine delayEngine = shard(key);
+        DelayJobHandle handle = new DelayJobHandle(delayEngine, runnable, delayTime, timeUnit);
+        afterAdd(delayEngine);
+        return handle;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (DelayEngine delayEngine : delayEngines) {
+            size += delayEngine.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int tombstoneSize() {
+        int size = 0;
+        for (DelayEngine delayEngine : delayEngines) {
+            size += delayEngine.tombstoneSize();
+        }
+        return size;
+    }
+
+    /**
+     * 分片数量
+     */
+    public int getShards() {
+        return delayEngines.length;
+    }
+
+    /**
+     * 按执行时间统计等待执行的任务数量，遍历所有分片，只用于统计
+     * @param dueBounds 距执行时间的上界，单位毫秒，递增
+     * @return 长度为dueBounds.length + 1，最后一个为超过最大上界的任务数量
+     */
+    public int[] countPendingByDue(long[] dueBounds) {
+        int[] counts = new int[dueBounds.length + 1];
+        long now = System.nanoTime();
+        for (DelayEngine delayEngine : delayEngines) {
+            delayEngine.forEachPending(job -> {
+                long due = TimeUnit.NANOSECONDS.toMillis(job.getDeadline() - now);
+                int i = 0;
+                while (i < dueBounds.length && due > dueBounds[i]) {
+                    i++;
+                }
+                counts[i]++;
+            });
+        }
+        return counts;
+    }
+
+    /**
+     * 只检查当前分片，容积按分片平均分配，避免每次添加访问所有分片
+     */
+    private void afterAdd(DelayEngine delayEngine) {
+        DelayQueueRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onAdd();
+        }
+        int size = delayEngine.size();
+        long maxSize = MAX_CAPACITY / delayEngines.length;
+        if(size > maxSize){
+            log.warn("DelayQueueService size is too large! please check! current shard size={}, max shard size={}", size, maxSize);
+        }
+    }
+
+    /**
+     * 同一线程总是进入同一分片，添加线程之间不竞争同一把锁
+     */
+    private DelayEngine shard() {
+        if (delayEngines.length == 1) {
+            return delayEngines[0];
+        }
+        return delayEngines[(int) (Thread.currentThread().getId() % delayEngines.length)];
+    }
+
+    private DelayEngine shard(Object key) {
+        Assert.notNull(key, "key can not be null!");
+        if (delayEngines.length == 1) {
+            return delayEngines[0];
+        }
+        int h = key.hashCode();
+        return delayEngines[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % delayEngines.length];
+    }
+
+    /**
+     * 优雅关闭，容器销毁时，任务队列继续分发，直至分发完毕或超过shutdownTimeout，之后停止分发线程
      */
     @Override
     public void destroy() throws Exception {
-        int t = 1;
-        int totalSleepTime = 0;
-        while(!delayQueue.isEmpty()){
-            int sleepTime = 10 * t++;
-            TimeUnit.SECONDS.sleep(sleepTime);
-            totalSleepTime += sleepTime;
-            if(totalSleepTime > MAX_DESTROY_WAIT_TIME){
-                log.warn("delayQueue wait too long, shut down! left task size={}", delayQueue.size());
-                break;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeout);
+        try {
+            long remaining;
+            while (size() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(DESTROY_CHECK_INTERVAL)));
+            }
+            if (size() > 0) {
+                log.warn("delayQueue wait too long, shut down! left task size={}", size());
+            }
+        } finally {
+            for (Thread dispatcher : dispatchers) {
+                dispatcher.interrupt();
             }
         }
     }
 
     /**
-     * 容器启动时，任务队列就开始消费。
-     * 只有在队列元素的时间到期后，元素才可以被取出
-     * @see java.util.concurrent.DelayQueue#take()
-     * @see DelayJob#getDelay(TimeUnit)
+     * 容器启动时，任务队列就开始消费，每个分片一个分发线程。
+     * 只有在队列元素的时间到期后，元素才可以被取出，取出一个后不等待地取出其余已到期的元素
+     * @see DelayEngine#take()
+     * @see DelayEngine#drainExpired(java.util.Collection, int)
      */
     @Override
     public void afterPropertiesSet() {
-        delayExecutorService.execute(() -> {
-            do{
-                try {
-                    DelayJob delayJob = delayQueue.take();
-                    delayExecutorService.execute(delayJob.getRunnable());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }while (!Thread.currentThread().isInterrupted());
-        });
+        for (int i = 0; i < delayEngines.length; i++) {
+            DelayEngine delayEngine = delayEngines[i];
+            Thread dispatcher = new Thread(() -> dispatchLoop(delayEngine), "delay-queue-dispatch-" + i);
+            dispatcher.setDaemon(true);
+            dispatchers.add(dispatcher);
+            dispatcher.start();
+        }
     }
 
-    static class DelayJob implements Delayed {
+    private void dispatchLoop(DelayEngine delayEngine) {
+        List<DelayJob> expired = new ArrayList<>();
+        do{
+            try {
+                expired.add(delayEngine.take());
+                delayEngine.drainExpired(expired, MAX_DISPATCH_SIZE - 1);
+                dispatch(expired);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // 分发线程不能退出，否则该分片之后的任务都不会执行
+                log.error("延迟任务分发失败，本次取出{}个任务，未交给线程池的任务不再执行", expired.size(), e);
+            } finally {
+                expired.clear();
+            }
+        }while (!Thread.currentThread().isInterrupted());
+    }
 
-        /**
-         * 任务
-         */
-        private final Runnable runnable;
+    private void dispatch(List<DelayJob> expired) {
+        DelayQueueRecorder recorder = this.recorder;
+        long now = System.nanoTime();
+        long lag = 0;
+        int chunkSize = dispatchChunkSize;
+        List<Runnable> chunk = new ArrayList<>(Math.min(chunkSize, expired.size()));
+        Map<String, List<Object>> batches = null;
+        for (DelayJob job : expired) {
+            long lateness = Math.max(now - job.getDeadline(), 0);
+            lag = Math.max(lag, lateness);
+            if (recorder != null) {
+                recorder.onLateness(lateness);
+            }
+            if (job.getType() != null) {
+                if (batches == null) {
+                    batches = new HashMap<>();
+                }
+                batches.computeIfAbsent(job.getType(), k -> new ArrayList<>()).add(job.getPayload());
+                continue;
+            }
+            chunk.add(job.getRunnable());
+            if (chunk.size() >= chunkSize) {
+                submit(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            submit(chunk);
+        }
+        if (batches != null) {
+            batches.forEach((type, payloads) -> submit(() -> runBatch(type, payloads), payloads.size()));
+        }
+        if (recorder != null) {
+            recorder.onDispatch(expired.size(), lag);
+        }
+    }
 
-        /**
-         * 实际执行时间
-         */
-        private final long executeTime;
+    private void submit(List<Runnable> chunk) {
+        if (chunk.size() == 1) {
+            Runnable runnable = chunk.get(0);
+            submit(() -> run(runnable), 1);
+        } else {
+            submit(() -> runChunk(chunk), chunk.size());
+        }
+    }
+
+    /**
+     * 线程池拒绝时在分发线程上执行，不丢弃任务
+     */
+    private void submit(Runnable runnable, int jobs) {
+        try {
+            delayExecutorService.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            log.warn("delayExecutorService rejected, run on dispatcher thread");
+            DelayQueueRecorder recorder = this.recorder;
+            if (recorder != null) {
+                recorder.onRejected(jobs);
+            }
+            runnable.run();
+        }
+    }
 
-        public DelayJob(@Nonnull Runnable runnable, long delayTime, @Nonnull TimeUnit timeUnit) {
-            Assert.notNull(runnable, "runnable can not be null!");
-            Assert.notNull(timeUnit, "timeunit can not be null!");
-            this.runnable = runnable;
-            this.executeTime = System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(delayTime, timeUnit);
+    private void runChunk(List<Runnable> chunk) {
+        for (Runnable runnable : chunk) {
+            run(runnable);
         }
+    }
 
-        @Override
-        public long getDelay(@Nonnull TimeUnit unit) {
-            return unit.convert(executeTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    private void run(Runnable runnable) {
+        long start = System.nanoTime();
+        boolean success = true;
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            success = false;
+            log.error("延迟任务执行失败", e);
         }
+        afterRun(start, success);
+    }
 
-        @Override
-        public int compareTo(@Nonnull Delayed delayed) {
-            DelayJob delayJob = (DelayJob) delayed;
-            return (int) (this.executeTime - delayJob.executeTime);
+    private void runBatch(String type, List<Object> payloads) {
+        long start = System.nanoTime();
+        boolean success = true;
+        try {
+            batchHandlers.get(type).accept(payloads);
+        } catch (Exception e) {
+            success = false;
+            log.error("延迟任务批量执行失败,type={}, size={}", type, payloads.size(), e);
         }
+        afterRun(start, success);
+    }
 
-        public Runnable getRunnable(){
-            return this.runnable;
+    private void afterRun(long start, boolean success) {
+        DelayQueueRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.onRun(System.nanoTime() - start, success);
         }
     }
 }
@@ -0,0 +1,393 @@
+package com.xk.queue.impl;
+
+import com.xk.pipeline.redis.ClaimedMembers;
+import com.xk.pipeline.redis.RedisZSetOperationService;
+import com.xk.queue.RedisDelayQueueService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 21:40
+ * 分布式延迟队列服务，任务保存在redis zset中，分数为执行时间，节点宕机或重启不丢失任务
+ * 任务由注册的任务类型与序列化后的载荷组成，所有节点需要注册相同的任务类型；相同类型与载荷的任务只保留一个
+ * 执行时间、领取与处理超时都按redis服务端时间计算，不受各节点时钟偏差影响
+ * 每个节点的领取线程通过lua脚本原子地领取一批到期任务，移入处理中集合后交给线程池执行，执行成功后确认删除；
+ * 节点宕机或超过处理超时时间未确认的任务会被重新领取，至少执行一次，任务需要幂等；
+ * 执行失败的任务按退避时间放回待处理集合，达到最多执行次数后交给onDeadLetter，不再领取
+ * 待处理集合、处理中集合与失败次数的键使用相同的hash tag，在redis集群中位于同一个槽
+ * 关闭时只停止领取，已领取未确认的任务由其他节点或下次启动后重新领取
+ */
+public class RedisDelayQueueServiceImpl implements RedisDelayQueueService {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisDelayQueueServiceImpl.class);
+
+    /**
+     * 任务类型与载荷之间的分隔符
+     */
+    private static final byte SEPARATOR = ':';
+
+    private static final long DESTROY_JOIN_TIME = 2000;
+
+    /**
+     * 失败重试的最大退避时间，单位毫秒
+     */
+    private static final long MAX_RETRY_BACKOFF = TimeUnit.MINUTES.toMillis(10);
+
+    @Resource
+    private RedisZSetOperationService redisZSetOperationService;
+
+    @Resource
+    private ExecutorService delayExecutorService;
+
+    private final RedisTemplate<String, ?> redisTemplate;
+
+    /**
+     * 待处理集合的键
+     */
+    private final String key;
+
+    /**
+     * 处理中集合的键
+     */
+    private final String inflightKey;
+
+    /**
+     * 失败次数的hash键
+     */
+    private final String attemptsKey;
+
+    private final Map<String, JobType<?>> jobTypes = new ConcurrentHashMap<>();
+
+    /**
+     * 每个节点的领取线程数
+     */
+    private volatile int consumerThreads = 1;
+
+    /**
+     * 没有到期任务时的轮询间隔，单位毫秒，即调度精度
+     */
+    private volatile long pollInterval = 100;
+
+    /**
+     * 每次最多领取数量
+     */
+    private volatile int batchSize = 100;
+
+    /**
+     * 处理超时时间，单位毫秒，超过后未确认的任务重新领取
+     */
+    private volatile long visibilityTimeout = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 最多执行次数，包括第一次执行
+     */
+    private volatile int maxAttempts = 5;
+
+    /**
+     * 第一次失败后的退避时间，单位毫秒，之后每次失败翻倍
+     */
+    private volatile long retryBackoff = TimeUnit.SECONDS.toMillis(1);
+
+    private final List<Thread> consumers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    /**
+     * @param redisTemplate redis操作模板，只使用其连接，任务按注册的序列化方式保存
+     * @param key 所有节点相同，待处理集合为{key}，处理中集合为{key}:inflight，失败次数为{key}:attempts
+     */
+    public RedisDelayQueueServiceImpl(RedisTemplate<String, ?> redisTemplate, String key) {
+        Assert.notNull(redisTemplate, "redisTemplate can not be null!");
+        Assert.hasText(key, "key can not be empty!");
+        this.redisTemplate = redisTemplate;
+        this.key = "{" + key + "}";
+        this.inflightKey = this.key + ":inflight";
+        this.attemptsKey = this.key + ":attempts";
+    }
+
+    @Override
+    public <T> void registerJobType(String type, RedisSerializer<T> serializer, Consumer<T> handler) {
+        Assert.hasText(type, "type can not be empty!");
+        Assert.isTrue(type.indexOf(SEPARATOR) < 0, "type can not contain ':'!");
+        Assert.notNull(serializer, "serializer can not be null!");
+        Assert.notNull(handler, "handler can not be null!");
+        if (jobTypes.putIfAbsent(type, new JobType<>(serializer, handler)) != null) {
+            throw new IllegalStateException("job type already registered: " + type);
+        }
+    }
+
+    @Override
+    public void registerJobType(String type, Consumer<String> handler) {
+        registerJobType(type, RedisSerializer.string(), handler);
+    }
+
+    @Override
+    public <T> boolean add(String type, T payload, long delayTime, @Nonnull TimeUnit timeUnit) {
+        return redisZSetOperationService.addDelayed(redisTemplate, key, member(type, payload), timeUnit.toMillis(delayTime));
+    }
+
+    @Override
+    public <T> boolean cancel(String type, T payload) {
+        byte[] member = member(type, payload);
+        Long removed = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            Long count = connection.zRem(key.getBytes(), member);
+            connection.hDel(attemptsKey.getBytes(), member);
+            return count;
+        });
+        return removed != null && removed > 0;
+    }
+
+    /**
+     * 所有节点待处理与处理中的任务数量
+     */
+    @Override
+    public int size() {
+        Long size = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            Long pending = connection.zCard(key.getBytes());
+            Long inflight = connection.zCard(inflightKey.getBytes());
+            return (pending == null ? 0 : pending) + (inflight == null ? 0 : inflight);
+        });
+        return size == null ? 0 : (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 每个节点的领取线程数，需在启动前设置
+     */
+    public void setConsumerThreads(int consumerThreads) {
+        if (consumerThreads <= 0) {
+            throw new IllegalArgumentException("consumerThreads must be positive!");
+        }
+        this.consumerThreads = consumerThreads;
+    }
+
+    /**
+     * 没有到期任务时的轮询间隔，默认100毫秒
+     */
+    public void setPollInterval(long pollInterval, TimeUnit timeUnit) {
+        this.pollInterval = Math.max(1, timeUnit.toMillis(pollInterval));
+    }
+
+    /**
+     * 每次最多领取数量，默认100
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive!");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 处理超时时间，默认1分钟，需大于任务的执行时间加上在线程池中的排队时间
+     */
+    public void setVisibilityTimeout(long visibilityTimeout, TimeUnit timeUnit) {
+        if (visibilityTimeout <= 0) {
+            throw new IllegalArgumentException("visibilityTimeout must be positive!");
+        }
+        this.visibilityTimeout = timeUnit.toMillis(visibilityTimeout);
+    }
+
+    /**
+     * 执行失败后的重试，默认最多执行5次，第一次失败后退避1秒，之后每次失败翻倍，最多10分钟
+     * @param maxAttempts 最多执行次数，包括第一次执行，为1时失败后直接交给onDeadLetter
+     * @param retryBackoff 第一次失败后的退避时间
+     */
+    public void setRetry(int maxAttempts, long retryBackoff, TimeUnit timeUnit) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive!");
+        }
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = Math.max(0, timeUnit.toMillis(retryBackoff));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(redisZSetOperationService, "redisZSetOperationService can not be null!");
+        Assert.notNull(delayExecutorService, "delayExecutorService can not be null!");
+        running = true;
+        for (int i = 0; i < consumerThreads; i++) {
+            Thread consumer = new Thread(this::claim, "redis-delay-queue-" + key + "-" + i);
+            consumer.setDaemon(true);
+            consumers.add(consumer);
+            consumer.start();
+        }
+    }
+
+    /**
+     * 只停止领取，不等待redis中的任务
+     */
+    @Override
+    public void destroy() throws Exception {
+        running = false;
+        for (Thread consumer : consumers) {
+            consumer.interrupt();
+        }
+        for (Thread consumer : consumers) {
+            consumer.join(DESTROY_JOIN_TIME);
+        }
+    }
+
+    private void claim() {
+        while (running) {
+            int size = batchSize;
+            ClaimedMembers claimed;
+            try {
+                claimed = redisZSetOperationService.claimDue(redisTemplate, key, inflightKey, visibilityTimeout, size);
+            } catch (Exception e) {
+                log.error("领取延迟任务失败", e);
+                claimed = null;
+            }
+            if (claimed != null && !claimed.isEmpty()) {
+                List<byte[]> members = claimed.getMembers();
+                dispatch(members, claimed.getDeadline());
+                // 领取到整批说明可能还有到期任务，立即继续
+                if (members.size() >= size) {
+                    continue;
+                }
+            }
+            try {
+                Thread.sleep(pollInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void dispatch(List<byte[]> members, long deadline) {
+        for (int i = 0; i < members.size(); i++) {
+            byte[] member = members.get(i);
+            try {
+                delayExecutorService.execute(() -> execute(member, deadline));
+            } catch (RejectedExecutionException e) {
+                log.warn("线程池已满，{}个延迟任务在处理超时后重新领取", members.size() - i);
+                return;
+            }
+        }
+    }
+
+    private void execute(byte[] member, long deadline) {
+        int index = indexOfSeparator(member);
+        if (index < 0) {
+            log.warn("无法识别的延迟任务,{}", new String(member, StandardCharsets.UTF_8));
+            return;
+        }
+        String type = new String(member, 0, index, StandardCharsets.UTF_8);
+        JobType<?> jobType = jobTypes.get(type);
+        if (jobType == null) {
+            // 留在处理中集合，超时后由注册了该类型的节点重新领取
+            log.warn("未注册的延迟任务类型,{}", type);
+            return;
+        }
+        byte[] payload = new byte[member.length - index - 1];
+        System.arraycopy(member, index + 1, payload, 0, payload.length);
+        try {
+            jobType.handle(payload);
+        } catch (Exception e) {
+            retry(member, deadline, type, payload, e);
+            return;
+        }
+        try {
+            int acked = redisZSetOperationService.ack(redisTemplate, inflightKey, attemptsKey, member, deadline);
+            if (acked == RedisZSetOperationService.ACK_LATE) {
+                log.warn("延迟任务超过处理超时时间后才完成，可能已被重复执行，请调大visibilityTimeout,{}", type);
+            } else if (acked == RedisZSetOperationService.ACK_NOT_HELD) {
+                log.warn("延迟任务处理超时已被重新领取，可能重复执行,{}", type);
+            }
+        } catch (Exception e) {
+            log.error("延迟任务确认失败，处理超时后重新执行,{}", type, e);
+        }
+    }
+
+    private void retry(byte[] member, long deadline, String type, byte[] payload, Exception cause) {
+        int attempts;
+        try {
+            attempts = redisZSetOperationService.nack(redisTemplate, key, inflightKey, attemptsKey, member, deadline,
+                    maxAttempts, retryBackoff, MAX_RETRY_BACKOFF);
+        } catch (Exception e) {
+            log.error("延迟任务执行失败，记录失败次数失败，处理超时后重新领取,{}", type, e);
+            return;
+        }
+        if (attempts == RedisZSetOperationService.NACK_EXHAUSTED) {
+            onDeadLetter(type, payload, cause);
+        } else if (attempts == RedisZSetOperationService.ACK_NOT_HELD) {
+            log.warn("延迟任务执行失败，处理超时已被重新领取,{}", type, cause);
+        } else {
+            log.warn("延迟任务第{}次执行失败，退避后重新领取,{}", attempts, type, cause);
+        }
+    }
+
+    /**
+     * 达到最多执行次数仍然失败的任务调用，任务已从redis删除；默认记录日志
+     * @param type 任务类型
+     * @param payload 序列化后的载荷
+     * @param cause 最后一次执行失败的原因
+     */
+    protected void onDeadLetter(String type, byte[] payload, Throwable cause) {
+        log.error("延迟任务达到最多执行次数，已丢弃,{},{}", type, new String(payload, StandardCharsets.UTF_8), cause);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> byte[] member(String type, T payload) {
+        JobType<T> jobType = (JobType<T>) jobTypes.get(type);
+        if (jobType == null) {
+            throw new IllegalArgumentException("job type not registered: " + type);
+        }
+        byte[] rawType = type.getBytes(StandardCharsets.UTF_8);
+        byte[] rawPayload = jobType.serializer.serialize(payload);
+        if (rawPayload == null) {
+            rawPayload = new byte[0];
+        }
+        byte[] member = new byte[rawType.length + 1 + rawPayload.length];
+        System.arraycopy(rawType, 0, member, 0, rawType.length);
+        member[rawType.length] = SEPARATOR;
+        System.arraycopy(rawPayload, 0, member, rawType.length + 1, rawPayload.length);
+        return member;
+    }
+
+    private static int indexOfSeparator(byte[] member) {
+        for (int i = 0; i < member.length; i++) {
+            if (member[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 任务类型：载荷的序列化方式与任务执行
+     */
+    private static final class JobType<T> {
+
+        private final RedisSerializer<T> serializer;
+
+        private final Consumer<T> handler;
+
+        private JobType(RedisSerializer<T> serializer, Consumer<T> handler) {
+            this.serializer = serializer;
+            this.handler = handler;
+        }
+
+        private void handle(byte[] payload) {
+            handler.accept(serializer.deserialize(payload));
+        }
+    }
+}
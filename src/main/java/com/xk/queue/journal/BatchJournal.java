@@ -0,0 +1,527 @@
+package com.xk.queue.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 15:20
+ * 批量消费队列的持久化日志
+ * 元素按入队顺序追加到分段的内存映射文件，每个元素有连续递增的序号；消费成功后确认序号，
+ * 连续确认的最大序号作为检查点。刷盘由后台线程按固定间隔统一完成，添加元素只做内存拷贝。
+ * 启动时重放检查点之后未确认的元素，检查点之前的分段会被回收复用。
+ * 消费失败的批次由队列交给死信处理后同样确认，检查点持续前进，已确认的分段都能回收；
+ * 进程退出时未确认的元素在重启时重放，其中可能包含已消费但未刷盘确认的元素，消费者需要能够接受重复消费
+ * 追加在同一把锁内完成以保证序号与入队顺序一致，开启日志后队列的无锁入队也按这把锁串行
+ * 记录格式：长度(4) + 序号(8) + crc32(4) + 内容
+ */
+public class BatchJournal<T> implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String FREE_SUFFIX = ".free";
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    /**
+     * 默认分段大小64M
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 默认刷盘间隔，单位毫秒
+     */
+    private static final long DEFAULT_FLUSH_INTERVAL = 10;
+
+    /**
+     * 最多保留的空闲分段数量，超过则删除
+     */
+    private static final int MAX_FREE_SEGMENTS = 2;
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final long flushIntervalNanos;
+
+    private final JournalSerializer<T> serializer;
+
+    /**
+     * 追加锁
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /**
+     * 追加时计算校验和，追加锁保护
+     */
+    private final CRC32 appendCrc = new CRC32();
+
+    /**
+     * 未回收的分段，key为起始序号
+     */
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * 已写满、等待刷盘的分段
+     */
+    private final ConcurrentLinkedQueue<Segment> rolledSegments = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 空闲分段文件
+     */
+    private final Deque<File> freeFiles = new ArrayDeque<>();
+
+    /**
+     * 当前写入的分段
+     */
+    private volatile Segment active;
+
+    /**
+     * 下一个写入的序号，追加锁保护
+     */
+    private long nextSeq;
+
+    /**
+     * 乱序确认的序号区间，key为起始序号，value为结束序号（不含）
+     */
+    private final TreeMap<Long, Long> ackedRanges = new TreeMap<>();
+
+    /**
+     * 第一个未确认的序号
+     */
+    private volatile long ackedSeq;
+
+    /**
+     * 已刷盘的检查点
+     */
+    private long persistedAckedSeq;
+
+    private final RandomAccessFile checkpointFile;
+
+    private final MappedByteBuffer checkpoint;
+
+    private final Thread flushThread;
+
+    private volatile boolean closed;
+
+    public BatchJournal(File directory, JournalSerializer<T> serializer) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_INTERVAL, serializer);
+    }
+
+    /**
+     * @param directory 日志目录，每个队列独占
+     * @param segmentSize 分段大小，单位字节
+     * @param flushInterval 刷盘间隔，单位毫秒
+     * @param serializer 元素序列化方式
+     */
+    public BatchJournal(File directory, int segmentSize, long flushInterval, JournalSerializer<T> serializer) throws IOException {
+        Assert.notNull(directory, "directory can not be null!");
+        Assert.notNull(serializer, "serializer can not be null!");
+        Assert.isTrue(segmentSize > RECORD_HEADER_SIZE, "segmentSize is too small!");
+        Assert.isTrue(flushInterval > 0, "flushInterval must be positive!");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create journal directory: " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.serializer = serializer;
+        this.checkpointFile = new RandomAccessFile(new File(directory, CHECKPOINT_FILE), "rw");
+        this.checkpoint = checkpointFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        recover();
+        this.flushThread = new Thread(this::flushLoop, "batch-journal-flush-" + directory.getName());
+        this.flushThread.setDaemon(true);
+        this.flushThread.start();
+    }
+
+    /**
+     * 序列化元素，可在锁外调用
+     */
+    public byte[] serialize(T t) {
+        byte[] payload = serializer.serialize(t);
+        if (payload.length + RECORD_HEADER_SIZE > segmentSize) {
+            throw new IllegalArgumentException("journal record is larger than segment! size=" + payload.length);
+        }
+        return payload;
+    }
+
+    /**
+     * 执行入队动作，成功后追加记录；两者在同一把锁内完成，保证日志顺序与入队顺序一致，
+     * 锁内只做入队与内存拷贝，序列化在锁外完成
+     * @param payload 序列化后的元素
+     * @param enqueue 入队动作，返回false则不追加
+     * @return 入队动作的结果
+     */
+    public boolean appendIf(byte[] payload, BooleanSupplier enqueue) {
+        final ReentrantLock lock = this.appendLock;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("journal is closed! directory=" + directory);
+            }
+            Segment segment = this.active;
+            int recordSize = payload.length + RECORD_HEADER_SIZE;
+            if (segment.writePosition + recordSize > segmentSize) {
+                // 先切换分段再入队，切换失败时元素不会进入队列
+                segment = roll();
+            }
+            if (!enqueue.getAsBoolean()) {
+                return false;
+            }
+            CRC32 crc = this.appendCrc;
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            ByteBuffer buffer = segment.buffer;
+            int position = segment.writePosition;
+            buffer.putLong(position + 4, nextSeq);
+            buffer.putInt(position + 12, (int) crc.getValue());
+            ByteBuffer target = buffer.duplicate();
+            target.position(position + RECORD_HEADER_SIZE);
+            target.put(payload);
+            buffer.putInt(position, payload.length);
+            segment.writePosition = position + recordSize;
+            segment.endSeq = ++nextSeq;
+            segment.dirty = true;
+            return true;
+        } catch (IOException e) {
+            throw new IllegalStateException("journal roll segment failed!", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 确认一段连续序号已消费，可乱序确认
+     * @param startSeq 起始序号
+     * @param count 数量
+     */
+    public void ack(long startSeq, int count) {
+        if (count <= 0) {
+            return;
+        }
+        synchronized (ackedRanges) {
+            long acked = this.ackedSeq;
+            long end = startSeq + count;
+            if (startSeq > acked) {
+                // 与相邻区间合并，检查点停在失败批次之前时区间数量不会持续增长
+                long start = startSeq;
+                Map.Entry<Long, Long> previous = ackedRanges.floorEntry(startSeq);
+                if (previous != null && previous.getValue() == startSeq) {
+                    start = previous.getKey();
+                }
+                Long next = ackedRanges.remove(end);
+                ackedRanges.put(start, next != null ? next : end);
+                return;
+            }
+            if (end <= acked) {
+                return;
+            }
+            Long next;
+            while ((next = ackedRanges.remove(end)) != null) {
+                end = next;
+            }
+            this.ackedSeq = end;
+        }
+    }
+
+    /**
+     * 第一个未确认的序号
+     */
+    public long getAckedSeq() {
+        return ackedSeq;
+    }
+
+    /**
+     * 乱序确认、尚未连续的序号区间数量
+     */
+    public int getPendingAckRanges() {
+        synchronized (ackedRanges) {
+            return ackedRanges.size();
+        }
+    }
+
+    /**
+     * 重放检查点之后未确认的元素
+     * @param consumer 接收元素
+     * @return 重放数量
+     */
+    public int replay(Consumer<T> consumer) {
+        long from = this.ackedSeq;
+        int replayed = 0;
+        for (Segment segment : segments.values()) {
+            if (segment.endSeq <= from) {
+                continue;
+            }
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int position = 0;
+            long seq = segment.baseSeq;
+            while (seq < segment.endSeq) {
+                int length = buffer.getInt(position);
+                if (seq >= from) {
+                    byte[] payload = new byte[length];
+                    buffer.position(position + RECORD_HEADER_SIZE);
+                    buffer.get(payload);
+                    consumer.accept(serializer.deserialize(payload));
+                    replayed++;
+                }
+                position += length + RECORD_HEADER_SIZE;
+                seq++;
+            }
+        }
+        return replayed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(flushThread);
+        try {
+            flushThread.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) * 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            checkpointFile.close();
+        } catch (IOException e) {
+            log.warn("close journal checkpoint failed, directory={}", directory, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        long checkpointSeq = checkpoint.getLong(0);
+        if (checkpointSeq != ~checkpoint.getLong(8)) {
+            // 从未写入或写入不完整，从头开始
+            checkpointSeq = 0;
+        }
+        this.ackedSeq = checkpointSeq;
+        this.persistedAckedSeq = checkpointSeq;
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(FREE_SUFFIX)) {
+                recycleFile(file);
+            } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                long baseSeq = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                Segment segment = new Segment(baseSeq, file, map(file));
+                scan(segment);
+                segments.put(baseSeq, segment);
+            }
+        }
+
+        Map.Entry<Long, Segment> last = segments.lastEntry();
+        if (last == null || last.getValue().endSeq < checkpointSeq) {
+            this.nextSeq = checkpointSeq;
+            this.active = newSegment(checkpointSeq);
+        } else {
+            this.active = last.getValue();
+            this.nextSeq = active.endSeq;
+        }
+        recycle(checkpointSeq);
+        log.info("journal recovered, directory={}, ackedSeq={}, nextSeq={}", directory, checkpointSeq, nextSeq);
+    }
+
+    /**
+     * 扫描分段内的有效记录，遇到长度、序号或校验和不符即视为结尾
+     */
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        ByteBuffer content = segment.buffer.duplicate();
+        CRC32 crc = new CRC32();
+        int position = 0;
+        long seq = segment.baseSeq;
+        while (position + RECORD_HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > segmentSize
+                    || buffer.getLong(position + 4) != seq) {
+                break;
+            }
+            // 直接对映射内存计算校验和，不拷贝内容
+            content.limit(position + RECORD_HEADER_SIZE + length);
+            content.position(position + RECORD_HEADER_SIZE);
+            crc.reset();
+            crc.update(content);
+            if ((int) crc.getValue() != buffer.getInt(position + 12)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            seq++;
+        }
+        segment.writePosition = position;
+        segment.endSeq = seq;
+    }
+
+    /**
+     * 切换到新分段，调用方需持有追加锁
+     */
+    private Segment roll() throws IOException {
+        Segment old = this.active;
+        Segment segment = newSegment(nextSeq);
+        rolledSegments.add(old);
+        this.active = segment;
+        return segment;
+    }
+
+    private Segment newSegment(long baseSeq) throws IOException {
+        File file = new File(directory, String.format("%020d%s", baseSeq, SEGMENT_SUFFIX));
+        File free;
+        synchronized (freeFiles) {
+            free = freeFiles.poll();
+        }
+        if (free != null && !free.renameTo(file)) {
+            log.warn("journal reuse segment failed, file={}", free);
+        }
+        // 复用的文件保留旧内容，依靠记录中的序号区分
+        Segment segment = new Segment(baseSeq, file, map(file));
+        segment.endSeq = baseSeq;
+        segments.put(baseSeq, segment);
+        return segment;
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != segmentSize) {
+                raf.setLength(segmentSize);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("journal flush failed, directory={}", directory, e);
+            }
+        }
+    }
+
+    /**
+     * 组提交：刷盘已写满的分段与当前分段，再刷盘检查点并回收已确认的分段
+     * 回收停在等待刷盘的分段上时，检查点之后可能不再变化，刷盘了写满的分段时同样回收
+     */
+    private synchronized void flush() {
+        Segment rolled;
+        boolean rolledFlushed = false;
+        while ((rolled = rolledSegments.poll()) != null) {
+            rolled.buffer.force();
+            rolledFlushed = true;
+        }
+        Segment segment = this.active;
+        if (segment.dirty) {
+            segment.dirty = false;
+            segment.buffer.force();
+        }
+        long acked = this.ackedSeq;
+        boolean advanced = acked != persistedAckedSeq;
+        if (advanced) {
+            checkpoint.putLong(0, acked);
+            checkpoint.putLong(8, ~acked);
+            checkpoint.force();
+            persistedAckedSeq = acked;
+        }
+        if (advanced || rolledFlushed) {
+            recycle(acked);
+        }
+    }
+
+    /**
+     * 回收所有记录都已确认的分段，当前分段除外
+     */
+    private void recycle(long acked) {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == active || segment.endSeq > acked || rolledSegments.contains(segment)) {
+                break;
+            }
+            iterator.remove();
+            File free = new File(directory, String.format("%020d%s", segment.baseSeq, FREE_SUFFIX));
+            if (segment.file.renameTo(free)) {
+                recycleFile(free);
+            } else {
+                log.warn("journal recycle segment failed, file={}", segment.file);
+            }
+        }
+    }
+
+    private void recycleFile(File file) {
+        synchronized (freeFiles) {
+            if (freeFiles.size() < MAX_FREE_SEGMENTS) {
+                freeFiles.add(file);
+                return;
+            }
+        }
+        if (!file.delete()) {
+            log.warn("journal delete segment failed, file={}", file);
+        }
+    }
+
+    private static class Segment {
+
+        private final long baseSeq;
+
+        private final File file;
+
+        private final MappedByteBuffer buffer;
+
+        /**
+         * 下一个写入位置，追加锁保护
+         */
+        private int writePosition;
+
+        /**
+         * 分段内最后一条记录的下一个序号
+         */
+        private volatile long endSeq;
+
+        /**
+         * 是否有未刷盘的写入
+         */
+        private volatile boolean dirty;
+
+        private Segment(long baseSeq, File file, MappedByteBuffer buffer) {
+            this.baseSeq = baseSeq;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
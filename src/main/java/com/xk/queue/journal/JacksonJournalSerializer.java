@@ -0,0 +1,45 @@
+package com.xk.queue.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 15:08
+ * jackson序列化
+ */
+public class JacksonJournalSerializer<T> implements JournalSerializer<T> {
+
+    private final ObjectMapper objectMapper;
+
+    private final Class<T> type;
+
+    public JacksonJournalSerializer(Class<T> type) {
+        this(new ObjectMapper(), type);
+    }
+
+    public JacksonJournalSerializer(ObjectMapper objectMapper, Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.type = type;
+    }
+
+    @Override
+    public byte[] serialize(T t) {
+        try {
+            return objectMapper.writeValueAsBytes(t);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("journal serialize failed: " + t, e);
+        }
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) {
+        try {
+            return objectMapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("journal deserialize failed", e);
+        }
+    }
+}
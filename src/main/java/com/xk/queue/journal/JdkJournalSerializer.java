@@ -0,0 +1,29 @@
+package com.xk.queue.journal;
+
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 15:05
+ * jdk序列化，元素需要实现Serializable
+ * 序列化开销较大，对添加耗时敏感时请使用{@link JacksonJournalSerializer}或自定义实现
+ */
+public class JdkJournalSerializer<T> implements JournalSerializer<T> {
+
+    private final SerializingConverter serializer = new SerializingConverter();
+
+    private final DeserializingConverter deserializer = new DeserializingConverter();
+
+    @Override
+    public byte[] serialize(T t) {
+        return serializer.convert(t);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T deserialize(byte[] bytes) {
+        return (T) deserializer.convert(bytes);
+    }
+}
@@ -0,0 +1,24 @@
+package com.xk.queue.journal;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 15:02
+ * 持久化日志的元素序列化方式，由调用方提供具体实现
+ */
+public interface JournalSerializer<T> {
+
+    /**
+     * 序列化
+     * @param t 元素
+     * @return 字节数组
+     */
+    byte[] serialize(T t);
+
+    /**
+     * 反序列化
+     * @param bytes 字节数组
+     * @return 元素
+     */
+    T deserialize(byte[] bytes);
+}
@@ -0,0 +1,151 @@
+package com.xk.queue.metrics;
+
+import com.xk.queue.base.BatchQueueRecorder;
+import com.xk.queue.base.FlushTrigger;
+import com.xk.queue.base.OverflowStats;
+import com.xk.queue.impl.AbstractBatchQueueService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:20
+ * 批量消费队列的Micrometer指标，所有指标带有queue标签
+ * <pre>
+ * batch.queue.depth            当前积压数量
+ * batch.queue.added            入队数量
+ * batch.queue.overflow         队列已满时各处理策略的触发次数，action标签区分，其中rejected为添加失败
+ * batch.queue.flush            触发消费次数，trigger标签区分size、time、caller_runs、shutdown
+ * batch.queue.batch.size       每批数量分布
+ * batch.queue.consume          每批消费耗时，result标签区分success、failure；整批失败或拆分重试后有元素交给死信处理为failure
+ * batch.queue.consumed         消费结束的元素数量，result标签区分success、failure
+ * batch.queue.element.latency  元素从入队到开始消费的耗时，每64个元素采样一个
+ * </pre>
+ * 添加线程上只有一次计数器累加，分位数与直方图由MeterRegistry的MeterFilter配置
+ */
+public class BatchQueueMetrics implements MeterBinder, BatchQueueRecorder {
+
+    private final AbstractBatchQueueService<?> service;
+
+    private final Tags tags;
+
+    private Counter added;
+
+    private final Map<FlushTrigger, Counter> flushes = new EnumMap<>(FlushTrigger.class);
+
+    private DistributionSummary batchSize;
+
+    private Timer consumeSuccess;
+
+    private Timer consumeFailure;
+
+    private Timer elementLatency;
+
+    private Counter consumedSuccess;
+
+    private Counter consumedFailure;
+
+    /**
+     * @param name 队列名称，通常为bean名称
+     * @param service 队列
+     */
+    public BatchQueueMetrics(String name, AbstractBatchQueueService<?> service) {
+        this(service, Tags.of("queue", name));
+    }
+
+    public BatchQueueMetrics(AbstractBatchQueueService<?> service, Iterable<Tag> tags) {
+        this.service = service;
+        this.tags = Tags.of(tags);
+    }
+
+    /**
+     * 注册指标并设置为队列的指标记录
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("batch.queue.depth", service, AbstractBatchQueueService::size)
+                .tags(tags).description("elements waiting to be consumed").register(registry);
+        added = Counter.builder("batch.queue.added")
+                .tags(tags).description("elements added to the queue").register(registry);
+
+        OverflowStats stats = service.getOverflowStats();
+        overflow(registry, stats, "blocked", OverflowStats::getBlockedCount);
+        overflow(registry, stats, "block_timeout", OverflowStats::getBlockTimeoutCount);
+        overflow(registry, stats, "dropped_newest", OverflowStats::getDroppedNewestCount);
+        overflow(registry, stats, "dropped_oldest", OverflowStats::getDroppedOldestCount);
+        overflow(registry, stats, "caller_runs", OverflowStats::getCallerRunsCount);
+        overflow(registry, stats, "spilled", OverflowStats::getSpilledCount);
+        overflow(registry, stats, "rejected", OverflowStats::getRejectedCount);
+
+        for (FlushTrigger trigger : FlushTrigger.values()) {
+            flushes.put(trigger, Counter.builder("batch.queue.flush")
+                    .tags(tags).tag("trigger", trigger.name().toLowerCase())
+                    .description("batches taken from the queue").register(registry));
+        }
+        batchSize = DistributionSummary.builder("batch.queue.batch.size")
+                .tags(tags).baseUnit("elements").description("elements per batch").register(registry);
+        consumeSuccess = consumeTimer(registry, "success");
+        consumeFailure = consumeTimer(registry, "failure");
+        consumedSuccess = consumedCounter(registry, "success");
+        consumedFailure = consumedCounter(registry, "failure");
+        elementLatency = Timer.builder("batch.queue.element.latency")
+                .tags(tags).description("sampled time from add to consume").register(registry);
+        // volatile写，保证消费线程看到已注册的指标
+        service.setRecorder(this);
+    }
+
+    @Override
+    public void onAdd() {
+        added.increment();
+    }
+
+    @Override
+    public void onFlush(FlushTrigger trigger, int size) {
+        flushes.get(trigger).increment();
+        batchSize.record(size);
+    }
+
+    @Override
+    public void onConsume(int size, long latencyNanos, int failed) {
+        (failed == 0 ? consumeSuccess : consumeFailure).record(latencyNanos, TimeUnit.NANOSECONDS);
+        if (failed < size) {
+            consumedSuccess.increment(size - failed);
+        }
+        if (failed > 0) {
+            consumedFailure.increment(failed);
+        }
+    }
+
+    @Override
+    public void onElementLatency(long latencyNanos) {
+        elementLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void overflow(MeterRegistry registry, OverflowStats stats, String action, ToDoubleFunction<OverflowStats> count) {
+        FunctionCounter.builder("batch.queue.overflow", stats, count)
+                .tags(tags).tag("action", action).description("overflow policy actions").register(registry);
+    }
+
+    private Counter consumedCounter(MeterRegistry registry, String result) {
+        return Counter.builder("batch.queue.consumed")
+                .tags(tags).tag("result", result).description("elements consumed").register(registry);
+    }
+
+    private Timer consumeTimer(MeterRegistry registry, String result) {
+        return Timer.builder("batch.queue.consume")
+                .tags(tags).tag("result", result).description("batch consumer latency").register(registry);
+    }
+}
@@ -0,0 +1,53 @@
+package com.xk.queue.metrics;
+
+import com.xk.queue.impl.AbstractBatchQueueService;
+import com.xk.queue.impl.DelayQueueServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:32
+ * classpath中存在Micrometer且容器中存在MeterRegistry时，为每个批量消费队列与延迟队列bean注册指标，queue标签为bean名称
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+public class BatchQueueMetricsConfiguration {
+
+    @Bean
+    public static BeanPostProcessor batchQueueMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BatchQueueMetricsPostProcessor(meterRegistry);
+    }
+
+    static class BatchQueueMetricsPostProcessor implements BeanPostProcessor {
+
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+
+        BatchQueueMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (bean instanceof AbstractBatchQueueService) {
+                // 延迟获取，避免MeterRegistry被提前初始化
+                MeterRegistry registry = meterRegistry.getIfUnique();
+                if (registry != null) {
+                    new BatchQueueMetrics(beanName, (AbstractBatchQueueService<?>) bean).bindTo(registry);
+                }
+            } else if (bean instanceof DelayQueueServiceImpl) {
+                MeterRegistry registry = meterRegistry.getIfUnique();
+                if (registry != null) {
+                    new DelayQueueMetrics(beanName, (DelayQueueServiceImpl) bean).bindTo(registry);
+                }
+            }
+            return bean;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.xk.queue.metrics;
+
+import com.xk.queue.delay.DelayQueueRecorder;
+import com.xk.queue.impl.DelayQueueServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 22:10
+ * 延迟队列的Micrometer指标，所有指标带有queue标签
+ * <pre>
+ * delay.queue.pending         等待执行的任务数量
+ * delay.queue.pending.due     按距执行时间分组的等待执行任务数量，due标签区分1s、10s、1m、10m、1h、later
+ * delay.queue.tombstones      已取消但还未删除的任务数量
+ * delay.queue.added           添加的任务数量
+ * delay.queue.dispatched      交给线程池的任务数量，其速率即分发速率
+ * delay.queue.dispatch.size   每次分发的到期任务数量分布
+ * delay.queue.dispatch.lag    每次分发中最早到期的任务从执行时间到交给线程池的耗时
+ * delay.queue.lateness        每个任务交给线程池的时间与执行时间之差，发布直方图
+ * delay.queue.rejected        线程池拒绝、改为在分发线程上执行的任务数量
+ * delay.queue.run             任务执行耗时，result标签区分success、failure，同类型批量处理按一次计
+ * </pre>
+ * pending.due需要遍历所有任务，每秒最多统计一次；结合lateness、run与rejected评估delayExecutorService的容量
+ */
+public class DelayQueueMetrics implements MeterBinder, DelayQueueRecorder {
+
+    private final DelayQueueServiceImpl service;
+
+    /**
+     * pending.due的分组上界，单位毫秒
+     */
+    private static final long[] DUE_BOUNDS = {
+            TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(10), TimeUnit.MINUTES.toMillis(1),
+            TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(1)
+    };
+
+    private static final String[] DUE_TAGS = {"1s", "10s", "1m", "10m", "1h", "later"};
+
+    private static final long DUE_SNAPSHOT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final Tags tags;
+
+    private Counter added;
+
+    private Counter dispatched;
+
+    private DistributionSummary dispatchSize;
+
+    private Timer dispatchLag;
+
+    private Timer lateness;
+
+    private Counter rejected;
+
+    private Timer runSuccess;
+
+    private Timer runFailure;
+
+    private int[] dueCounts;
+
+    private long dueSnapshotTime;
+
+    /**
+     * @param name 队列名称，通常为bean名称
+     * @param service 延迟队列
+     */
+    public DelayQueueMetrics(String name, DelayQueueServiceImpl service) {
+        this(service, Tags.of("queue", name));
+    }
+
+    public DelayQueueMetrics(DelayQueueServiceImpl service, Iterable<Tag> tags) {
+        this.service = service;
+        this.tags = Tags.of(tags);
+    }
+
+    /**
+     * 注册指标并设置为延迟队列的指标记录
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("delay.queue.pending", service, DelayQueueServiceImpl::size)
+                .tags(tags).description("jobs waiting to be executed").register(registry);
+        for (int i = 0; i < DUE_TAGS.length; i++) {
+            final int index = i;
+            Gauge.builder("delay.queue.pending.due", this, metrics -> metrics.dueCount(index))
+                    .tags(tags).tag("due", DUE_TAGS[i]).description("pending jobs by time until due").register(registry);
+        }
+        Gauge.builder("delay.queue.tombstones", service, DelayQueueServiceImpl::tombstoneSize)
+                .tags(tags).description("cancelled jobs not yet removed").register(registry);
+        added = Counter.builder("delay.queue.added")
+                .tags(tags).description("jobs added to the queue").register(registry);
+        dispatched = Counter.builder("delay.queue.dispatched")
+                .tags(tags).description("jobs handed to the executor").register(registry);
+        dispatchSize = DistributionSummary.builder("delay.queue.dispatch.size")
+                .tags(tags).baseUnit("jobs").description("expired jobs per dispatch").register(registry);
+        dispatchLag = Timer.builder("delay.queue.dispatch.lag")
+                .tags(tags).description("time from the earliest execute time to hand-off").register(registry);
+        lateness = Timer.builder("delay.queue.lateness")
+                .tags(tags).description("time from execute time to hand-off per job")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(registry);
+        rejected = Counter.builder("delay.queue.rejected")
+                .tags(tags).description("jobs rejected by the executor and run on the dispatcher").register(registry);
+        runSuccess = runTimer(registry, "success");
+        runFailure = runTimer(registry, "failure");
+        // volatile写，保证分发线程看到已注册的指标
+        service.setRecorder(this);
+    }
+
+    @Override
+    public void onAdd() {
+        added.increment();
+    }
+
+    @Override
+    public void onDispatch(int size, long lagNanos) {
+        dispatched.increment(size);
+        dispatchSize.record(size);
+        dispatchLag.record(lagNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onLateness(long latenessNanos) {
+        lateness.record(latenessNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onRejected(int jobs) {
+        rejected.increment(jobs);
+    }
+
+    @Override
+    public void onRun(long runNanos, boolean success) {
+        (success ? runSuccess : runFailure).record(runNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 所有分组共用一次遍历的结果
+     */
+    private synchronized double dueCount(int index) {
+        long now = System.nanoTime();
+        if (dueCounts == null || now - dueSnapshotTime >= DUE_SNAPSHOT_INTERVAL) {
+            dueCounts = service.countPendingByDue(DUE_BOUNDS);
+            dueSnapshotTime = now;
+        }
+        return dueCounts[index];
+    }
+
+    private Timer runTimer(MeterRegistry registry, String result) {
+        return Timer.builder("delay.queue.run")
+                .tags(tags).tag("result", result).description("job run time").register(registry);
+    }
+}
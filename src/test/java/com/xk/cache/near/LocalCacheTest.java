@@ -0,0 +1,78 @@
+package com.xk.cache.near;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 13:20
+ * 本地缓存：按数量、权重淘汰最久未访问的条目，条目按各自的过期时间失效
+ */
+class LocalCacheTest {
+
+    private static final long TTL = TimeUnit.MINUTES.toNanos(10);
+
+    @Test
+    void evictsLeastRecentlyAccessedWhenOverSize() throws Exception {
+        LocalCache cache = new LocalCache(4, Long.MAX_VALUE, value -> 1);
+        for (int i = 0; i < 4; i++) {
+            cache.put("k" + i, i, TTL);
+        }
+        // 访问时间有1毫秒的更新粒度
+        Thread.sleep(5);
+        for (int i = 1; i < 4; i++) {
+            Assertions.assertEquals(i, cache.get("k" + i));
+        }
+        cache.put("k4", 4, TTL);
+
+        Assertions.assertEquals(4, cache.size());
+        Assertions.assertNull(cache.get("k0"));
+        Assertions.assertEquals(4, cache.get("k4"));
+    }
+
+    @Test
+    void evictsByWeight() {
+        LocalCache cache = new LocalCache(100, 10, value -> ((String) value).length());
+        cache.put("a", "12345", TTL);
+        cache.put("b", "1234", TTL);
+        Assertions.assertEquals(9, cache.weight());
+
+        cache.put("c", "123", TTL);
+        Assertions.assertTrue(cache.weight() <= 10);
+        Assertions.assertEquals("123", cache.get("c"));
+
+        cache.invalidateAll();
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(0, cache.weight());
+    }
+
+    @Test
+    void entriesExpireByOwnTtl() throws Exception {
+        LocalCache cache = new LocalCache(100, Long.MAX_VALUE, value -> 1);
+        cache.put("short", 1, TimeUnit.MILLISECONDS.toNanos(20));
+        cache.put("long", 2, TTL);
+        cache.put("none", 3, 0);
+        Assertions.assertEquals(1, cache.get("short"));
+        Assertions.assertNull(cache.get("none"));
+
+        Thread.sleep(50);
+        Assertions.assertNull(cache.get("short"));
+        Assertions.assertEquals(2, cache.get("long"));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void replaceUpdatesWeight() {
+        LocalCache cache = new LocalCache(100, Long.MAX_VALUE, value -> ((String) value).length());
+        cache.put("a", "12345", TTL);
+        cache.put("a", "12", TTL);
+        Assertions.assertEquals(2, cache.weight());
+
+        cache.invalidate("a");
+        Assertions.assertEquals(0, cache.weight());
+        Assertions.assertNull(cache.get("a"));
+    }
+}
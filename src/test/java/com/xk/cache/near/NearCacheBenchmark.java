@@ -0,0 +1,63 @@
+package com.xk.cache.near;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 23:40
+ * 本地缓存命中的读取延迟，以及超出容量时的淘汰开销
+ * 执行：mvn test -Dtest=NearCacheBenchmark
+ */
+class NearCacheBenchmark {
+
+    private static final int KEYS = 10_000;
+
+    private static final int READS = 10_000_000;
+
+    @Test
+    void measureHotRead() {
+        LocalCache cache = new LocalCache(KEYS, Long.MAX_VALUE, value -> 1);
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "near:" + i;
+            cache.put(keys[i], i, TimeUnit.MINUTES.toNanos(10));
+        }
+        // 预热
+        read(cache, keys);
+
+        long start = System.nanoTime();
+        long hits = read(cache, keys);
+        long elapsed = System.nanoTime() - start;
+        Assertions.assertEquals(READS, hits);
+        System.out.printf("%d hot reads over %d keys: %.1fns per read%n", READS, KEYS, (double) elapsed / READS);
+    }
+
+    @Test
+    void measureEviction() {
+        LocalCache cache = new LocalCache(KEYS, Long.MAX_VALUE, value -> 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < KEYS * 100; i++) {
+            cache.put("near:" + i, i, TimeUnit.MINUTES.toNanos(10));
+        }
+        long elapsed = System.nanoTime() - start;
+        Assertions.assertTrue(cache.size() <= KEYS);
+        System.out.printf("%d puts with maximumSize %d: %.1fns per put, size=%d%n",
+                KEYS * 100, KEYS, (double) elapsed / (KEYS * 100), cache.size());
+    }
+
+    private long read(LocalCache cache, String[] keys) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long hits = 0;
+        for (int i = 0; i < READS; i++) {
+            if (cache.get(keys[random.nextInt(KEYS)]) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,150 @@
+package com.xk.cache.near;
+
+import com.xk.cache.support.CacheClient;
+import com.xk.cache.support.CacheLoader;
+import com.xk.cache.support.CacheValue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 13:30
+ * 二级缓存：读取远程期间收到删除通知的值不写入本地，通知消息中的键可以包含任意字符，
+ * 本地条目不晚于远程过期，set期间收到删除通知时不写入本地
+ */
+class NearCacheClientTest {
+
+    @Test
+    void invalidationDuringRemoteReadIsNotLost() {
+        AtomicInteger remoteReads = new AtomicInteger();
+        NearCacheClient[] holder = new NearCacheClient[1];
+        RemoteCache remote = new RemoteCache() {
+            @Override
+            public <T> T get(String key) {
+                // 第一次读取到旧值的同时收到删除通知
+                if (remoteReads.incrementAndGet() == 1) {
+                    holder[0].invalidateLocal(key);
+                    return cast("stale");
+                }
+                return cast("fresh");
+            }
+        };
+        NearCacheClient client = new NearCacheClient(remote, new RedisTemplate<>(), "near");
+        holder[0] = client;
+
+        Assertions.assertEquals("stale", client.get("k"));
+        Assertions.assertEquals(0, client.localSize());
+        Assertions.assertEquals("fresh", client.get("k"));
+        Assertions.assertEquals("fresh", client.get("k"));
+        Assertions.assertEquals(2, remoteReads.get());
+    }
+
+    @Test
+    void localTtlIsCappedByRemoteTtl() throws InterruptedException {
+        AtomicInteger remoteReads = new AtomicInteger();
+        RemoteCache remote = new RemoteCache() {
+            @Override
+            public <T> T get(String key) {
+                throw new AssertionError("must read with ttl");
+            }
+
+            @Override
+            public <T> CacheValue<T> getWithTtl(String key) {
+                remoteReads.incrementAndGet();
+                return new CacheValue<>(cast(key), key.startsWith("short") ? 50 : CacheValue.TTL_UNKNOWN);
+            }
+        };
+        NearCacheClient client = new NearCacheClient(remote, new RedisTemplate<>(), "near");
+
+        Assertions.assertEquals("short", client.get("short"));
+        Assertions.assertEquals("long", client.get("long"));
+        Assertions.assertEquals(2, client.localSize());
+        Thread.sleep(100);
+
+        Assertions.assertEquals("short", client.get("short"));
+        Assertions.assertEquals("long", client.get("long"));
+        Assertions.assertEquals(3, remoteReads.get());
+    }
+
+    @Test
+    void setIsNotCachedWhenInvalidatedDuringWrite() {
+        NearCacheClient[] holder = new NearCacheClient[1];
+        RemoteCache remote = new RemoteCache() {
+            @Override
+            public <T> T get(String key) {
+                return cast("old");
+            }
+        };
+        // 发布本节点通知时收到其他节点的删除通知
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<String, Object>() {
+            @Override
+            public <T> T execute(RedisCallback<T> action) {
+                holder[0].invalidateLocal("other");
+                return null;
+            }
+        };
+        NearCacheClient client = new NearCacheClient(remote, redisTemplate, "near");
+        holder[0] = client;
+        Assertions.assertEquals("old", client.get("k"));
+        Assertions.assertEquals(1, client.localSize());
+
+        Assertions.assertTrue(client.set("k", "new", 10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, client.localSize());
+    }
+
+    @Test
+    void invalidationMessageKeepsKeysWithSeparators() throws IOException {
+        String[] keys = {"a\nb", "", "中文:key", "c"};
+        String[] parts = NearCacheClient.decode(NearCacheClient.encode("node", keys));
+
+        Assertions.assertEquals(keys.length + 1, parts.length);
+        Assertions.assertEquals("node", parts[0]);
+        for (int i = 0; i < keys.length; i++) {
+            Assertions.assertEquals(keys[i], parts[i + 1]);
+        }
+        Assertions.assertThrows(IOException.class, () -> NearCacheClient.decode("node\nkey".getBytes()));
+    }
+
+    /**
+     * 只实现get的远程缓存
+     */
+    private abstract static class RemoteCache implements CacheClient {
+
+        @Override
+        public <T> T getWithCacheLoader(String key, int exp, TimeUnit timeUnit, CacheLoader<T> cacheLoader) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T getWithCacheLoader(String key, int exp, TimeUnit timeUnit, boolean isCacheNull, CacheLoader<T> cacheLoader) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean set(String key, Object value, int exp, TimeUnit timeUnit) {
+            return true;
+        }
+
+        @Override
+        public boolean remove(String key) {
+            return true;
+        }
+
+        @Override
+        public boolean remove(String... keys) {
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> T cast(Object value) {
+            return (T) value;
+        }
+    }
+}
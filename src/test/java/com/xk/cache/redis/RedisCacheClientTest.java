@@ -0,0 +1,160 @@
+package com.xk.cache.redis;
+
+import com.xk.boot.lock.RedisAtomicClient;
+import com.xk.boot.lock.RedisLock;
+import com.xk.cache.support.SingleFlightTimeoutException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 18:20
+ * 集群加载租约：获取到租约的节点加载，其余节点返回旧值或等待新值，默认等待到租约失效，
+ * 持有者释放租约后没有新值时接手加载，等待超时可以改为抛出异常
+ */
+class RedisCacheClientTest {
+
+    private static final String KEY = "user:1";
+
+    @Test
+    void leaseHolderLoadsAndReleases() {
+        StubAtomicClient atomicClient = new StubAtomicClient(0);
+        MemoryCacheClient client = new MemoryCacheClient(atomicClient);
+        AtomicInteger loads = new AtomicInteger();
+
+        Assertions.assertEquals("fresh", client.getWithCacheLoader(KEY, 10, TimeUnit.SECONDS, () -> {
+            loads.incrementAndGet();
+            return "fresh";
+        }));
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals("fresh", client.store.get(KEY));
+        Assertions.assertEquals(1, atomicClient.released.get());
+    }
+
+    @Test
+    void staleValueIsServedWhileLeaseIsHeld() {
+        MemoryCacheClient client = new MemoryCacheClient(new StubAtomicClient(Integer.MAX_VALUE));
+        client.setStaleTime(1, TimeUnit.MINUTES);
+        client.store.put(KEY + ":stale", "stale");
+
+        Assertions.assertEquals("stale", client.getWithCacheLoader(KEY, 10, TimeUnit.SECONDS, () -> {
+            throw new AssertionError("must not load");
+        }));
+        Assertions.assertEquals(1, client.getStaleServedCount());
+    }
+
+    @Test
+    void waitsBeyondOneSecondForLeaseHolder() throws Exception {
+        MemoryCacheClient client = new MemoryCacheClient(new StubAtomicClient(Integer.MAX_VALUE));
+        Thread holder = new Thread(() -> {
+            try {
+                Thread.sleep(1200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            client.store.put(KEY, "fromHolder");
+        });
+        holder.start();
+
+        Assertions.assertEquals("fromHolder", client.getWithCacheLoader(KEY, 10, TimeUnit.SECONDS, () -> {
+            throw new AssertionError("must not load");
+        }));
+        Assertions.assertEquals(0, client.getLeaseTimeoutCount());
+        holder.join();
+    }
+
+    @Test
+    void takesOverWhenLeaseIsReleasedWithoutValue() {
+        StubAtomicClient atomicClient = new StubAtomicClient(3);
+        MemoryCacheClient client = new MemoryCacheClient(atomicClient);
+        AtomicInteger loads = new AtomicInteger();
+
+        Assertions.assertEquals("takeover", client.getWithCacheLoader(KEY, 10, TimeUnit.SECONDS, () -> {
+            loads.incrementAndGet();
+            return "takeover";
+        }));
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(4, atomicClient.attempts.get());
+        Assertions.assertEquals(0, client.getLeaseTimeoutCount());
+    }
+
+    @Test
+    void waitTimeoutFailsWhenSelfLoadDisabled() {
+        MemoryCacheClient client = new MemoryCacheClient(new StubAtomicClient(Integer.MAX_VALUE));
+        client.setLeaseWaitMillis(100);
+        client.setLoadOnLeaseTimeout(false);
+
+        Assertions.assertThrows(SingleFlightTimeoutException.class, () -> client.getWithCacheLoader(KEY, 10, TimeUnit.SECONDS, () -> {
+            throw new AssertionError("must not load");
+        }));
+        Assertions.assertEquals(1, client.getLeaseTimeoutCount());
+
+        client.setLoadOnLeaseTimeout(true);
+        Assertions.assertEquals("self", client.getWithCacheLoader(KEY, 10, TimeUnit.SECONDS, () -> "self"));
+        Assertions.assertEquals(2, client.getLeaseTimeoutCount());
+    }
+
+    /**
+     * 读写保存在内存中
+     */
+    private static class MemoryCacheClient extends RedisCacheClient {
+
+        private final Map<String, Object> store = new ConcurrentHashMap<>();
+
+        MemoryCacheClient(RedisAtomicClient atomicClient) {
+            super(new RedisTemplate<>());
+            setRedisAtomicClient(atomicClient);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key) {
+            return (T) store.get(key);
+        }
+
+        @Override
+        public boolean set(String key, Object value, int exp, TimeUnit timeUnit) {
+            store.put(key, value);
+            return true;
+        }
+    }
+
+    /**
+     * 前busyAttempts次获取租约失败，模拟其他节点持有租约
+     */
+    private static class StubAtomicClient extends RedisAtomicClient {
+
+        private final int busyAttempts;
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private final AtomicInteger released = new AtomicInteger();
+
+        StubAtomicClient(int busyAttempts) {
+            super(templateWithFactory());
+            this.busyAttempts = busyAttempts;
+        }
+
+        @Override
+        public RedisLock getLock(String key, long exp) {
+            if (attempts.incrementAndGet() <= busyAttempts) {
+                return null;
+            }
+            return released::incrementAndGet;
+        }
+
+        private static RedisTemplate<String, Object> templateWithFactory() {
+            RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+            redisTemplate.setConnectionFactory(new LettuceConnectionFactory());
+            return redisTemplate;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.xk.cache.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 00:30
+ * 合并加载：并发请求只加载一次，异常（包括受检异常）原样传给等待的线程，等待超时默认失败、开启后自行加载，加载结束后不残留
+ */
+class SingleFlightTest {
+
+    private static final String KEY = "user:1";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentLoadsShareOneResult() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Object value = new Object();
+        Future<Object> leader = executor.submit(() -> singleFlight.load(KEY, () -> {
+            entered.countDown();
+            await(release);
+            return value;
+        }));
+        Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        List<Future<Object>> waiters = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            waiters.add(executor.submit(() -> singleFlight.load(KEY, () -> {
+                throw new AssertionError("must not load");
+            })));
+        }
+        awaitCoalesced(singleFlight, 8);
+        Assertions.assertEquals(1, singleFlight.inFlightSize());
+        release.countDown();
+
+        Assertions.assertSame(value, leader.get(5, TimeUnit.SECONDS));
+        for (Future<Object> waiter : waiters) {
+            Assertions.assertSame(value, waiter.get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, singleFlight.getLoadCount());
+        Assertions.assertEquals(8, singleFlight.getCoalescedCount());
+        Assertions.assertEquals(0, singleFlight.inFlightSize());
+    }
+
+    @Test
+    void exceptionPropagatesToWaitersAndIsCleared() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("db down");
+        Future<Object> leader = executor.submit(() -> singleFlight.load(KEY, () -> {
+            entered.countDown();
+            await(release);
+            throw failure;
+        }));
+        Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Future<Object> waiter = executor.submit(() -> singleFlight.load(KEY, () -> {
+            throw new AssertionError("must not load");
+        }));
+        awaitCoalesced(singleFlight, 1);
+        release.countDown();
+
+        Assertions.assertSame(failure, causeOf(leader));
+        Assertions.assertSame(failure, causeOf(waiter));
+        Assertions.assertEquals(0, singleFlight.inFlightSize());
+
+        // 失败不会残留，下一次请求重新加载
+        Assertions.assertEquals("ok", singleFlight.load(KEY, () -> "ok"));
+        Assertions.assertEquals(2, singleFlight.getLoadCount());
+    }
+
+    @Test
+    void sneakyCheckedExceptionReachesWaiters() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Exception failure = new Exception("checked");
+        Future<Object> leader = executor.submit(() -> singleFlight.load(KEY, () -> {
+            entered.countDown();
+            await(release);
+            return sneakyThrow(failure);
+        }));
+        Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Future<Object> waiter = executor.submit(() -> singleFlight.load(KEY, () -> {
+            throw new AssertionError("must not load");
+        }));
+        awaitCoalesced(singleFlight, 1);
+        release.countDown();
+
+        Assertions.assertSame(failure, causeOf(leader));
+        Throwable waiterFailure = causeOf(waiter);
+        Assertions.assertTrue(waiterFailure instanceof IllegalStateException);
+        Assertions.assertSame(failure, waiterFailure.getCause());
+        Assertions.assertEquals(0, singleFlight.inFlightSize());
+    }
+
+    @Test
+    void waiterTimesOutWithoutLoading() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        singleFlight.setTimeout(50, TimeUnit.MILLISECONDS);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> leader = executor.submit(() -> singleFlight.load(KEY, () -> {
+            entered.countDown();
+            await(release);
+            return "slow";
+        }));
+        Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        Assertions.assertThrows(SingleFlightTimeoutException.class, () -> singleFlight.load(KEY, () -> {
+            throw new AssertionError("must not load");
+        }));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertEquals(1, singleFlight.getTimeoutCount());
+        Assertions.assertEquals(1, singleFlight.getLoadCount());
+        // 超时的线程不影响正在进行的加载
+        Assertions.assertEquals(1, singleFlight.inFlightSize());
+
+        release.countDown();
+        Assertions.assertEquals("slow", leader.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, singleFlight.inFlightSize());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> singleFlight.setTimeout(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waiterLoadsBySelfWhenEnabled() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        singleFlight.setTimeout(50, TimeUnit.MILLISECONDS);
+        singleFlight.setLoadOnTimeout(true);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> leader = executor.submit(() -> singleFlight.load(KEY, () -> {
+            entered.countDown();
+            await(release);
+            return "slow";
+        }));
+        Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals("self", singleFlight.load(KEY, () -> "self"));
+        Assertions.assertEquals(1, singleFlight.getTimeoutCount());
+        Assertions.assertEquals(2, singleFlight.getLoadCount());
+
+        release.countDown();
+        Assertions.assertEquals("slow", leader.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, singleFlight.inFlightSize());
+    }
+
+    @Test
+    void nullValueIsAllowed() {
+        SingleFlight singleFlight = new SingleFlight();
+        Assertions.assertNull(singleFlight.load(KEY, () -> null));
+        Assertions.assertEquals(0, singleFlight.inFlightSize());
+    }
+
+    private static void awaitCoalesced(SingleFlight singleFlight, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getCoalescedCount() < expected && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+        Assertions.assertEquals(expected, singleFlight.getCoalescedCount());
+    }
+
+    private static Throwable causeOf(Future<?> future) {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (Exception e) {
+            Assertions.fail(e);
+        }
+        return Assertions.fail("expected failure");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, E extends Throwable> T sneakyThrow(Throwable e) throws E {
+        throw (E) e;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
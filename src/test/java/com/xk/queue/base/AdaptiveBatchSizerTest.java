@@ -0,0 +1,55 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 13:40
+ * 自适应批量：超出目标耗时按比例缩小且单次最多缩小一半，单个元素耗时稳定时放大到目标耗时内的最大批量，
+ * 到达速率攒不满时不放大
+ */
+class AdaptiveBatchSizerTest {
+
+    @Test
+    void shrinksProportionallyWhenLatencyExceedsTarget() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 10, 1000, 10, TimeUnit.MILLISECONDS);
+
+        Assertions.assertEquals(50, sizer.record(100, TimeUnit.MILLISECONDS.toNanos(20), 0, 0));
+        // 按比例应缩小到5，单次最多缩小一半
+        Assertions.assertEquals(25, sizer.record(50, TimeUnit.MILLISECONDS.toNanos(100), 0, 0));
+        Assertions.assertEquals(12, sizer.record(25, TimeUnit.MILLISECONDS.toNanos(50), 0, 0));
+        Assertions.assertEquals(10, sizer.record(12, TimeUnit.SECONDS.toNanos(1), 0, 0));
+        Assertions.assertEquals(10, sizer.record(10, TimeUnit.SECONDS.toNanos(1), 0, 0));
+    }
+
+    @Test
+    void growsToLargestBatchWithinTargetLatency() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 1, 1000, 100, TimeUnit.MILLISECONDS);
+        long elementCost = TimeUnit.MILLISECONDS.toNanos(1);
+        int size = sizer.getBatchSize();
+        for (int i = 0; i < 50; i++) {
+            size = sizer.record(size, size * elementCost, 0, 0);
+        }
+
+        // 10 -> 12 -> 15 -> ... -> 78 -> 97，再放大到121会超过100毫秒
+        Assertions.assertEquals(97, size);
+        Assertions.assertEquals(elementCost, sizer.getElementCost(), 1);
+    }
+
+    @Test
+    void doesNotGrowWhenArrivalsCannotFillBatch() throws InterruptedException {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 1, 1000, 100, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 3; i++) {
+            // 每20毫秒到达10个，最大等待10毫秒内只能攒5个
+            TimeUnit.MILLISECONDS.sleep(20);
+            Assertions.assertEquals(10, sizer.record(10, TimeUnit.MILLISECONDS.toNanos(1), 0, 10));
+        }
+        Assertions.assertTrue(sizer.getArrivalRate() <= 500, "arrival rate " + sizer.getArrivalRate());
+
+        Assertions.assertEquals(12, sizer.record(10, TimeUnit.MILLISECONDS.toNanos(1), 0, 0));
+    }
+}
@@ -0,0 +1,73 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:40
+ * 消费线程的内存分配对比：每批新建列表 vs 复用批量列表
+ * 执行：mvn test -Dtest=BatchBufferAllocationBenchmark
+ */
+class BatchBufferAllocationBenchmark {
+
+    private static final int BATCH_SIZE = 2000;
+
+    private static final int ELEMENTS = 2_000_000;
+
+    private static final int ROUNDS = 3;
+
+    @Test
+    void compareConsumerAllocation() throws InterruptedException {
+        Long[] elements = new Long[ELEMENTS];
+        for (int i = 0; i < ELEMENTS; i++) {
+            elements[i] = (long) i;
+        }
+        // 预热
+        measure(elements, false);
+        measure(elements, true);
+
+        long plain = 0;
+        long recycled = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            plain += measure(elements, false);
+            recycled += measure(elements, true);
+        }
+        long batches = (long) ROUNDS * ELEMENTS / BATCH_SIZE;
+        System.out.printf("consumer thread allocation per batch: new list=%d bytes, recycled batch=%d bytes%n",
+                plain / batches, recycled / batches);
+        Assertions.assertTrue(recycled < plain);
+    }
+
+    private long measure(Long[] elements, boolean recycle) throws InterruptedException {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        CountDownLatch done = new CountDownLatch(1);
+        long[] allocated = new long[2];
+        long[] consumed = new long[1];
+        BatchConsumeBlockingQueue<Long> queue = new BatchConsumeBlockingQueue<>(ELEMENTS, BATCH_SIZE, BATCH_SIZE, -1,
+                BufferType.RING_BUFFER, list -> {
+            long threadId = Thread.currentThread().getId();
+            if (consumed[0] == 0) {
+                allocated[0] = threadMXBean.getThreadAllocatedBytes(threadId);
+            }
+            consumed[0] += list.size();
+            if (consumed[0] == ELEMENTS) {
+                allocated[1] = threadMXBean.getThreadAllocatedBytes(threadId);
+                done.countDown();
+            }
+        });
+        if (recycle) {
+            queue.enableBatchRecycle();
+        }
+        for (Long element : elements) {
+            queue.add(element);
+        }
+        Assertions.assertTrue(done.await(1, TimeUnit.MINUTES));
+        return allocated[1] - allocated[0];
+    }
+}
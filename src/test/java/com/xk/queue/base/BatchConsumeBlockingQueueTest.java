@@ -0,0 +1,136 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 11:50
+ * 批量消费队列的关闭：parallelism为1时消费者串行调用、批次顺序不变，分区队列同一个key不会被并发消费
+ */
+class BatchConsumeBlockingQueueTest {
+
+    @Test
+    void shutdownDrainsSeriallyInOrder() {
+        ConcurrencyProbe<Integer> probe = new ConcurrencyProbe<>();
+        BatchConsumeBlockingQueue<Integer> queue = new BatchConsumeBlockingQueue<>(10000, 10, 100000, 60_000, probe);
+        for (int i = 0; i < 200; i++) {
+            queue.add(i);
+        }
+        DrainReport report = queue.shutdown(10, TimeUnit.SECONDS, 1);
+
+        Assertions.assertTrue(report.isCompleted(), report.toString());
+        Assertions.assertEquals(200, report.getFlushed());
+        Assertions.assertEquals(1, probe.maxConcurrency.get());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            expected.add(i);
+        }
+        Assertions.assertEquals(expected, probe.consumed);
+    }
+
+    @Test
+    void parallelDrainStartsAfterConsumerThreadExits() {
+        ConcurrencyProbe<Integer> probe = new ConcurrencyProbe<>();
+        BatchConsumeBlockingQueue<Integer> queue = new BatchConsumeBlockingQueue<>(10000, 10, 100000, 60_000, probe);
+        for (int i = 0; i < 200; i++) {
+            queue.add(i);
+        }
+        DrainReport report = queue.shutdown(10, TimeUnit.SECONDS, 4);
+
+        Assertions.assertTrue(report.isCompleted(), report.toString());
+        Assertions.assertEquals(200, report.getFlushed());
+        Assertions.assertEquals(200, probe.consumed.size());
+        Assertions.assertTrue(probe.maxConcurrency.get() <= 4);
+        // 关闭时消费线程消费的第一批不与并行线程重叠
+        Assertions.assertEquals(Collections.singletonList(10), probe.firstBatchOverlap);
+    }
+
+    @Test
+    void partitionedShutdownKeepsKeyOrder() {
+        Set<Integer> inFlightKeys = ConcurrentHashMap.newKeySet();
+        AtomicInteger keyOverlaps = new AtomicInteger();
+        Map<Integer, List<Integer>> consumedByKey = new ConcurrentHashMap<>();
+        PartitionedBatchConsumeQueue<int[]> queue = new PartitionedBatchConsumeQueue<>(4, e -> e[0], 10000, 10, 100000, 60_000,
+                BufferType.LINKED, batch -> {
+            Map<Integer, List<Integer>> byKey = new HashMap<>();
+            for (int[] e : batch) {
+                byKey.computeIfAbsent(e[0], k -> new ArrayList<>()).add(e[1]);
+            }
+            for (Integer key : byKey.keySet()) {
+                if (!inFlightKeys.add(key)) {
+                    keyOverlaps.incrementAndGet();
+                }
+            }
+            sleep(2);
+            byKey.forEach((key, values) -> consumedByKey.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).addAll(values));
+            inFlightKeys.removeAll(byKey.keySet());
+        });
+        for (int i = 0; i < 400; i++) {
+            queue.add(new int[]{i % 8, i});
+        }
+        DrainReport report = queue.shutdown(10, TimeUnit.SECONDS, 4);
+
+        Assertions.assertTrue(report.isCompleted(), report.toString());
+        Assertions.assertEquals(400, report.getFlushed());
+        Assertions.assertEquals(0, keyOverlaps.get());
+        consumedByKey.forEach((key, values) -> {
+            List<Integer> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            Assertions.assertEquals(sorted, values);
+            Assertions.assertEquals(50, values.size());
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 记录消费者的最大并发数与消费顺序，第一批消费较慢
+     */
+    private static class ConcurrencyProbe<T> implements Consumer<List<T>> {
+
+        private final AtomicInteger concurrency = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrency = new AtomicInteger();
+
+        private final List<T> consumed = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * 第一批结束时已消费的元素数量，大于第一批的数量说明有其他批次同时消费
+         */
+        private final List<Integer> firstBatchOverlap = Collections.synchronizedList(new ArrayList<>());
+
+        private final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        public void accept(List<T> batch) {
+            int current = concurrency.incrementAndGet();
+            maxConcurrency.accumulateAndGet(current, Math::max);
+            boolean first = batches.getAndIncrement() == 0;
+            sleep(first ? 100 : 2);
+            if (first) {
+                firstBatchOverlap.add(consumed.size() + batch.size());
+            }
+            consumed.addAll(batch);
+            concurrency.decrementAndGet();
+        }
+    }
+}
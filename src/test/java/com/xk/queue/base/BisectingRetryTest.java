@@ -0,0 +1,123 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 18:40
+ * 二分拆分重试：只有导致失败的元素交给死信处理，其余元素各成功消费一次；整批偶发失败时不拆分
+ */
+class BisectingRetryTest {
+
+    @Test
+    void isolatesPoisonElements() {
+        Set<Integer> poison = new HashSet<>(Arrays.asList(3, 11));
+        List<Integer> succeeded = new ArrayList<>();
+        Consumer<List<Integer>> consumer = batch -> {
+            for (Integer e : batch) {
+                if (poison.contains(e)) {
+                    throw new IllegalArgumentException("poison " + e);
+                }
+            }
+            succeeded.addAll(batch);
+        };
+        List<Integer> deadLetters = new ArrayList<>();
+        List<Integer> callbacks = new ArrayList<>();
+        BisectingRetry<Integer> retry = new BisectingRetry<>(1, 0, 0, TimeUnit.MILLISECONDS, (e, cause) -> deadLetters.add(e));
+
+        retry.execute(range(16), consumer, (e, cause) -> callbacks.add(e));
+
+        Assertions.assertEquals(Arrays.asList(3, 11), deadLetters);
+        Assertions.assertEquals(deadLetters, callbacks);
+        List<Integer> expected = range(16);
+        expected.removeAll(poison);
+        Assertions.assertEquals(expected, succeeded);
+    }
+
+    @Test
+    void transientFailureRetriesWholeBatch() {
+        AtomicInteger calls = new AtomicInteger();
+        List<Integer> batchSizes = new ArrayList<>();
+        BisectingRetry<Integer> retry = new BisectingRetry<>(2, 0, 0, TimeUnit.MILLISECONDS, (e, cause) -> Assertions.fail("dead letter " + e));
+
+        retry.execute(range(8), batch -> {
+            batchSizes.add(batch.size());
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("transient");
+            }
+        });
+
+        Assertions.assertEquals(Arrays.asList(8, 8), batchSizes);
+    }
+
+    @Test
+    void backoffGrowsBetweenConsecutiveFailures() {
+        BisectingRetry<Integer> retry = new BisectingRetry<>(2, 20, 40, TimeUnit.MILLISECONDS, null);
+        List<Integer> deadLetters = new ArrayList<>();
+
+        long start = System.nanoTime();
+        retry.execute(Collections.singletonList(1), batch -> {
+            throw new IllegalStateException("always");
+        }, (e, cause) -> deadLetters.add(e));
+
+        // 第二、三次消费前分别等待20、40毫秒
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(60));
+        Assertions.assertEquals(Collections.singletonList(1), deadLetters);
+    }
+
+    @Test
+    void failingDeadLetterHandlerDoesNotPropagate() {
+        BisectingRetry<Integer> retry = new BisectingRetry<>(0, 0, 0, TimeUnit.MILLISECONDS, (e, cause) -> {
+            throw new IllegalStateException("handler failed");
+        });
+        AtomicInteger callbacks = new AtomicInteger();
+
+        retry.execute(range(2), batch -> {
+            throw new IllegalStateException("always");
+        }, (e, cause) -> callbacks.incrementAndGet());
+
+        Assertions.assertEquals(2, callbacks.get());
+    }
+
+    @Test
+    void queueConsumesAroundPoisonElement() {
+        List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> deadLetters = Collections.synchronizedList(new ArrayList<>());
+        BatchConsumeBlockingQueue<Integer> queue = new BatchConsumeBlockingQueue<>(1000, 10, 10, 20, batch -> {
+            if (batch.contains(7)) {
+                throw new IllegalArgumentException("poison 7");
+            }
+            consumed.addAll(batch);
+        });
+        queue.enableBisectingRetry(1, 0, 0, TimeUnit.MILLISECONDS, (e, cause) -> deadLetters.add(e));
+        for (int i = 0; i < 30; i++) {
+            queue.add(i);
+        }
+        queue.shutdown(5, TimeUnit.SECONDS, 1);
+
+        Assertions.assertEquals(Collections.singletonList(7), deadLetters);
+        List<Integer> expected = range(30);
+        expected.remove(Integer.valueOf(7));
+        Assertions.assertEquals(expected, consumed);
+    }
+
+    private static List<Integer> range(int size) {
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+}
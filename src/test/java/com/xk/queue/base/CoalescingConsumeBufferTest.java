@@ -0,0 +1,90 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 17:50
+ * 按key合并：相同key合并后保留第一次进入的位置，容量按key计算，经过队列消费时每批中key不重复且合并结果不丢失
+ */
+class CoalescingConsumeBufferTest {
+
+    @Test
+    void mergesSameKeyKeepingFirstPosition() {
+        CoalescingConsumeBuffer<Map.Entry<String, Integer>> buffer = newBuffer(0);
+        buffer.offer(entry("a", 1));
+        buffer.offer(entry("b", 2));
+        buffer.offer(entry("a", 3));
+        buffer.offer(entry("c", 4));
+
+        Assertions.assertEquals(3, buffer.size());
+        Assertions.assertEquals(1, buffer.getCoalescedCount());
+        List<Map.Entry<String, Integer>> drained = new ArrayList<>();
+        Assertions.assertEquals(2, buffer.drainTo(drained, 2));
+        Assertions.assertEquals(Arrays.asList(entry("a", 4), entry("b", 2)), drained);
+        Assertions.assertEquals(entry("c", 4), buffer.poll());
+        Assertions.assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void capacityCountsKeys() {
+        CoalescingConsumeBuffer<Map.Entry<String, Integer>> buffer = newBuffer(2);
+        Assertions.assertTrue(buffer.offer(entry("a", 1)));
+        Assertions.assertTrue(buffer.offer(entry("b", 1)));
+        Assertions.assertFalse(buffer.offer(entry("c", 1)));
+        // 已有的key仍然可以合并
+        Assertions.assertTrue(buffer.offer(entry("a", 1)));
+
+        Assertions.assertEquals(2, buffer.size());
+        Assertions.assertEquals(entry("a", 2), buffer.poll());
+        Assertions.assertTrue(buffer.offer(entry("c", 1)));
+    }
+
+    @Test
+    void queueConsumesEachKeyOncePerBatch() throws InterruptedException {
+        List<List<Map.Entry<String, Integer>>> batches = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        BatchConsumeBlockingQueue<Map.Entry<String, Integer>> queue = new BatchConsumeBlockingQueue<>(newBuffer(100), 100, 100, 200, batch -> {
+            batches.add(new ArrayList<>(batch));
+            latch.countDown();
+        });
+        for (int i = 0; i < 1000; i++) {
+            queue.add(entry("k" + i % 5, 1));
+        }
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        TimeUnit.MILLISECONDS.sleep(400);
+        Map<String, Integer> totals = new HashMap<>();
+        for (List<Map.Entry<String, Integer>> batch : batches) {
+            Set<String> keys = new HashSet<>();
+            for (Map.Entry<String, Integer> e : batch) {
+                Assertions.assertTrue(keys.add(e.getKey()), "duplicate key in batch " + batch);
+                totals.merge(e.getKey(), e.getValue(), Integer::sum);
+            }
+        }
+        Assertions.assertEquals(5, totals.size());
+        totals.values().forEach(total -> Assertions.assertEquals(200, total));
+    }
+
+    private static CoalescingConsumeBuffer<Map.Entry<String, Integer>> newBuffer(int capacity) {
+        return new CoalescingConsumeBuffer<>(capacity, Map.Entry::getKey, (a, b) -> entry(a.getKey(), a.getValue() + b.getValue()));
+    }
+
+    private static Map.Entry<String, Integer> entry(String key, int value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
@@ -0,0 +1,87 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 14:30
+ * 共享调度器：按截止时间执行，任务异常不影响后续任务，取消的任务不执行；
+ * 未达到maxWaitSize的元素在maxWaitTime后被消费，所有队列共用一个调度线程
+ */
+class FlushSchedulerTest {
+
+    private static final String THREAD_NAME = "batch-queue-flush-scheduler";
+
+    @Test
+    void runsTaskAfterDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        FlushScheduler.schedule(latch::countDown, TimeUnit.MILLISECONDS.toNanos(100));
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void failingTaskDoesNotStopScheduler() throws InterruptedException {
+        FlushScheduler.schedule(() -> {
+            throw new IllegalStateException("flush failed");
+        }, 0);
+        CountDownLatch latch = new CountDownLatch(1);
+        FlushScheduler.schedule(latch::countDown, TimeUnit.MILLISECONDS.toNanos(10));
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledTaskDoesNotRun() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        ScheduledFuture<?> future = FlushScheduler.schedule(() -> ran.set(true), TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertTrue(future.cancel(false));
+        CountDownLatch latch = new CountDownLatch(1);
+        FlushScheduler.schedule(latch::countDown, TimeUnit.MILLISECONDS.toNanos(100));
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(ran.get());
+    }
+
+    @Test
+    void queueFlushesBeforeMaxWaitSizeAtDeadline() throws InterruptedException {
+        List<Long> consumedAt = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        BatchConsumeBlockingQueue<Integer> queue = new BatchConsumeBlockingQueue<>(100, 10, 100, 100, list -> {
+            consumedAt.add(System.nanoTime());
+            latch.countDown();
+        });
+        long start = System.nanoTime();
+        queue.add(1);
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(consumedAt.get(0) - start);
+        Assertions.assertTrue(elapsed < 1000, "flushed after " + elapsed + "ms");
+    }
+
+    @Test
+    void queuesShareOneSchedulerThread() {
+        List<BatchConsumeBlockingQueue<Integer>> queues = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            queues.add(new BatchConsumeBlockingQueue<>(100, 10, 100, 50, list -> {
+            }));
+        }
+        queues.forEach(queue -> queue.add(1));
+
+        long schedulers = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> THREAD_NAME.equals(thread.getName()))
+                .count();
+        Assertions.assertEquals(1, schedulers);
+    }
+}
@@ -0,0 +1,152 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 10:45
+ * 环形缓冲区：容量取整、写满拒绝、序号回绕，已抢占尚未发布的槽位等待发布，
+ * 多生产者并发发布时消费者不丢不重且每个生产者内有序
+ */
+class MpscRingConsumeBufferTest {
+
+    @Test
+    void capacityRoundsUpAndRejectsWhenFull() {
+        MpscRingConsumeBuffer<Integer> buffer = new MpscRingConsumeBuffer<>(5);
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertTrue(buffer.offer(i));
+        }
+        Assertions.assertFalse(buffer.offer(8));
+        Assertions.assertEquals(8, buffer.size());
+
+        Assertions.assertEquals(0, buffer.poll());
+        Assertions.assertTrue(buffer.offer(8));
+        Assertions.assertThrows(NullPointerException.class, () -> buffer.offer(null));
+    }
+
+    @Test
+    void drainKeepsOrderAcrossWrapAround() {
+        MpscRingConsumeBuffer<Integer> buffer = new MpscRingConsumeBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertTrue(buffer.offer(next++));
+            }
+            Assertions.assertEquals(2, buffer.drainTo(drained, 2));
+            Assertions.assertEquals(1, buffer.drainTo(drained, 10));
+            Assertions.assertTrue(buffer.isEmpty());
+        }
+        for (int i = 0; i < next; i++) {
+            Assertions.assertEquals(i, drained.get(i));
+        }
+        Assertions.assertNull(buffer.poll());
+    }
+
+    @Test
+    void drainWaitsForClaimedSlot() throws InterruptedException {
+        MpscRingConsumeBuffer<Integer> buffer = new MpscRingConsumeBuffer<>(4);
+        Assertions.assertTrue(buffer.offer(0));
+        // 模拟生产者抢占序号1后尚未发布
+        AtomicLong producerIndex = (AtomicLong) ReflectionTestUtils.getField(buffer, "producerIndex");
+        producerIndex.incrementAndGet();
+        @SuppressWarnings("unchecked")
+        AtomicReferenceArray<Integer> slots = (AtomicReferenceArray<Integer>) ReflectionTestUtils.getField(buffer, "slots");
+        Thread publisher = new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            slots.lazySet(1, 1);
+        });
+        publisher.start();
+
+        List<Integer> drained = new ArrayList<>();
+        Assertions.assertEquals(2, buffer.drainTo(drained, 10));
+        Assertions.assertEquals(Arrays.asList(0, 1), drained);
+        Assertions.assertNull(buffer.poll());
+        publisher.join();
+    }
+
+    @Test
+    void concurrentProducersPublishEveryElementOnce() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        MpscRingConsumeBuffer<long[]> buffer = new MpscRingConsumeBuffer<>(1024);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    long[] element = {producer, i};
+                    while (!buffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+
+        int[] expected = new int[producers];
+        List<long[]> batch = new ArrayList<>();
+        int received = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received < producers * perProducer && System.nanoTime() - deadline < 0) {
+            batch.clear();
+            buffer.drainTo(batch, 100);
+            for (long[] element : batch) {
+                int producer = (int) element[0];
+                Assertions.assertEquals(expected[producer]++, element[1]);
+            }
+            received += batch.size();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assertions.assertEquals(producers * perProducer, received);
+        Assertions.assertTrue(buffer.isEmpty());
+        for (int producer = 0; producer < producers; producer++) {
+            Assertions.assertEquals(perProducer, expected[producer]);
+        }
+    }
+
+    @Test
+    void ringBufferQueueConsumesAllElements() {
+        List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+        BatchConsumeBlockingQueue<Integer> queue = new BatchConsumeBlockingQueue<>(64, 10, 10, 20, BufferType.RING_BUFFER, consumed::addAll);
+        queue.setOverflowPolicy(OverflowPolicy.BLOCK);
+        queue.setBlockTimeout(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 1000; i++) {
+            queue.add(i);
+        }
+        DrainReport report = queue.shutdown(10, TimeUnit.SECONDS, 1);
+
+        Assertions.assertTrue(report.isCompleted(), report.toString());
+        Assertions.assertEquals(1000, consumed.size());
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i, consumed.get(i));
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 12:10
+ * 队列已满时的各处理策略与对应的溢出统计
+ * 按量阈值大于容量且等待时间很长，消费线程不会在测试期间自行消费
+ */
+class OverflowPolicyTest {
+
+    private static final int CAPACITY = 4;
+
+    private final List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<String> consumerThreads = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+
+    private BatchConsumeBlockingQueue<Integer> queue;
+
+    private boolean drained;
+
+    @AfterEach
+    void tearDown() {
+        if (!drained) {
+            drain();
+        }
+    }
+
+    @Test
+    void abortRejects() {
+        fill(OverflowPolicy.ABORT);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> queue.add(CAPACITY));
+        Assertions.assertEquals(1, queue.getOverflowStats().getRejectedCount());
+        Assertions.assertEquals(CAPACITY, queue.size());
+    }
+
+    @Test
+    void dropNewestDiscardsAddedElement() {
+        fill(OverflowPolicy.DROP_NEWEST);
+
+        queue.add(CAPACITY);
+        Assertions.assertEquals(Collections.singletonList(CAPACITY), dropped);
+        Assertions.assertEquals(1, queue.getOverflowStats().getDroppedNewestCount());
+        drain();
+        Assertions.assertEquals(Arrays.asList(0, 1, 2, 3), consumed);
+    }
+
+    @Test
+    void dropOldestDiscardsHead() {
+        fill(OverflowPolicy.DROP_OLDEST);
+
+        queue.add(CAPACITY);
+        Assertions.assertEquals(Collections.singletonList(0), dropped);
+        Assertions.assertEquals(1, queue.getOverflowStats().getDroppedOldestCount());
+        drain();
+        Assertions.assertEquals(Arrays.asList(1, 2, 3, 4), consumed);
+    }
+
+    @Test
+    void callerRunsConsumesOnAddingThread() {
+        fill(OverflowPolicy.CALLER_RUNS);
+
+        queue.add(CAPACITY);
+        Assertions.assertEquals(Arrays.asList(0, 1, 2, 3), consumed);
+        Assertions.assertEquals(Thread.currentThread().getName(), consumerThreads.get(0));
+        Assertions.assertEquals(1, queue.getOverflowStats().getCallerRunsCount());
+        Assertions.assertEquals(1, queue.size());
+    }
+
+    @Test
+    void spillHandsOverToSpillStore() {
+        fill(OverflowPolicy.SPILL);
+        Assertions.assertThrows(IllegalStateException.class, () -> queue.add(CAPACITY));
+
+        List<Integer> spilled = new ArrayList<>();
+        queue.setSpillStore(spilled::add);
+        queue.add(CAPACITY + 1);
+        Assertions.assertEquals(Collections.singletonList(CAPACITY + 1), spilled);
+        Assertions.assertEquals(1, queue.getOverflowStats().getSpilledCount());
+        Assertions.assertEquals(CAPACITY, queue.size());
+    }
+
+    @Test
+    void blockTimesOut() {
+        fill(OverflowPolicy.BLOCK);
+        queue.setBlockTimeout(50, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        Assertions.assertThrows(IllegalStateException.class, () -> queue.add(CAPACITY));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertEquals(1, queue.getOverflowStats().getBlockedCount());
+        Assertions.assertEquals(1, queue.getOverflowStats().getBlockTimeoutCount());
+    }
+
+    @Test
+    void blockWaitsUntilShutdownByDefault() throws Exception {
+        fill(OverflowPolicy.BLOCK);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                queue.add(CAPACITY);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        producer.start();
+        Thread.sleep(100);
+        // 未设置等待时间时一直等待，不会像ABORT一样立即拒绝
+        Assertions.assertTrue(producer.isAlive());
+        Assertions.assertNull(failure.get());
+
+        drain();
+        producer.join(5000);
+        Assertions.assertFalse(producer.isAlive());
+        Assertions.assertTrue(failure.get() instanceof IllegalStateException);
+        Assertions.assertEquals(Arrays.asList(0, 1, 2, 3), consumed);
+        Assertions.assertEquals(0, queue.getOverflowStats().getBlockTimeoutCount());
+    }
+
+    @Test
+    void blockWaitsForFreeSlot() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch consuming = new CountDownLatch(1);
+        // 每个元素立即消费，第一批阻塞在消费者中，之后添加的元素填满队列
+        queue = new BatchConsumeBlockingQueue<>(CAPACITY, 1, 1, 60_000, batch -> {
+            consuming.countDown();
+            await(release);
+            consumed.addAll(batch);
+        });
+        queue.setOverflowPolicy(OverflowPolicy.BLOCK);
+        queue.setBlockTimeout(5, TimeUnit.SECONDS);
+        queue.add(0);
+        Assertions.assertTrue(consuming.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= CAPACITY; i++) {
+            queue.add(i);
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                queue.add(CAPACITY + 1);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        producer.start();
+        Thread.sleep(50);
+        Assertions.assertTrue(producer.isAlive());
+        release.countDown();
+        producer.join(5000);
+
+        Assertions.assertFalse(producer.isAlive());
+        Assertions.assertNull(failure.get());
+        drain();
+        Assertions.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), consumed);
+    }
+
+    private void fill(OverflowPolicy policy) {
+        queue = new BatchConsumeBlockingQueue<>(CAPACITY, CAPACITY, 1000, 60_000, batch -> {
+            consumerThreads.add(Thread.currentThread().getName());
+            consumed.addAll(batch);
+        });
+        queue.setOverflowPolicy(policy);
+        queue.setDropHandler(dropped::add);
+        for (int i = 0; i < CAPACITY; i++) {
+            queue.add(i);
+        }
+    }
+
+    private void drain() {
+        drained = true;
+        queue.shutdown(5, TimeUnit.SECONDS, 1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 11:30
+ * 分区队列：相同key的元素由同一个分区线程按添加顺序消费，key为null的元素同样固定在一个分区
+ */
+class PartitionedBatchConsumeQueueTest {
+
+    private static final int KEYS = 16;
+
+    private static final int PER_KEY = 2000;
+
+    @Test
+    void keyOrderPreservedWithConcurrentProducers() throws Exception {
+        Map<String, List<Integer>> consumedByKey = new ConcurrentHashMap<>();
+        Map<String, Set<String>> threadsByKey = new ConcurrentHashMap<>();
+        PartitionedBatchConsumeQueue<Element> queue = new PartitionedBatchConsumeQueue<>(4, e -> e.key, 100000, 50, 50, 5,
+                BufferType.LINKED, batch -> {
+            String thread = Thread.currentThread().getName();
+            for (Element e : batch) {
+                String key = String.valueOf(e.key);
+                consumedByKey.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(e.seq);
+                threadsByKey.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(thread);
+            }
+        });
+
+        // 每个生产者线程负责一部分key，key为null的元素由最后一个生产者添加
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int seq = 0; seq < PER_KEY; seq++) {
+                    for (int k = producer; k < KEYS; k += 4) {
+                        queue.add(new Element(k == KEYS - 1 ? null : "key-" + k, seq));
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        DrainReport report = queue.shutdown(10, TimeUnit.SECONDS, 1);
+
+        Assertions.assertTrue(report.isCompleted(), report.toString());
+        Assertions.assertEquals(KEYS, consumedByKey.size());
+        consumedByKey.forEach((key, seqs) -> {
+            Assertions.assertEquals(PER_KEY, seqs.size(), key);
+            for (int i = 0; i < PER_KEY; i++) {
+                Assertions.assertEquals(i, seqs.get(i), key);
+            }
+        });
+        // 关闭时的剩余元素也由分区自己的消费线程取出
+        threadsByKey.forEach((key, threads) -> Assertions.assertEquals(1, threads.size(), key + " " + threads));
+    }
+
+    @Test
+    void sizeCoversAllPartitions() {
+        PartitionedBatchConsumeQueue<Element> queue = new PartitionedBatchConsumeQueue<>(4, e -> e.key, 1000, 100, 100, 60_000,
+                BufferType.LINKED, batch -> {
+        });
+        for (int i = 0; i < 40; i++) {
+            queue.add(new Element("key-" + i, i));
+        }
+        Assertions.assertEquals(40, queue.size());
+        Assertions.assertFalse(queue.isEmpty());
+
+        DrainReport report = queue.shutdown(10, TimeUnit.SECONDS, 1);
+        Assertions.assertEquals(40, report.getFlushed());
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    private static final class Element {
+
+        private final String key;
+
+        private final int seq;
+
+        private Element(String key, int seq) {
+            this.key = key;
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.xk.queue.base;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 19:20
+ * 车道轮询：同时等待时按权重比例平滑交替进入，低权重车道不会被饿死
+ */
+class WeightedLaneGateTest {
+
+    @Test
+    void waitingLanesEnterByWeight() throws InterruptedException {
+        WeightedLaneGate gate = new WeightedLaneGate(new int[]{3, 1});
+        List<Integer> order = enterAll(gate, 6, 2);
+
+        // 平滑加权轮询3:1，每4次中车道1进入1次
+        Assertions.assertEquals(Arrays.asList(0, 0, 1, 0, 0, 0, 1, 0), order);
+    }
+
+    @Test
+    void lowWeightLaneIsNotStarved() throws InterruptedException {
+        WeightedLaneGate gate = new WeightedLaneGate(new int[]{10, 1});
+        List<Integer> order = enterAll(gate, 30, 1);
+
+        Assertions.assertEquals(31, order.size());
+        Assertions.assertTrue(order.indexOf(1) <= 10, "lane 1 entered at " + order.indexOf(1));
+    }
+
+    /**
+     * 占住消费者，等所有线程进入等待后放行，返回各线程进入的车道顺序
+     */
+    private static List<Integer> enterAll(WeightedLaneGate gate, int lane0, int lane1) throws InterruptedException {
+        gate.acquire(0);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < lane0 + lane1; i++) {
+            int lane = i < lane0 ? 0 : 1;
+            Thread thread = new Thread(() -> {
+                gate.acquire(lane);
+                order.add(lane);
+                gate.release();
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((int) ReflectionTestUtils.getField(gate, "waitingCount") < lane0 + lane1) {
+            Assertions.assertTrue(System.nanoTime() - deadline < 0, "threads did not start waiting");
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        gate.release();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        return order;
+    }
+}
@@ -0,0 +1,200 @@
+package com.xk.queue.collapse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 11:20
+ * 请求合并：并发调用合并为批量调用、阻塞调用超时、JDK动态代理、关闭时完成所有请求、
+ * Map结果缺少参数时失败、基本类型返回值在注册时拒绝
+ */
+class BatchCollapseBeanPostProcessorTest {
+
+    private final BatchCollapseBeanPostProcessor processor = new BatchCollapseBeanPostProcessor();
+
+    @AfterEach
+    void tearDown() {
+        processor.stop();
+    }
+
+    @Test
+    void concurrentCallsAreCollapsed() throws Exception {
+        UserService service = (UserService) processor.postProcessAfterInitialization(new UserService(0), "userService");
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(service.findAsync(i));
+        }
+        for (int i = 0; i < 50; i++) {
+            Assertions.assertEquals("user-" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertTrue(service.batches < 50);
+        Assertions.assertEquals("user-7", service.find(7));
+    }
+
+    @Test
+    void blockingCallTimesOut() {
+        UserService service = (UserService) processor.postProcessAfterInitialization(new UserService(500), "userService");
+        Assertions.assertThrows(BatchCollapseTimeoutException.class, () -> service.find(1));
+    }
+
+    @Test
+    void batchMethodNotOnJdkProxyInterface() {
+        ProxyFactory proxyFactory = new ProxyFactory(new UserLookupImpl());
+        proxyFactory.addInterface(UserLookup.class);
+        UserLookup lookup = (UserLookup) processor.postProcessAfterInitialization(proxyFactory.getProxy(), "userLookup");
+
+        Assertions.assertEquals("user-3", lookup.find(3));
+    }
+
+    @Test
+    void collapseMethodNotOnJdkProxyInterfaceIsRejected() {
+        ProxyFactory proxyFactory = new ProxyFactory(new UserService(0));
+        proxyFactory.addInterface(UserLookup.class);
+        Object proxy = proxyFactory.getProxy();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> processor.postProcessAfterInitialization(proxy, "userService"));
+    }
+
+    @Test
+    void stopCompletesPendingRequests() throws Exception {
+        UserService service = (UserService) processor.postProcessAfterInitialization(new UserService(0), "userService");
+        processor.start();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(service.findAsync(i));
+        }
+        processor.stop();
+
+        Assertions.assertFalse(processor.isRunning());
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals("user-" + i, futures.get(i).getNow(null));
+        }
+        CompletableFuture<String> rejected = service.findAsync(1);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void missingMapKeyFailsOnlyThatRequest() throws Exception {
+        ScoreService service = (ScoreService) processor.postProcessAfterInitialization(new ScoreService(), "scoreService");
+        CompletableFuture<Integer> found = service.score(2);
+        CompletableFuture<Integer> missing = service.score(-1);
+
+        Assertions.assertEquals(4, found.get(5, TimeUnit.SECONDS));
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> missing.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+        Assertions.assertNull(service.nullable(0).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void primitiveReturnTypeIsRejected() {
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> processor.postProcessAfterInitialization(new PrimitiveScoreService(), "primitiveScoreService"));
+    }
+
+    public interface UserLookup {
+
+        String find(Integer id);
+    }
+
+    public static class UserLookupImpl implements UserLookup {
+
+        @Override
+        @BatchCollapse(batchMethod = "findAll", maxWaitSize = 10, maxWaitTime = 20)
+        public String find(Integer id) {
+            throw new AssertionError("should be collapsed");
+        }
+
+        public List<String> findAll(List<Integer> ids) {
+            List<String> users = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                users.add("user-" + id);
+            }
+            return users;
+        }
+    }
+
+    public static class UserService implements UserLookup {
+
+        private final long batchDelay;
+
+        private volatile int batches;
+
+        public UserService(long batchDelay) {
+            this.batchDelay = batchDelay;
+        }
+
+        @Override
+        @BatchCollapse(batchMethod = "findAll", maxWaitSize = 10, maxWaitTime = 20, timeout = 200)
+        public String find(Integer id) {
+            throw new AssertionError("should be collapsed");
+        }
+
+        @BatchCollapse(batchMethod = "findAll", maxWaitSize = 10, maxWaitTime = 20)
+        public CompletableFuture<String> findAsync(Integer id) {
+            throw new AssertionError("should be collapsed");
+        }
+
+        public List<String> findAll(List<Integer> ids) throws InterruptedException {
+            batches++;
+            if (batchDelay > 0) {
+                Thread.sleep(batchDelay);
+            }
+            List<String> users = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                users.add("user-" + id);
+            }
+            return users;
+        }
+    }
+
+    public static class ScoreService {
+
+        @BatchCollapse(batchMethod = "scoreAll", maxWaitSize = 2, maxWaitTime = 20)
+        public CompletableFuture<Integer> score(Integer id) {
+            throw new AssertionError("should be collapsed");
+        }
+
+        @BatchCollapse(batchMethod = "scoreAll", maxWaitSize = 1, maxWaitTime = 20)
+        public CompletableFuture<Integer> nullable(Integer id) {
+            throw new AssertionError("should be collapsed");
+        }
+
+        /**
+         * 负数没有结果，0的结果为null
+         */
+        public Map<Integer, Integer> scoreAll(List<Integer> ids) {
+            Map<Integer, Integer> scores = new HashMap<>();
+            for (Integer id : ids) {
+                if (id >= 0) {
+                    scores.put(id, id == 0 ? null : id * 2);
+                }
+            }
+            return scores;
+        }
+    }
+
+    public static class PrimitiveScoreService {
+
+        @BatchCollapse(batchMethod = "scoreAll", maxWaitSize = 10, maxWaitTime = 20)
+        public int score(Integer id) {
+            throw new AssertionError("should be collapsed");
+        }
+
+        public Map<Integer, Integer> scoreAll(List<Integer> ids) {
+            return new HashMap<>();
+        }
+    }
+}
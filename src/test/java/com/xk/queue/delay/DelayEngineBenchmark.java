@@ -0,0 +1,183 @@
+package com.xk.queue.delay;
+
+import com.xk.queue.impl.DelayQueueServiceImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 20:50
+ * 调度引擎对比：DelayQueue vs 分层时间轮
+ * 多线程添加吞吐量，到期分发的延迟（不允许提前），1~50毫秒短超时的尾延迟，同时到期时逐个take与take后drainExpired的对比，
+ * 以及DelayQueueServiceImpl分片数量对添加吞吐量的影响
+ * 执行：mvn test -Dtest=DelayEngineBenchmark
+ */
+class DelayEngineBenchmark {
+
+    private static final int PRODUCERS = 8;
+
+    private static final int ADD_JOBS = 1_000_000;
+
+    private static final int DISPATCH_JOBS = 200_000;
+
+    /**
+     * 低于DelayQueueServiceImpl的告警容积
+     */
+    private static final int SERVICE_ADD_JOBS = 96_000;
+
+    private static final int DISPATCH_WINDOW_MILLIS = 1000;
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    @Test
+    void compareAddThroughput() throws InterruptedException {
+        // 预热
+        measureAdd(DelayQueueEngine::new);
+        measureAdd(TimingWheelEngine::new);
+
+        long delayQueue = measureAdd(DelayQueueEngine::new);
+        long timingWheel = measureAdd(TimingWheelEngine::new);
+        System.out.printf("add %d jobs with %d producers: DelayQueue=%dms, TimingWheel=%dms%n",
+                ADD_JOBS, PRODUCERS, delayQueue, timingWheel);
+    }
+
+    @Test
+    void compareDispatchLateness() throws InterruptedException {
+        String delayQueue = measureDispatch(new DelayQueueEngine(), DISPATCH_JOBS, 0, DISPATCH_WINDOW_MILLIS);
+        String timingWheel = measureDispatch(new TimingWheelEngine(), DISPATCH_JOBS, 0, DISPATCH_WINDOW_MILLIS);
+        System.out.printf("dispatch %d jobs due within %dms: DelayQueue %s, TimingWheel %s%n",
+                DISPATCH_JOBS, DISPATCH_WINDOW_MILLIS, delayQueue, timingWheel);
+    }
+
+    @Test
+    void compareShortTimeouts() throws InterruptedException {
+        int jobs = 20_000;
+        // 预热
+        measureDispatch(new DelayQueueEngine(), jobs, 1, 50);
+        measureDispatch(new TimingWheelEngine(100, TimeUnit.MICROSECONDS, 512), jobs, 1, 50);
+
+        String delayQueue = measureDispatch(new DelayQueueEngine(), jobs, 1, 50);
+        String timingWheel = measureDispatch(new TimingWheelEngine(), jobs, 1, 50);
+        String fineWheel = measureDispatch(new TimingWheelEngine(100, TimeUnit.MICROSECONDS, 512), jobs, 1, 50);
+        System.out.printf("dispatch %d jobs due in 1~50ms: DelayQueue %s, TimingWheel(1ms) %s, TimingWheel(100us) %s%n",
+                jobs, delayQueue, timingWheel, fineWheel);
+    }
+
+    @Test
+    void compareDrainExpired() throws InterruptedException {
+        for (boolean drain : new boolean[]{false, true}) {
+            long delayQueue = measureExpired(new DelayQueueEngine(), drain);
+            long timingWheel = measureExpired(new TimingWheelEngine(), drain);
+            System.out.printf("take %d simultaneously expired jobs%s: DelayQueue=%dms, TimingWheel=%dms%n",
+                    DISPATCH_JOBS, drain ? " with drainExpired" : " one by one", delayQueue, timingWheel);
+        }
+    }
+
+    @Test
+    void compareShardedAdd() throws InterruptedException {
+        int producers = Math.max(PRODUCERS, Runtime.getRuntime().availableProcessors());
+        int[] shardCounts = {1, producers / 2, producers};
+        // 预热
+        measureServiceAdd(new DelayQueueServiceImpl(producers, DelayQueueEngine::new), producers);
+        for (int shards : shardCounts) {
+            long delayQueue = measureServiceAdd(new DelayQueueServiceImpl(shards, DelayQueueEngine::new), producers);
+            long timingWheel = measureServiceAdd(new DelayQueueServiceImpl(shards, TimingWheelEngine::new), producers);
+            System.out.printf("add %d jobs with %d producers into %d shards: DelayQueue=%dms, TimingWheel=%dms%n",
+                    SERVICE_ADD_JOBS, producers, shards, delayQueue, timingWheel);
+        }
+    }
+
+    private long measureServiceAdd(DelayQueueServiceImpl service, int producers) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < SERVICE_ADD_JOBS / producers; j++) {
+                    service.add(NOOP, random.nextLong(1_000, 600_000), TimeUnit.MILLISECONDS);
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long measureAdd(Supplier<DelayEngine> engineSupplier) throws InterruptedException {
+        DelayEngine engine = engineSupplier.get();
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            producers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < ADD_JOBS / PRODUCERS; j++) {
+                    engine.add(new DelayJob(NOOP, random.nextLong(1_000, 600_000), TimeUnit.MILLISECONDS));
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assertions.assertEquals(ADD_JOBS, engine.size());
+        return elapsed;
+    }
+
+    private long measureExpired(DelayEngine engine, boolean drain) throws InterruptedException {
+        for (int i = 0; i < DISPATCH_JOBS; i++) {
+            engine.add(new DelayJob(NOOP, 0, TimeUnit.MILLISECONDS));
+        }
+        List<DelayJob> expired = new ArrayList<>();
+        long start = System.nanoTime();
+        int taken = 0;
+        while (taken < DISPATCH_JOBS) {
+            expired.add(engine.take());
+            if (drain) {
+                engine.drainExpired(expired, 4095);
+            }
+            taken += expired.size();
+            expired.clear();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * @return 延迟的平均值、p99与最大值
+     */
+    private String measureDispatch(DelayEngine engine, int jobs, long minDelayMillis, long maxDelayMillis) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long minDelay = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        long maxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        for (int i = 0; i < jobs; i++) {
+            engine.add(new DelayJob(NOOP, random.nextLong(minDelay, maxDelay), TimeUnit.NANOSECONDS));
+        }
+        long[] lateness = new long[jobs];
+        long total = 0;
+        for (int i = 0; i < jobs; i++) {
+            DelayJob job = engine.take();
+            lateness[i] = System.nanoTime() - job.getDeadline();
+            Assertions.assertTrue(lateness[i] >= 0, "job dispatched before deadline");
+            total += lateness[i];
+        }
+        Assertions.assertEquals(0, engine.size());
+        Arrays.sort(lateness);
+        return String.format("avg=%.3fms p99=%.3fms max=%.3fms", total / 1e6 / jobs,
+                lateness[(int) (jobs * 0.99)] / 1e6, lateness[jobs - 1] / 1e6);
+    }
+}
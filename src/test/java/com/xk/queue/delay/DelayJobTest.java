@@ -0,0 +1,64 @@
+package com.xk.queue.delay;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 23:10
+ * 到期时间按nanoTime之差比较：nanoTime越过Long.MAX_VALUE回绕为负数后顺序不变，超长延迟被截断而不溢出
+ */
+class DelayJobTest {
+
+    @Test
+    void orderIsKeptAcrossNanoTimeWraparound() {
+        DelayJob beforeWrap = job(Long.MAX_VALUE - 100);
+        DelayJob atWrap = job(Long.MAX_VALUE);
+        DelayJob afterWrap = job(Long.MIN_VALUE + 100);
+
+        Assertions.assertTrue(beforeWrap.compareTo(atWrap) < 0);
+        Assertions.assertTrue(atWrap.compareTo(afterWrap) < 0);
+        Assertions.assertTrue(afterWrap.compareTo(beforeWrap) > 0);
+        Assertions.assertEquals(0, afterWrap.compareTo(job(Long.MIN_VALUE + 100)));
+
+        PriorityQueue<DelayJob> queue = new PriorityQueue<>(Arrays.asList(afterWrap, atWrap, beforeWrap));
+        List<DelayJob> polled = Arrays.asList(queue.poll(), queue.poll(), queue.poll());
+        Assertions.assertEquals(Arrays.asList(beforeWrap, atWrap, afterWrap), polled);
+    }
+
+    @Test
+    void hugeDelayIsCappedWithoutOverflow() {
+        DelayJob soon = new DelayJob(() -> {
+        }, 1, TimeUnit.SECONDS);
+        DelayJob never = new DelayJob(() -> {
+        }, Long.MAX_VALUE, TimeUnit.DAYS);
+
+        Assertions.assertTrue(never.getDelay(TimeUnit.NANOSECONDS) > 0);
+        Assertions.assertTrue(never.getDelay(TimeUnit.DAYS) > 365L * 100);
+        Assertions.assertTrue(soon.compareTo(never) < 0);
+        Assertions.assertTrue(never.compareTo(soon) > 0);
+    }
+
+    @Test
+    void negativeDelayIsDueImmediately() {
+        DelayJob job = new DelayJob(() -> {
+        }, -1, TimeUnit.HOURS);
+
+        Assertions.assertTrue(job.getDelay(TimeUnit.NANOSECONDS) <= 0);
+        Assertions.assertTrue(job.getDelay(TimeUnit.MILLISECONDS) > -1000);
+    }
+
+    private static DelayJob job(long deadline) {
+        DelayJob job = new DelayJob(() -> {
+        }, 0, TimeUnit.NANOSECONDS);
+        ReflectionTestUtils.setField(job, "deadline", deadline);
+        return job;
+    }
+}
@@ -0,0 +1,85 @@
+package com.xk.queue.delay;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 16:10
+ * 二叉堆调度：墓碑超过一半时整理，堆顶的墓碑不等到期直接丢弃，取出顺序按到期时间
+ */
+class DelayQueueEngineTest {
+
+    @Test
+    void purgesWhenTombstonesExceedHalf() {
+        DelayQueueEngine engine = new DelayQueueEngine();
+        List<DelayJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            DelayJob job = new DelayJob(() -> {
+            }, 10 + i, TimeUnit.SECONDS);
+            jobs.add(job);
+            engine.add(job);
+        }
+        // 第101次取消时整理一次，之后的49个墓碑少于整理下限
+        for (int i = 0; i < 150; i++) {
+            Assertions.assertTrue(engine.cancel(jobs.get(i)));
+        }
+
+        Assertions.assertEquals(49, engine.tombstoneSize());
+        Assertions.assertEquals(50, engine.size());
+        List<DelayJob> pending = new ArrayList<>();
+        engine.forEachPending(pending::add);
+        Assertions.assertEquals(jobs.subList(150, 200), sorted(pending));
+    }
+
+    @Test
+    void cancelledHeadIsDroppedBeforeItExpires() {
+        DelayQueueEngine engine = new DelayQueueEngine();
+        DelayJob cancelled = new DelayJob(() -> {
+        }, 10, TimeUnit.SECONDS);
+        engine.add(cancelled);
+        engine.cancel(cancelled);
+
+        Assertions.assertEquals(0, engine.drainExpired(new ArrayList<>(), 10));
+        Assertions.assertEquals(0, engine.tombstoneSize());
+        Assertions.assertEquals(0, engine.size());
+    }
+
+    @Test
+    void takeFollowsDeadlineAndSkipsCancelled() {
+        DelayQueueEngine engine = new DelayQueueEngine();
+        DelayJob late = new DelayJob(() -> {
+        }, 40, TimeUnit.MILLISECONDS);
+        DelayJob cancelled = new DelayJob(() -> {
+        }, 10, TimeUnit.MILLISECONDS);
+        DelayJob early = new DelayJob(() -> {
+        }, 20, TimeUnit.MILLISECONDS);
+        engine.add(late);
+        engine.add(cancelled);
+        engine.add(early);
+        Assertions.assertTrue(engine.cancel(cancelled));
+        Assertions.assertFalse(engine.cancel(cancelled));
+
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            Assertions.assertSame(early, engine.take());
+            Assertions.assertTrue(System.nanoTime() - early.getDeadline() >= 0);
+            Assertions.assertSame(late, engine.take());
+        });
+        Assertions.assertTrue(late.isTaken());
+        Assertions.assertFalse(engine.cancel(late));
+        Assertions.assertEquals(0, engine.tombstoneSize());
+        Assertions.assertEquals(0, engine.size());
+    }
+
+    private static List<DelayJob> sorted(List<DelayJob> jobs) {
+        List<DelayJob> sorted = new ArrayList<>(jobs);
+        sorted.sort(DelayJob::compareTo);
+        return sorted;
+    }
+}
@@ -0,0 +1,139 @@
+package com.xk.queue.delay;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 20:50
+ * 分层时间轮：跨越多层的任务逐层降级后按到期顺序取出、不提前执行，取消的任务在降级时被丢弃
+ * 每层只有4个槽，几十毫秒的延迟就会进入第三层
+ */
+class TimingWheelEngineTest {
+
+    @Test
+    void cascadesAcrossLevelsInDeadlineOrder() {
+        TimingWheelEngine engine = new TimingWheelEngine(1, TimeUnit.MILLISECONDS, 4);
+        List<Long> delays = Arrays.asList(70L, 3L, 40L, 0L, 10L, 17L);
+        List<DelayJob> jobs = new ArrayList<>();
+        for (Long delay : delays) {
+            DelayJob job = new DelayJob(() -> {
+            }, delay, TimeUnit.MILLISECONDS);
+            jobs.add(job);
+            engine.add(job);
+        }
+        Assertions.assertEquals(delays.size(), engine.size());
+
+        List<DelayJob> taken = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            List<DelayJob> result = new ArrayList<>();
+            for (int i = 0; i < delays.size(); i++) {
+                DelayJob job = engine.take();
+                // 不会提前执行
+                Assertions.assertTrue(System.nanoTime() - job.getDeadline() >= 0);
+                result.add(job);
+            }
+            return result;
+        });
+
+        for (int i = 1; i < taken.size(); i++) {
+            Assertions.assertTrue(taken.get(i - 1).getDeadline() <= taken.get(i).getDeadline());
+        }
+        Assertions.assertTrue(taken.containsAll(jobs));
+        Assertions.assertTrue(taken.stream().allMatch(DelayJob::isTaken));
+        Assertions.assertEquals(0, engine.size());
+    }
+
+    @Test
+    void lateDispatcherTakesJobsInDeadlineOrder() throws Exception {
+        TimingWheelEngine engine = new TimingWheelEngine(1, TimeUnit.MILLISECONDS, 4);
+        // 47、40、33落在第三层同一个跨度16毫秒的槽中，按加入顺序倒序
+        List<Long> delays = Arrays.asList(47L, 40L, 33L, 9L, 3L, 60L, 0L);
+        for (Long delay : delays) {
+            engine.add(new DelayJob(() -> {
+            }, delay, TimeUnit.MILLISECONDS));
+        }
+        // 所有任务都已到期后才开始取出，各层的槽在一次推进中同时到期
+        Thread.sleep(100);
+
+        List<DelayJob> drained = new ArrayList<>();
+        Assertions.assertEquals(delays.size(), engine.drainExpired(drained, 100));
+        for (int i = 1; i < drained.size(); i++) {
+            Assertions.assertTrue(drained.get(i - 1).getDeadline() <= drained.get(i).getDeadline());
+        }
+    }
+
+    @Test
+    void cancelledJobsAreDroppedWhenCascaded() {
+        TimingWheelEngine engine = new TimingWheelEngine(1, TimeUnit.MILLISECONDS, 4);
+        DelayJob cancelled = new DelayJob(() -> {
+        }, 60, TimeUnit.MILLISECONDS);
+        DelayJob kept = new DelayJob(() -> {
+        }, 80, TimeUnit.MILLISECONDS);
+        engine.add(cancelled);
+        engine.add(kept);
+
+        Assertions.assertTrue(engine.cancel(cancelled));
+        Assertions.assertFalse(engine.cancel(cancelled));
+        Assertions.assertEquals(1, engine.size());
+        Assertions.assertEquals(1, engine.tombstoneSize());
+        List<DelayJob> pending = new ArrayList<>();
+        engine.forEachPending(pending::add);
+        Assertions.assertEquals(Arrays.asList(kept), pending);
+
+        DelayJob taken = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), engine::take);
+        Assertions.assertSame(kept, taken);
+        Assertions.assertEquals(0, engine.tombstoneSize());
+        Assertions.assertFalse(engine.cancel(kept));
+    }
+
+    @Test
+    void drainExpiredRespectsLimit() throws Exception {
+        TimingWheelEngine engine = new TimingWheelEngine(1, TimeUnit.MILLISECONDS, 4);
+        for (int i = 0; i < 10; i++) {
+            engine.add(new DelayJob(() -> {
+            }, i % 3, TimeUnit.MILLISECONDS));
+        }
+        engine.add(new DelayJob(() -> {
+        }, 10, TimeUnit.SECONDS));
+        Thread.sleep(20);
+
+        List<DelayJob> drained = new ArrayList<>();
+        Assertions.assertEquals(4, engine.drainExpired(drained, 4));
+        Assertions.assertEquals(6, engine.drainExpired(drained, 100));
+        Assertions.assertEquals(0, engine.drainExpired(drained, 100));
+        Assertions.assertEquals(1, engine.size());
+    }
+
+    @Test
+    void handleCancelAndReschedule() {
+        TimingWheelEngine engine = new TimingWheelEngine(1, TimeUnit.MILLISECONDS, 4);
+        DelayJobHandle handle = new DelayJobHandle(engine, () -> {
+        }, 10, TimeUnit.SECONDS);
+        long firstDeadline = handle.getDeadline();
+
+        Assertions.assertTrue(handle.reschedule(20, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(handle.getDeadline() < firstDeadline);
+        Assertions.assertEquals(1, engine.size());
+        Assertions.assertEquals(1, engine.tombstoneSize());
+
+        DelayJob taken = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), engine::take);
+        Assertions.assertEquals(handle.getDeadline(), taken.getDeadline());
+        Assertions.assertTrue(handle.isDone());
+        Assertions.assertFalse(handle.cancel());
+        Assertions.assertFalse(handle.reschedule(1, TimeUnit.SECONDS));
+
+        DelayJobHandle other = new DelayJobHandle(engine, () -> {
+        }, 10, TimeUnit.SECONDS);
+        Assertions.assertTrue(other.cancel());
+        Assertions.assertTrue(other.isCancelled());
+        Assertions.assertFalse(other.reschedule(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, engine.size());
+    }
+}
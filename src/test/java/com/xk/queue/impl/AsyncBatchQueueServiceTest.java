@@ -0,0 +1,251 @@
+package com.xk.queue.impl;
+
+import com.xk.queue.base.DrainReport;
+import com.xk.queue.base.OverflowPolicy;
+import com.xk.queue.journal.JdkJournalSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 10:10
+ * 异步批量消费：按序完成future、关闭时等待执行中的批次、关闭期间的失败计为未消费、
+ * 同一对象多次添加时各自的future、等待许可时被中断的批次交给死信处理
+ */
+class AsyncBatchQueueServiceTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void orderedCompletionFollowsBatchOrder() throws Exception {
+        AbstractAsyncBatchQueueService<Integer> service = service(1000, 10, 10, 50, batch -> sleep(ThreadLocalRandom.current().nextInt(20)));
+        service.setOrderedCompletion(true);
+        List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final int index = i;
+            futures.add(service.addAsync(i).thenRun(() -> completed.add(index)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        List<Integer> sorted = new ArrayList<>(completed);
+        Collections.sort(sorted);
+        Assertions.assertEquals(200, completed.size());
+        Assertions.assertEquals(sorted, completed);
+        service.shutdown();
+    }
+
+    @Test
+    void shutdownWaitsForInFlightBatches() {
+        AbstractAsyncBatchQueueService<Integer> service = service(1000, 10, 1000, 60_000, batch -> sleep(200));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(service.addAsync(i));
+        }
+        DrainReport report = service.shutdown();
+
+        Assertions.assertTrue(report.isCompleted(), report.toString());
+        Assertions.assertEquals(40, report.getFlushed());
+        Assertions.assertEquals(0, report.getDropped());
+        for (CompletableFuture<Void> future : futures) {
+            Assertions.assertTrue(future.isDone() && !future.isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void failedBatchesDuringShutdownAreDropped() {
+        AbstractAsyncBatchQueueService<Integer> service = service(1000, 10, 1000, 60_000, batch -> {
+            sleep(50);
+            if (batch.contains(15)) {
+                throw new IllegalStateException("consume failed");
+            }
+        });
+        for (int i = 0; i < 40; i++) {
+            service.add(i);
+        }
+        DrainReport report = service.shutdown();
+
+        Assertions.assertFalse(report.isCompleted(), report.toString());
+        Assertions.assertEquals(30, report.getFlushed());
+        Assertions.assertEquals(10, report.getDropped());
+    }
+
+    @Test
+    void shutdownTimeoutCountsRunningBatches() {
+        AbstractAsyncBatchQueueService<Integer> service = service(1000, 10, 1000, 60_000, batch -> sleep(2000));
+        service.setShutdownDrain(300, TimeUnit.MILLISECONDS, 1);
+        for (int i = 0; i < 20; i++) {
+            service.add(i);
+        }
+        DrainReport report = service.shutdown();
+
+        Assertions.assertFalse(report.isCompleted(), report.toString());
+        Assertions.assertEquals(20, report.getDropped());
+        Assertions.assertTrue(report.getElapsedMillis() < 2000, report.toString());
+    }
+
+    @Test
+    void drainReportIgnoresBatchesSubmittedBeforeShutdown() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AbstractAsyncBatchQueueService<Integer> service = service(1000, 10, 10, 60_000, batch -> {
+            if (batch.contains(0)) {
+                started.countDown();
+                sleep(2000);
+            }
+        });
+        service.setShutdownDrain(300, TimeUnit.MILLISECONDS, 1);
+        for (int i = 0; i < 10; i++) {
+            service.add(i);
+        }
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 10; i < 15; i++) {
+            service.add(i);
+        }
+        DrainReport report = service.shutdown();
+
+        // 关闭期间取出的5个元素已消费，关闭前提交、仍在执行的10个元素计为未消费
+        Assertions.assertFalse(report.isCompleted(), report.toString());
+        Assertions.assertEquals(5, report.getFlushed(), report.toString());
+        Assertions.assertEquals(10, report.getDropped(), report.toString());
+    }
+
+    @Test
+    void sameInstanceAddedTwiceKeepsItsOwnFuture() {
+        AtomicInteger calls = new AtomicInteger();
+        AbstractAsyncBatchQueueService<Object> service = new AbstractAsyncBatchQueueService<Object>(100, 1, 2, 60_000) {
+
+            @Override
+            public void batchConsumeMsg(List<Object> list) {
+                if (calls.incrementAndGet() == 2) {
+                    throw new IllegalStateException("second batch failed");
+                }
+            }
+        };
+        // 单线程执行，两个批次按取出顺序执行，第二批失败
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        ReflectionTestUtils.setField(service, "executorService", singleThread);
+        try {
+            Object element = new Object();
+            service.add(element);
+            CompletableFuture<Void> future = service.addAsync(element);
+            service.shutdown();
+
+            // 第一批是普通添加的同一对象，不能提前完成addAsync的future
+            Assertions.assertTrue(future.isCompletedExceptionally());
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    void interruptedWhileWaitingForPermitGoesToDeadLetter() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> deadLetters = Collections.synchronizedList(new ArrayList<>());
+        AbstractAsyncBatchQueueService<Integer> service = new AbstractAsyncBatchQueueService<Integer>(2, 1, 1, 60_000) {
+
+            @Override
+            public void batchConsumeMsg(List<Integer> list) {
+                if (list.contains(0)) {
+                    await(release);
+                }
+                consumed.addAll(list);
+            }
+
+            @Override
+            protected void onDeadLetter(Integer t, Throwable cause) {
+                deadLetters.add(t);
+            }
+        };
+        ReflectionTestUtils.setField(service, "executorService", executorService);
+        service.setMaxInFlightBatches(1);
+        service.setOverflowPolicy(OverflowPolicy.CALLER_RUNS);
+        // 0占用唯一的许可，消费线程取出1后等待许可，2、3填满队列
+        for (int i = 0; i < 4; i++) {
+            service.add(i);
+            Thread.sleep(20);
+        }
+        Thread producer = new Thread(() -> service.add(4));
+        producer.start();
+        // 添加4的线程取出2，等待许可时被中断
+        awaitWaiting(producer);
+        producer.interrupt();
+        producer.join(5000);
+        Assertions.assertFalse(producer.isAlive());
+        Assertions.assertEquals(Collections.singletonList(2), deadLetters);
+
+        release.countDown();
+        service.shutdown();
+        List<Integer> sorted = new ArrayList<>(consumed);
+        Collections.sort(sorted);
+        Assertions.assertEquals(Arrays.asList(0, 1, 3, 4), sorted);
+    }
+
+    @Test
+    void journalIsRejected() {
+        AbstractAsyncBatchQueueService<Integer> service = service(1000, 10, 10, 50, batch -> {
+        });
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> service.enableJournal(new File("target/async-journal"), new JdkJournalSerializer<>()));
+        service.shutdown();
+    }
+
+    private AbstractAsyncBatchQueueService<Integer> service(int capacity, int batchConsumeSize, int maxWaitSize, long maxWaitTime,
+                                                            Consumer<List<Integer>> consumer) {
+        AbstractAsyncBatchQueueService<Integer> service = new AbstractAsyncBatchQueueService<Integer>(capacity, batchConsumeSize, maxWaitSize, maxWaitTime) {
+
+            @Override
+            public void batchConsumeMsg(List<Integer> list) {
+                consumer.accept(list);
+            }
+        };
+        ReflectionTestUtils.setField(service, "executorService", executorService);
+        return service;
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING && System.nanoTime() - deadline < 0) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
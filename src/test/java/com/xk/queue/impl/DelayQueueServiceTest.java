@@ -0,0 +1,228 @@
+package com.xk.queue.impl;
+
+import com.xk.queue.delay.DelayEngine;
+import com.xk.queue.delay.DelayQueueEngine;
+import com.xk.queue.delay.DelayQueueRecorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 22:30
+ * 本地延迟队列：同时到期的任务按dispatchChunkSize分组提交，同类型任务合并为一批；
+ * 分片模式下相同任务键进入同一分片，同一添加线程进入同一分片；
+ * 分发失败后分发线程继续工作，关闭时等待到期任务分发，等待时间不超过shutdownTimeout
+ */
+class DelayQueueServiceTest {
+
+    /**
+     * 已执行完的提交次数，分发线程不会执行完，不计入
+     */
+    private final AtomicInteger completedTasks = new AtomicInteger();
+
+    private final ExecutorService executorService = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            completedTasks.incrementAndGet();
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void expiredJobsAreSubmittedInChunks() throws Exception {
+        DelayQueueServiceImpl service = newService();
+        service.setDispatchChunkSize(4);
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            service.add(runs::incrementAndGet, 0, TimeUnit.MILLISECONDS);
+        }
+        // 启动前全部到期，分发线程一次取出
+        TimeUnit.MILLISECONDS.sleep(20);
+        service.afterPropertiesSet();
+
+        await(() -> runs.get() == 10);
+        await(() -> completedTasks.get() == 3);
+        TimeUnit.MILLISECONDS.sleep(50);
+        Assertions.assertEquals(3, completedTasks.get());
+    }
+
+    @Test
+    void sameTypeJobsAreHandledAsOneBatch() throws Exception {
+        DelayQueueServiceImpl service = newService();
+        List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        service.<Integer>registerBatchHandler("sms", batches::add);
+        Assertions.assertThrows(IllegalStateException.class, () -> service.<Integer>registerBatchHandler("sms", batches::add));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.add("mail", 1, 0, TimeUnit.MILLISECONDS));
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            service.add("sms", i, 0, TimeUnit.MILLISECONDS);
+        }
+        service.add(runs::incrementAndGet, 0, TimeUnit.MILLISECONDS);
+        TimeUnit.MILLISECONDS.sleep(20);
+        service.afterPropertiesSet();
+
+        await(() -> batches.size() == 1 && runs.get() == 1);
+        List<Integer> batch = new ArrayList<>(batches.get(0));
+        batch.sort(Integer::compare);
+        Assertions.assertEquals(Arrays.asList(0, 1, 2, 3, 4), batch);
+    }
+
+    @Test
+    void sameKeyGoesToSameShard() throws Exception {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new DelayQueueServiceImpl(0, DelayQueueEngine::new));
+        DelayQueueServiceImpl service = new DelayQueueServiceImpl(4, DelayQueueEngine::new);
+        ReflectionTestUtils.setField(service, "delayExecutorService", executorService);
+        Assertions.assertEquals(4, service.getShards());
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            service.addByKey("order-1", runs::incrementAndGet, 0, TimeUnit.MILLISECONDS);
+        }
+        Assertions.assertEquals(1, nonEmptyShards(service));
+
+        for (int i = 0; i < 100; i++) {
+            service.addByKey("order-" + i, runs::incrementAndGet, 0, TimeUnit.MILLISECONDS);
+        }
+        Assertions.assertEquals(4, nonEmptyShards(service));
+        Assertions.assertEquals(110, service.size());
+
+        service.afterPropertiesSet();
+        await(() -> runs.get() == 110);
+        service.destroy();
+    }
+
+    @Test
+    void sameThreadGoesToSameShard() throws Exception {
+        DelayQueueServiceImpl service = new DelayQueueServiceImpl(4, DelayQueueEngine::new);
+        for (int i = 0; i < 10; i++) {
+            service.add(() -> {
+            }, 1, TimeUnit.HOURS);
+        }
+
+        Assertions.assertEquals(1, nonEmptyShards(service));
+        Assertions.assertEquals(10, service.size());
+    }
+
+    @Test
+    void dispatcherSurvivesRuntimeException() throws Exception {
+        DelayQueueServiceImpl service = newService();
+        AtomicBoolean failed = new AtomicBoolean();
+        service.setRecorder(new NoopRecorder() {
+            @Override
+            public void onDispatch(int size, long lagNanos) {
+                if (failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("recorder failed");
+                }
+            }
+        });
+        service.afterPropertiesSet();
+        CountDownLatch first = new CountDownLatch(1);
+        service.add(first::countDown, 10, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(first.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch second = new CountDownLatch(1);
+        service.add(second::countDown, 10, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(second.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(failed.get());
+        service.destroy();
+    }
+
+    @Test
+    void destroyWaitsForDueJobs() throws Exception {
+        DelayQueueServiceImpl service = newService();
+        service.afterPropertiesSet();
+        AtomicInteger runs = new AtomicInteger();
+        service.add(runs::incrementAndGet, 150, TimeUnit.MILLISECONDS);
+
+        service.destroy();
+        Assertions.assertEquals(0, service.size());
+        executorService.shutdown();
+        Assertions.assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, runs.get());
+    }
+
+    @Test
+    void destroyIsBoundedByShutdownTimeout() throws Exception {
+        DelayQueueServiceImpl service = newService();
+        service.setShutdownTimeout(200, TimeUnit.MILLISECONDS);
+        service.afterPropertiesSet();
+        AtomicInteger runs = new AtomicInteger();
+        service.add(runs::incrementAndGet, 1, TimeUnit.HOURS);
+
+        long start = System.nanoTime();
+        service.destroy();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assertions.assertTrue(elapsed >= 200 && elapsed < 2000, "destroy took " + elapsed + "ms");
+        Assertions.assertEquals(1, service.size());
+        Assertions.assertEquals(0, runs.get());
+    }
+
+    private DelayQueueServiceImpl newService() {
+        DelayQueueServiceImpl service = new DelayQueueServiceImpl();
+        ReflectionTestUtils.setField(service, "delayExecutorService", executorService);
+        return service;
+    }
+
+    private static int nonEmptyShards(DelayQueueServiceImpl service) {
+        DelayEngine[] delayEngines = (DelayEngine[]) ReflectionTestUtils.getField(service, "delayEngines");
+        int shards = 0;
+        for (DelayEngine delayEngine : delayEngines) {
+            if (delayEngine.size() > 0) {
+                shards++;
+            }
+        }
+        return shards;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() - deadline < 0, "condition not met in 5s");
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static class NoopRecorder implements DelayQueueRecorder {
+
+        @Override
+        public void onAdd() {
+        }
+
+        @Override
+        public void onDispatch(int size, long lagNanos) {
+        }
+
+        @Override
+        public void onLateness(long latenessNanos) {
+        }
+
+        @Override
+        public void onRejected(int jobs) {
+        }
+
+        @Override
+        public void onRun(long runNanos, boolean success) {
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.xk.queue.impl;
+
+import com.xk.pipeline.redis.RedisListOperationService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 10:40
+ * 分布式批量消费队列的关闭：等待已取出的批次消费完成，不中断消费线程，之后不再取出；
+ * 推送失败时重试，重试仍然失败的元素交给onPushFailed
+ */
+class RedisBatchQueueServiceTest {
+
+    @Test
+    void destroyWaitsForPoppedBatch() throws Exception {
+        CountDownLatch consuming = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger pops = new AtomicInteger();
+        AbstractRedisBatchQueueService<Integer> service = new AbstractRedisBatchQueueService<Integer>(new RedisTemplate<>(), "test", 10, 10, 100) {
+            @Override
+            public void batchConsumeMsg(List<Integer> list) {
+                consuming.countDown();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    return;
+                }
+                consumed.addAndGet(list.size());
+            }
+        };
+        ReflectionTestUtils.setField(service, "redisListOperationService", new StubListOperationService(pops));
+        service.setPollInterval(10, TimeUnit.MILLISECONDS);
+        service.afterPropertiesSet();
+
+        Assertions.assertTrue(consuming.await(5, TimeUnit.SECONDS));
+        service.destroy();
+        int popsAfterDestroy = pops.get();
+        Thread.sleep(100);
+
+        Assertions.assertFalse(interrupted.get());
+        Assertions.assertEquals(3, consumed.get());
+        Assertions.assertEquals(popsAfterDestroy, pops.get());
+    }
+
+    @Test
+    void pushIsRetriedUntilRedisRecovers() throws Exception {
+        StubListOperationService stub = new StubListOperationService(new AtomicInteger(), 2);
+        List<Integer> failed = new CopyOnWriteArrayList<>();
+        AbstractRedisBatchQueueService<Integer> service = newPushService(stub, failed);
+        service.setPushRetry(2, 1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 5; i++) {
+            service.add(i);
+        }
+        service.destroy();
+
+        Assertions.assertEquals(Arrays.asList(0, 1, 2, 3, 4), stub.pushed);
+        Assertions.assertEquals(3, stub.pushCalls.get());
+        Assertions.assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    void pushFailureAfterRetriesGoesToOnPushFailed() throws Exception {
+        StubListOperationService stub = new StubListOperationService(new AtomicInteger(), Integer.MAX_VALUE);
+        List<Integer> failed = new CopyOnWriteArrayList<>();
+        AbstractRedisBatchQueueService<Integer> service = newPushService(stub, failed);
+        service.setPushRetry(1, 1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 5; i++) {
+            service.add(i);
+        }
+        service.destroy();
+
+        Assertions.assertTrue(stub.pushed.isEmpty());
+        Assertions.assertEquals(2, stub.pushCalls.get());
+        Assertions.assertEquals(Arrays.asList(0, 1, 2, 3, 4), failed);
+    }
+
+    private static AbstractRedisBatchQueueService<Integer> newPushService(StubListOperationService stub, List<Integer> failed) {
+        AbstractRedisBatchQueueService<Integer> service = new AbstractRedisBatchQueueService<Integer>(new RedisTemplate<>(), "test", 10, 10, 100,
+                100, 5, 1000) {
+            @Override
+            public void batchConsumeMsg(List<Integer> list) {
+            }
+
+            @Override
+            protected void onPushFailed(Integer integer, Throwable cause) {
+                failed.add(integer);
+            }
+        };
+        ReflectionTestUtils.setField(service, "redisListOperationService", stub);
+        return service;
+    }
+
+    /**
+     * 第一次取出一批3个元素，之后取不到；前pushFailures次推送失败
+     */
+    private static class StubListOperationService implements RedisListOperationService {
+
+        private final AtomicInteger pops;
+
+        private final int pushFailures;
+
+        private final AtomicInteger pushCalls = new AtomicInteger();
+
+        private final List<Object> pushed = new CopyOnWriteArrayList<>();
+
+        StubListOperationService(AtomicInteger pops) {
+            this(pops, 0);
+        }
+
+        StubListOperationService(AtomicInteger pops, int pushFailures) {
+            this.pops = pops;
+            this.pushFailures = pushFailures;
+        }
+
+        @Override
+        public <T> Boolean pushAndExpire(RedisTemplate<String, T> redisTemplate, String key, List<T> valueList, long timeout, TimeUnit timeUnit) {
+            return true;
+        }
+
+        @Override
+        public <T> List<T> lPopupAll(RedisTemplate<String, T> redisTemplate, String key) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public <T> Long pipelinedPushAll(RedisTemplate<String, T> redisTemplate, String key, List<T> valueList, int chunkSize) {
+            if (pushCalls.incrementAndGet() <= pushFailures) {
+                throw new IllegalStateException("redis down");
+            }
+            pushed.addAll(valueList);
+            return (long) pushed.size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> popBatch(RedisTemplate<String, T> redisTemplate, String key, String stampKey, int batchSize, int maxWaitSize, long maxWaitTime) {
+            return pops.getAndIncrement() == 0 ? (List<T>) Arrays.asList(1, 2, 3) : Collections.emptyList();
+        }
+    }
+}
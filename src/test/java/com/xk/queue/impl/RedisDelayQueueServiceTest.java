@@ -0,0 +1,187 @@
+package com.xk.queue.impl;
+
+import com.xk.pipeline.redis.ClaimedMembers;
+import com.xk.pipeline.redis.RedisZSetOperationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 12:50
+ * 分布式延迟队列：延迟时间交给redis计算，确认时传回redis计算的处理截止时间；
+ * 三个键使用相同的hash tag，执行失败的任务退避后重新领取，达到最多执行次数后交给onDeadLetter
+ */
+class RedisDelayQueueServiceTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void executesClaimedJobAndAcksWithRedisDeadline() throws Exception {
+        StubZSetOperationService zSet = new StubZSetOperationService();
+        RedisDelayQueueServiceImpl service = new RedisDelayQueueServiceImpl(new RedisTemplate<>(), "jobs");
+        ReflectionTestUtils.setField(service, "redisZSetOperationService", zSet);
+        ReflectionTestUtils.setField(service, "delayExecutorService", executorService);
+        BlockingQueue<String> handled = new LinkedBlockingQueue<>();
+        service.registerJobType("order", handled::add);
+        service.setPollInterval(10, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(service.add("order", "42", 5, TimeUnit.SECONDS));
+        Assertions.assertEquals(5000, zSet.delayMillis);
+        Assertions.assertEquals("order:42", new String(zSet.added, StandardCharsets.UTF_8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> service.add("unknown", "42", 1, TimeUnit.SECONDS));
+
+        service.afterPropertiesSet();
+        Assertions.assertEquals("42", handled.poll(5, TimeUnit.SECONDS));
+        long ackDeadline = zSet.ackDeadlines.poll(5, TimeUnit.SECONDS);
+        service.destroy();
+
+        Assertions.assertEquals(StubZSetOperationService.DEADLINE, ackDeadline);
+        Assertions.assertEquals("{jobs}", zSet.key);
+        Assertions.assertEquals("{jobs}:inflight", zSet.inflightKey);
+        Assertions.assertEquals("{jobs}:attempts", zSet.attemptsKey);
+    }
+
+    @Test
+    void failedJobIsRedeliveredUntilItSucceeds() throws Exception {
+        StubZSetOperationService zSet = new StubZSetOperationService();
+        RedisDelayQueueServiceImpl service = newService(zSet, new LinkedBlockingQueue<>());
+        AtomicInteger runs = new AtomicInteger();
+        service.registerJobType("order", payload -> {
+            if (runs.incrementAndGet() < 3) {
+                throw new IllegalStateException("db down");
+            }
+        });
+        service.setRetry(5, 200, TimeUnit.MILLISECONDS);
+        service.add("order", "42", 0, TimeUnit.SECONDS);
+
+        service.afterPropertiesSet();
+        long ackDeadline = zSet.ackDeadlines.poll(5, TimeUnit.SECONDS);
+        service.destroy();
+
+        Assertions.assertEquals(StubZSetOperationService.DEADLINE, ackDeadline);
+        Assertions.assertEquals(3, runs.get());
+        Assertions.assertEquals(2, zSet.nacks.get());
+        Assertions.assertEquals(200, zSet.backoff);
+    }
+
+    @Test
+    void jobGoesToDeadLetterAfterMaxAttempts() throws Exception {
+        StubZSetOperationService zSet = new StubZSetOperationService();
+        BlockingQueue<String> deadLetters = new LinkedBlockingQueue<>();
+        RedisDelayQueueServiceImpl service = newService(zSet, deadLetters);
+        AtomicInteger runs = new AtomicInteger();
+        service.registerJobType("order", payload -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("db down");
+        });
+        service.setRetry(3, 1, TimeUnit.SECONDS);
+        service.add("order", "42", 0, TimeUnit.SECONDS);
+
+        service.afterPropertiesSet();
+        String deadLetter = deadLetters.poll(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+        service.destroy();
+
+        Assertions.assertEquals("order:42", deadLetter);
+        Assertions.assertEquals(3, runs.get());
+        Assertions.assertEquals(3, zSet.nacks.get());
+        Assertions.assertTrue(zSet.ackDeadlines.isEmpty());
+        Assertions.assertTrue(deadLetters.isEmpty());
+    }
+
+    private RedisDelayQueueServiceImpl newService(StubZSetOperationService zSet, BlockingQueue<String> deadLetters) {
+        RedisDelayQueueServiceImpl service = new RedisDelayQueueServiceImpl(new RedisTemplate<>(), "jobs") {
+            @Override
+            protected void onDeadLetter(String type, byte[] payload, Throwable cause) {
+                deadLetters.add(type + ":" + new String(payload, StandardCharsets.UTF_8));
+            }
+        };
+        ReflectionTestUtils.setField(service, "redisZSetOperationService", zSet);
+        ReflectionTestUtils.setField(service, "delayExecutorService", executorService);
+        service.setPollInterval(10, TimeUnit.MILLISECONDS);
+        return service;
+    }
+
+    /**
+     * 第一次领取返回添加的元素，处理截止时间固定；失败的元素在下一次领取时返回，不计算退避时间
+     */
+    private static class StubZSetOperationService implements RedisZSetOperationService {
+
+        private static final long DEADLINE = 1_700_000_060_000L;
+
+        private final AtomicInteger claims = new AtomicInteger();
+
+        private final BlockingQueue<Long> ackDeadlines = new LinkedBlockingQueue<>();
+
+        private volatile byte[] added;
+
+        private volatile long delayMillis;
+
+        private final BlockingQueue<byte[]> redelivered = new LinkedBlockingQueue<>();
+
+        private final AtomicInteger nacks = new AtomicInteger();
+
+        private volatile long backoff;
+
+        private volatile String key;
+
+        private volatile String inflightKey;
+
+        private volatile String attemptsKey;
+
+        @Override
+        public boolean addDelayed(RedisTemplate<String, ?> redisTemplate, String key, byte[] member, long delayMillis) {
+            this.added = member;
+            this.delayMillis = delayMillis;
+            return true;
+        }
+
+        @Override
+        public ClaimedMembers claimDue(RedisTemplate<String, ?> redisTemplate, String key, String inflightKey, long visibilityTimeout, int batchSize) {
+            this.key = key;
+            this.inflightKey = inflightKey;
+            byte[] member = claims.getAndIncrement() == 0 ? added : redelivered.poll();
+            List<byte[]> members = member == null ? Collections.emptyList() : Collections.singletonList(member);
+            return new ClaimedMembers(members.isEmpty() ? 0 : DEADLINE, members);
+        }
+
+        @Override
+        public int ack(RedisTemplate<String, ?> redisTemplate, String inflightKey, String attemptsKey, byte[] member, long deadline) {
+            this.attemptsKey = attemptsKey;
+            ackDeadlines.add(deadline);
+            return ACK_DONE;
+        }
+
+        @Override
+        public int nack(RedisTemplate<String, ?> redisTemplate, String key, String inflightKey, String attemptsKey, byte[] member, long deadline,
+                        int maxAttempts, long backoff, long maxBackoff) {
+            this.attemptsKey = attemptsKey;
+            this.backoff = backoff;
+            int attempts = nacks.incrementAndGet();
+            if (attempts >= maxAttempts) {
+                return NACK_EXHAUSTED;
+            }
+            redelivered.add(member);
+            return attempts;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.xk.queue.journal;
+
+import com.xk.queue.base.BatchConsumeBlockingQueue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-19 09:30
+ * 持久化日志：重放未确认的元素、乱序确认、校验和损坏后的恢复、消费失败的批次交给死信处理后确认并回收分段
+ */
+class BatchJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static final JournalSerializer<String> SERIALIZER = new JournalSerializer<String>() {
+
+        @Override
+        public byte[] serialize(String s) {
+            return s.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @TempDir
+    File directory;
+
+    @Test
+    void replayUnackedAfterReopen() throws IOException {
+        BatchJournal<String> journal = open();
+        append(journal, 10);
+        journal.ack(0, 4);
+        journal.close();
+
+        BatchJournal<String> reopened = open();
+        Assertions.assertEquals(4, reopened.getAckedSeq());
+        Assertions.assertEquals(Arrays.asList("e4", "e5", "e6", "e7", "e8", "e9"), replay(reopened));
+        reopened.close();
+    }
+
+    @Test
+    void replayAcrossSegments() throws IOException {
+        BatchJournal<String> journal = open();
+        // 每条记录16字节头加内容，约200条写满一个分段
+        append(journal, 1000);
+        journal.ack(0, 990);
+        journal.close();
+
+        List<String> replayed = replay(open());
+        Assertions.assertEquals(10, replayed.size());
+        Assertions.assertEquals("e990", replayed.get(0));
+        Assertions.assertEquals("e999", replayed.get(9));
+    }
+
+    @Test
+    void outOfOrderAcksMerge() throws IOException {
+        BatchJournal<String> journal = open();
+        append(journal, 20);
+        journal.ack(5, 5);
+        journal.ack(10, 5);
+        journal.ack(15, 5);
+        Assertions.assertEquals(0, journal.getAckedSeq());
+        Assertions.assertEquals(1, journal.getPendingAckRanges());
+
+        journal.ack(0, 5);
+        Assertions.assertEquals(20, journal.getAckedSeq());
+        Assertions.assertEquals(0, journal.getPendingAckRanges());
+        journal.close();
+    }
+
+    @Test
+    void recoverStopsAtCorruptedRecord() throws IOException {
+        BatchJournal<String> journal = open();
+        append(journal, 10);
+        journal.close();
+
+        // 破坏第7条记录的内容，校验和不符，之后的记录视为未写入
+        File segment = segmentFile();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            long position = 0;
+            for (int i = 0; i < 6; i++) {
+                raf.seek(position);
+                position += 16 + raf.readInt();
+            }
+            raf.seek(position + 16);
+            int b = raf.read();
+            raf.seek(position + 16);
+            raf.write(b ^ 0xFF);
+        }
+
+        BatchJournal<String> reopened = open();
+        Assertions.assertEquals(Arrays.asList("e0", "e1", "e2", "e3", "e4", "e5"), replay(reopened));
+        // 损坏位置之后从序号6继续写入
+        reopened.appendIf(SERIALIZER.serialize("next"), () -> true);
+        reopened.close();
+        Assertions.assertEquals(Arrays.asList("e0", "e1", "e2", "e3", "e4", "e5", "next"), replay(open()));
+    }
+
+    @Test
+    void failedBatchIsDeadLetteredAndSegmentsRecycled() throws IOException {
+        List<String> deadLetters = new CopyOnWriteArrayList<>();
+        BatchConsumeBlockingQueue<String> queue = new BatchConsumeBlockingQueue<>(2000, 10, 10, -1, batch -> {
+            if (batch.contains("e7")) {
+                throw new IllegalStateException("consume failed");
+            }
+        });
+        queue.setDeadLetterHandler((e, cause) -> deadLetters.add(e));
+        BatchJournal<String> journal = open();
+        queue.enableJournal(journal);
+        // 约200条写满一个分段，失败批次之后还会写满多个分段
+        for (int i = 0; i < 1000; i++) {
+            queue.add("e" + i);
+        }
+        queue.shutdown(5, TimeUnit.SECONDS, 1);
+        queue.closeJournal();
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("e" + i);
+        }
+        Assertions.assertEquals(expected, deadLetters);
+        Assertions.assertEquals(1000, journal.getAckedSeq());
+        // 失败批次之前与之后的分段都已回收，只剩当前分段
+        Assertions.assertNotNull(segmentFile());
+        Assertions.assertTrue(replay(open()).isEmpty());
+    }
+
+    private BatchJournal<String> open() throws IOException {
+        return new BatchJournal<>(directory, SEGMENT_SIZE, 10, SERIALIZER);
+    }
+
+    private File segmentFile() {
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".seg"));
+        Assertions.assertNotNull(segments);
+        Assertions.assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    private static void append(BatchJournal<String> journal, int count) {
+        for (int i = 0; i < count; i++) {
+            Assertions.assertTrue(journal.appendIf(journal.serialize("e" + i), () -> true));
+        }
+    }
+
+    private static List<String> replay(BatchJournal<String> journal) {
+        List<String> replayed = new ArrayList<>();
+        journal.replay(replayed::add);
+        return Collections.unmodifiableList(replayed);
+    }
+}
@@ -0,0 +1,86 @@
+package com.xk.queue.metrics;
+
+import com.xk.queue.impl.AbstractBatchQueueService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 16:50
+ * 指标带有queue标签，触发方式、消费结果与溢出处理按标签值区分；
+ * 拆分重试吞掉的失败按元素计入failure，关闭时的消费计入shutdown触发
+ */
+class BatchQueueMetricsTest {
+
+    @Test
+    void metersAreTaggedByQueueTriggerAndResult() throws InterruptedException {
+        AbstractBatchQueueService<Integer> service = new AbstractBatchQueueService<Integer>(1000, 10, 5, 100) {
+
+            @Override
+            public void batchConsumeMsg(List<Integer> list) {
+                if (list.contains(0)) {
+                    throw new IllegalStateException("poison");
+                }
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new BatchQueueMetrics("orders", service).bindTo(registry);
+        for (int i = 1; i <= 5; i++) {
+            service.add(i);
+        }
+        await(() -> registry.get("batch.queue.consume").tags("queue", "orders", "result", "success").timer().count() == 1);
+        service.add(0);
+        service.add(6);
+        // 入队之后才计数，元素可能先被消费
+        await(() -> registry.get("batch.queue.consume").tags("queue", "orders", "result", "failure").timer().count() == 1
+                && registry.get("batch.queue.added").tag("queue", "orders").counter().count() == 7);
+
+        Assertions.assertEquals(7, registry.get("batch.queue.added").tag("queue", "orders").counter().count());
+        Assertions.assertEquals(1, registry.get("batch.queue.flush").tags("queue", "orders", "trigger", "size").counter().count());
+        Assertions.assertEquals(1, registry.get("batch.queue.flush").tags("queue", "orders", "trigger", "time").counter().count());
+        Assertions.assertEquals(0, registry.get("batch.queue.flush").tags("queue", "orders", "trigger", "caller_runs").counter().count());
+        Assertions.assertEquals(7, registry.get("batch.queue.batch.size").tag("queue", "orders").summary().totalAmount());
+        for (String action : new String[]{"blocked", "block_timeout", "dropped_newest", "dropped_oldest", "caller_runs", "spilled", "rejected"}) {
+            Assertions.assertEquals(0, registry.get("batch.queue.overflow").tags("queue", "orders", "action", action).functionCounter().count());
+        }
+    }
+
+    @Test
+    void bisectedFailuresAreRecordedPerElement() {
+        AbstractBatchQueueService<Integer> service = new AbstractBatchQueueService<Integer>(1000, 10, 1000, 60_000) {
+
+            @Override
+            public void batchConsumeMsg(List<Integer> list) {
+                if (list.contains(3)) {
+                    throw new IllegalStateException("poison");
+                }
+            }
+        };
+        service.enableBisectingRetry(0, 0, 0, TimeUnit.MILLISECONDS);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new BatchQueueMetrics("test", service).bindTo(registry);
+        for (int i = 0; i < 10; i++) {
+            service.add(i);
+        }
+        service.shutdown();
+
+        Assertions.assertEquals(9, registry.get("batch.queue.consumed").tag("result", "success").counter().count());
+        Assertions.assertEquals(1, registry.get("batch.queue.consumed").tag("result", "failure").counter().count());
+        Assertions.assertEquals(1, registry.get("batch.queue.consume").tag("result", "failure").timer().count());
+        Assertions.assertEquals(1, registry.get("batch.queue.flush").tag("trigger", "shutdown").counter().count());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() - deadline < 0, "condition not met in 5s");
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
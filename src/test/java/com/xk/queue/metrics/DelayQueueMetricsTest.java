@@ -0,0 +1,99 @@
+package com.xk.queue.metrics;
+
+import com.xk.queue.impl.DelayQueueServiceImpl;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author xiongkai
+ * @version 1.0
+ * @date 2026-10-18 22:40
+ * 每个任务的lateness记入发布直方图的Timer，分发次数与执行结果按次记录，等待执行的任务按距执行时间分组
+ */
+class DelayQueueMetricsTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void latenessIsRecordedPerJob() throws Exception {
+        DelayQueueServiceImpl service = new DelayQueueServiceImpl();
+        ReflectionTestUtils.setField(service, "delayExecutorService", executorService);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AtomicReference<DistributionStatisticConfig> latenessConfig = new AtomicReference<>();
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if ("delay.queue.lateness".equals(id.getName())) {
+                    latenessConfig.set(config);
+                }
+                return config;
+            }
+        });
+        new DelayQueueMetrics("orders", service).bindTo(registry);
+        for (int i = 0; i < 3; i++) {
+            service.add(() -> {
+            }, 0, TimeUnit.MILLISECONDS);
+        }
+        // 分发线程启动前已到期，每个任务至少晚50毫秒
+        TimeUnit.MILLISECONDS.sleep(50);
+        service.afterPropertiesSet();
+        // 任务交给线程池之后才记录本次分发，任务执行完时分发可能还未记录
+        await(() -> registry.get("delay.queue.run").tags("queue", "orders", "result", "success").timer().count() == 3
+                && registry.get("delay.queue.dispatch.lag").tag("queue", "orders").timer().count() == 1);
+
+        Timer lateness = registry.get("delay.queue.lateness").tag("queue", "orders").timer();
+        Assertions.assertEquals(3, lateness.count());
+        Assertions.assertTrue(lateness.max(TimeUnit.MILLISECONDS) >= 50);
+        // 直方图桶由支持的MeterRegistry（如Prometheus）发布
+        Assertions.assertTrue(latenessConfig.get().isPercentileHistogram());
+        Assertions.assertEquals(3, registry.get("delay.queue.added").tag("queue", "orders").counter().count());
+        Assertions.assertEquals(3, registry.get("delay.queue.dispatched").tag("queue", "orders").counter().count());
+        Assertions.assertEquals(1, registry.get("delay.queue.dispatch.size").tag("queue", "orders").summary().count());
+        Assertions.assertTrue(registry.get("delay.queue.dispatch.lag").tag("queue", "orders").timer().max(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    @Test
+    void pendingJobsAreGroupedByDue() {
+        DelayQueueServiceImpl service = new DelayQueueServiceImpl();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new DelayQueueMetrics("orders", service).bindTo(registry);
+        service.add(() -> {
+        }, 5, TimeUnit.SECONDS);
+        service.add(() -> {
+        }, 5, TimeUnit.MINUTES);
+        service.add(() -> {
+        }, 2, TimeUnit.HOURS);
+
+        Assertions.assertEquals(3, registry.get("delay.queue.pending").gauge().value());
+        Assertions.assertEquals(1, registry.get("delay.queue.pending.due").tag("due", "10s").gauge().value());
+        Assertions.assertEquals(1, registry.get("delay.queue.pending.due").tag("due", "10m").gauge().value());
+        Assertions.assertEquals(1, registry.get("delay.queue.pending.due").tag("due", "later").gauge().value());
+        Assertions.assertEquals(0, registry.get("delay.queue.pending.due").tag("due", "1s").gauge().value());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() - deadline < 0, "condition not met in 5s");
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}